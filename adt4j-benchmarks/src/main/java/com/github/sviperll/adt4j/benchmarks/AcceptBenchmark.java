@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.examples.Expression;
+import com.github.sviperll.adt4j.examples.ExpressionVisitor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of accept-method dispatch.
+ * <p>
+ * Values are taken from one, two or three different cases,
+ * so that accept call-site becomes mono-, bi- or megamorphic.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class AcceptBenchmark {
+    private static final int SIZE = 1024;
+
+    @Param({"1", "2", "3"})
+    public int caseCount;
+
+    private final Expression[] expressions = new Expression[SIZE];
+    private final HandWrittenExpression[] handWrittenExpressions = new HandWrittenExpression[SIZE];
+
+    private final ExpressionVisitor<Expression, Integer> visitor = new ExpressionVisitor<Expression, Integer>() {
+        @Override
+        public Integer lit(int value) {
+            return value;
+        }
+
+        @Override
+        public Integer add(Expression left, Expression right) {
+            return 1;
+        }
+
+        @Override
+        public Integer mul(Expression left, Expression right) {
+            return 2;
+        }
+    };
+
+    private final ExpressionVisitor<HandWrittenExpression, Integer> handWrittenVisitor = new ExpressionVisitor<HandWrittenExpression, Integer>() {
+        @Override
+        public Integer lit(int value) {
+            return value;
+        }
+
+        @Override
+        public Integer add(HandWrittenExpression left, HandWrittenExpression right) {
+            return 1;
+        }
+
+        @Override
+        public Integer mul(HandWrittenExpression left, HandWrittenExpression right) {
+            return 2;
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        Expression literal = Expression.lit(3);
+        HandWrittenExpression handWrittenLiteral = HandWrittenExpression.lit(3);
+        for (int i = 0; i < SIZE; i++) {
+            switch (i % caseCount) {
+                case 0:
+                    expressions[i] = Expression.lit(i % 100);
+                    handWrittenExpressions[i] = HandWrittenExpression.lit(i % 100);
+                    break;
+                case 1:
+                    expressions[i] = Expression.add(literal, literal);
+                    handWrittenExpressions[i] = HandWrittenExpression.add(handWrittenLiteral, handWrittenLiteral);
+                    break;
+                default:
+                    expressions[i] = Expression.mul(literal, literal);
+                    handWrittenExpressions[i] = HandWrittenExpression.mul(handWrittenLiteral, handWrittenLiteral);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int accept() {
+        int result = 0;
+        for (Expression expression: expressions) {
+            result += expression.accept(visitor);
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public int handWrittenAccept() {
+        int result = 0;
+        for (HandWrittenExpression expression: handWrittenExpressions) {
+            result += expression.accept(handWrittenVisitor);
+        }
+        return result;
+    }
+}
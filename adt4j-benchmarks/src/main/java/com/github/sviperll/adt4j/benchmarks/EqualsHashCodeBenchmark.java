@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.examples.Expression;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of equals and hashCode methods for every hashCode caching mode.
+ * <p>
+ * Equal values are always distinct instances with distinct arrays,
+ * so that equals can't be short-circuited by identity check.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EqualsHashCodeBenchmark {
+    private final UncachedRecord uncached = Records.uncached(1);
+    private final UncachedRecord uncachedEqual = Records.uncached(1);
+    private final UncachedRecord uncachedDifferent = Records.uncached(2);
+    private final SimpleCachedRecord simpleCached = Records.simpleCached(1);
+    private final SimpleCachedRecord simpleCachedEqual = Records.simpleCached(1);
+    private final SimpleCachedRecord simpleCachedDifferent = Records.simpleCached(2);
+    private final SynchronizedCachedRecord synchronizedCached = Records.synchronizedCached(1);
+    private final SynchronizedCachedRecord synchronizedCachedEqual = Records.synchronizedCached(1);
+    private final SynchronizedCachedRecord synchronizedCachedDifferent = Records.synchronizedCached(2);
+    private final PrecomputedRecord precomputed = Records.precomputed(1);
+    private final PrecomputedRecord precomputedEqual = Records.precomputed(1);
+    private final PrecomputedRecord precomputedDifferent = Records.precomputed(2);
+    private final HandWrittenRecord handWritten = Records.handWritten(1);
+    private final HandWrittenRecord handWrittenEqual = Records.handWritten(1);
+    private final HandWrittenRecord handWrittenDifferent = Records.handWritten(2);
+    private final Expression expression = Expression.add(Expression.lit(1), Expression.mul(Expression.lit(2), Expression.lit(3)));
+    private final Expression expressionEqual = Expression.add(Expression.lit(1), Expression.mul(Expression.lit(2), Expression.lit(3)));
+    private final HandWrittenExpression handWrittenExpression = HandWrittenExpression.add(HandWrittenExpression.lit(1), HandWrittenExpression.mul(HandWrittenExpression.lit(2), HandWrittenExpression.lit(3)));
+    private final HandWrittenExpression handWrittenExpressionEqual = HandWrittenExpression.add(HandWrittenExpression.lit(1), HandWrittenExpression.mul(HandWrittenExpression.lit(2), HandWrittenExpression.lit(3)));
+
+    @Benchmark
+    public int uncachedHashCode() {
+        return uncached.hashCode();
+    }
+
+    @Benchmark
+    public int simpleCachedHashCode() {
+        return simpleCached.hashCode();
+    }
+
+    @Benchmark
+    public int synchronizedCachedHashCode() {
+        return synchronizedCached.hashCode();
+    }
+
+    @Benchmark
+    public int precomputedHashCode() {
+        return precomputed.hashCode();
+    }
+
+    @Benchmark
+    public int handWrittenHashCode() {
+        return handWritten.hashCode();
+    }
+
+    @Benchmark
+    public boolean uncachedEquals() {
+        return uncached.equals(uncachedEqual);
+    }
+
+    @Benchmark
+    public boolean simpleCachedEquals() {
+        return simpleCached.equals(simpleCachedEqual);
+    }
+
+    @Benchmark
+    public boolean synchronizedCachedEquals() {
+        return synchronizedCached.equals(synchronizedCachedEqual);
+    }
+
+    @Benchmark
+    public boolean precomputedEquals() {
+        return precomputed.equals(precomputedEqual);
+    }
+
+    @Benchmark
+    public boolean handWrittenEquals() {
+        return handWritten.equals(handWrittenEqual);
+    }
+
+    @Benchmark
+    public boolean uncachedNotEquals() {
+        return uncached.equals(uncachedDifferent);
+    }
+
+    @Benchmark
+    public boolean simpleCachedNotEquals() {
+        return simpleCached.equals(simpleCachedDifferent);
+    }
+
+    @Benchmark
+    public boolean synchronizedCachedNotEquals() {
+        return synchronizedCached.equals(synchronizedCachedDifferent);
+    }
+
+    @Benchmark
+    public boolean precomputedNotEquals() {
+        return precomputed.equals(precomputedDifferent);
+    }
+
+    @Benchmark
+    public boolean handWrittenNotEquals() {
+        return handWritten.equals(handWrittenDifferent);
+    }
+
+    @Benchmark
+    public boolean expressionEquals() {
+        return expression.equals(expressionEqual);
+    }
+
+    @Benchmark
+    public boolean handWrittenExpressionEquals() {
+        return handWrittenExpression.equals(handWrittenExpressionEqual);
+    }
+
+    @Benchmark
+    public int expressionHashCode() {
+        return expression.hashCode();
+    }
+
+    @Benchmark
+    public int handWrittenExpressionHashCode() {
+        return handWrittenExpression.hashCode();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.examples.Expression;
+import com.github.sviperll.adt4j.examples.List;
+import com.github.sviperll.adt4j.examples.UserKey;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of static factory methods.
+ * <p>
+ * Run with {@code -prof gc} to see allocation per operation.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FactoryBenchmark {
+    private final String head = "head";
+    private final List<String> tail = List.cons("tail", List.<String>nil());
+    private final HandWrittenList<String> handWrittenTail = HandWrittenList.cons("tail", HandWrittenList.<String>nil());
+    private final Expression literal = Expression.lit(1);
+    private final HandWrittenExpression handWrittenLiteral = HandWrittenExpression.lit(1);
+    private int key = 42;
+
+    @Benchmark
+    public List<String> listCons() {
+        return List.cons(head, tail);
+    }
+
+    @Benchmark
+    public HandWrittenList<String> handWrittenListCons() {
+        return HandWrittenList.cons(head, handWrittenTail);
+    }
+
+    @Benchmark
+    public List<String> listNil() {
+        return List.nil();
+    }
+
+    @Benchmark
+    public HandWrittenList<String> handWrittenListNil() {
+        return HandWrittenList.nil();
+    }
+
+    @Benchmark
+    public Expression expressionAdd() {
+        return Expression.add(literal, literal);
+    }
+
+    @Benchmark
+    public HandWrittenExpression handWrittenExpressionAdd() {
+        return HandWrittenExpression.add(handWrittenLiteral, handWrittenLiteral);
+    }
+
+    @Benchmark
+    public UserKey userKey() {
+        return UserKey.valueOf(key);
+    }
+
+    @Benchmark
+    public HandWrittenUserKey handWrittenUserKey() {
+        return HandWrittenUserKey.valueOf(key);
+    }
+
+    @Benchmark
+    public UncachedRecord uncachedRecord() {
+        return Records.uncached(key);
+    }
+
+    @Benchmark
+    public PrecomputedRecord precomputedRecord() {
+        return Records.precomputed(key);
+    }
+
+    @Benchmark
+    public HandWrittenRecord handWrittenRecord() {
+        return Records.handWritten(key);
+    }
+}
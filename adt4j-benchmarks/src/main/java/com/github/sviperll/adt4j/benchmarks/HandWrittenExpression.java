@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.examples.ExpressionVisitor;
+
+/**
+ * Hand-written counterpart of generated Expression class from adt4j-examples.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public abstract class HandWrittenExpression {
+    public static HandWrittenExpression add(HandWrittenExpression left, HandWrittenExpression right) {
+        return new Add(left, right);
+    }
+
+    public static HandWrittenExpression mul(HandWrittenExpression left, HandWrittenExpression right) {
+        return new Mul(left, right);
+    }
+
+    public static HandWrittenExpression lit(int value) {
+        return new Lit(value);
+    }
+
+    private HandWrittenExpression() {
+    }
+
+    public abstract <R> R accept(ExpressionVisitor<HandWrittenExpression, R> visitor);
+
+    private static final class Add extends HandWrittenExpression {
+        private final HandWrittenExpression left;
+        private final HandWrittenExpression right;
+
+        Add(HandWrittenExpression left, HandWrittenExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<HandWrittenExpression, R> visitor) {
+            return visitor.add(left, right);
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (this == thatObject)
+                return true;
+            if (!(thatObject instanceof Add))
+                return false;
+            Add that = (Add)thatObject;
+            return left.equals(that.left) && right.equals(that.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return (27 + left.hashCode()) * 27 + right.hashCode();
+        }
+    }
+
+    private static final class Mul extends HandWrittenExpression {
+        private final HandWrittenExpression left;
+        private final HandWrittenExpression right;
+
+        Mul(HandWrittenExpression left, HandWrittenExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<HandWrittenExpression, R> visitor) {
+            return visitor.mul(left, right);
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (this == thatObject)
+                return true;
+            if (!(thatObject instanceof Mul))
+                return false;
+            Mul that = (Mul)thatObject;
+            return left.equals(that.left) && right.equals(that.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return (2 * 27 + left.hashCode()) * 27 + right.hashCode();
+        }
+    }
+
+    private static final class Lit extends HandWrittenExpression {
+        private final int value;
+
+        Lit(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public <R> R accept(ExpressionVisitor<HandWrittenExpression, R> visitor) {
+            return visitor.lit(value);
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (this == thatObject)
+                return true;
+            if (!(thatObject instanceof Lit))
+                return false;
+            Lit that = (Lit)thatObject;
+            return value == that.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 3 * 27 + value;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.examples.ListVisitor;
+
+/**
+ * Hand-written counterpart of generated List class from adt4j-examples.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public abstract class HandWrittenList<T> {
+    @SuppressWarnings("rawtypes")
+    private static final HandWrittenList NIL = new Nil();
+
+    @SuppressWarnings("unchecked")
+    public static <T> HandWrittenList<T> nil() {
+        return NIL;
+    }
+
+    public static <T> HandWrittenList<T> cons(T head, HandWrittenList<T> tail) {
+        return new Cons<T>(head, tail);
+    }
+
+    private HandWrittenList() {
+    }
+
+    public abstract <R> R accept(ListVisitor<T, HandWrittenList<T>, R> visitor);
+
+    public abstract HandWrittenList<T> withHead(T head);
+
+    private static final class Nil<T> extends HandWrittenList<T> {
+        @Override
+        public <R> R accept(ListVisitor<T, HandWrittenList<T>, R> visitor) {
+            return visitor.nil();
+        }
+
+        @Override
+        public HandWrittenList<T> withHead(T head) {
+            return this;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+    }
+
+    private static final class Cons<T> extends HandWrittenList<T> {
+        private final T head;
+        private final HandWrittenList<T> tail;
+
+        Cons(T head, HandWrittenList<T> tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+
+        @Override
+        public <R> R accept(ListVisitor<T, HandWrittenList<T>, R> visitor) {
+            return visitor.cons(head, tail);
+        }
+
+        @Override
+        public HandWrittenList<T> withHead(T head) {
+            return new Cons<T>(head, tail);
+        }
+
+        @Override
+        public boolean equals(Object thatObject) {
+            if (this == thatObject)
+                return true;
+            if (!(thatObject instanceof Cons))
+                return false;
+            Cons<?> that = (Cons<?>)thatObject;
+            return head.equals(that.head) && tail.equals(that.tail);
+        }
+
+        @Override
+        public int hashCode() {
+            return (2 * 27 + head.hashCode()) * 27 + tail.hashCode();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Hand-written counterpart of generated record classes.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public final class HandWrittenRecord {
+    private final boolean bool;
+    private final byte b;
+    private final char c;
+    private final int i;
+    private final long l;
+    private final float f;
+    private final double d;
+    private final Object o;
+    private final boolean[] boola;
+    private final byte[][] ba;
+    private final char[] ca;
+    private final int[] ia;
+    private final long[] la;
+    private final float[] fa;
+    private final double[] da;
+    private final Object[] oa;
+
+    public HandWrittenRecord(boolean bool, byte b, char c, int i, long l, float f, double d, Object o,
+                             boolean[] boola, byte[][] ba, char[] ca, int[] ia, long[] la, float[] fa, double[] da, Object[] oa) {
+        this.bool = bool;
+        this.b = b;
+        this.c = c;
+        this.i = i;
+        this.l = l;
+        this.f = f;
+        this.d = d;
+        this.o = o;
+        this.boola = boola;
+        this.ba = ba;
+        this.ca = ca;
+        this.ia = ia;
+        this.la = la;
+        this.fa = fa;
+        this.da = da;
+        this.oa = oa;
+    }
+
+    public int getI() {
+        return i;
+    }
+
+    public Object getO() {
+        return o;
+    }
+
+    public HandWrittenRecord withI(int i) {
+        return new HandWrittenRecord(bool, b, c, i, l, f, d, o, boola, ba, ca, ia, la, fa, da, oa);
+    }
+
+    public HandWrittenRecord withO(Object o) {
+        return new HandWrittenRecord(bool, b, c, i, l, f, d, o, boola, ba, ca, ia, la, fa, da, oa);
+    }
+
+    @Override
+    public boolean equals(Object thatObject) {
+        if (this == thatObject)
+            return true;
+        if (!(thatObject instanceof HandWrittenRecord))
+            return false;
+        HandWrittenRecord that = (HandWrittenRecord)thatObject;
+        return bool == that.bool
+               && b == that.b
+               && c == that.c
+               && i == that.i
+               && l == that.l
+               && Float.compare(f, that.f) == 0
+               && Double.compare(d, that.d) == 0
+               && o.equals(that.o)
+               && Arrays.equals(boola, that.boola)
+               && Arrays.deepEquals(ba, that.ba)
+               && Arrays.equals(ca, that.ca)
+               && Arrays.equals(ia, that.ia)
+               && Arrays.equals(la, that.la)
+               && Arrays.equals(fa, that.fa)
+               && Arrays.equals(da, that.da)
+               && Arrays.equals(oa, that.oa);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bool ? 1 : 0;
+        result = result * 49 + b;
+        result = result * 49 + c;
+        result = result * 49 + i;
+        result = result * 49 + (int)(l ^ (l >>> 32));
+        result = result * 49 + Float.floatToIntBits(f);
+        long dbits = Double.doubleToLongBits(d);
+        result = result * 49 + (int)(dbits ^ (dbits >>> 32));
+        result = result * 49 + o.hashCode();
+        result = result * 49 + Arrays.hashCode(boola);
+        result = result * 49 + Arrays.deepHashCode(ba);
+        result = result * 49 + Arrays.hashCode(ca);
+        result = result * 49 + Arrays.hashCode(ia);
+        result = result * 49 + Arrays.hashCode(la);
+        result = result * 49 + Arrays.hashCode(fa);
+        result = result * 49 + Arrays.hashCode(da);
+        result = result * 49 + Arrays.hashCode(oa);
+        return result;
+    }
+}
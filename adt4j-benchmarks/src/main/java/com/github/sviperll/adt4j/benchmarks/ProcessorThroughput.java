@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import com.github.sviperll.adt4j.GenerateValueClassForVisitorProcessor;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Measures annotation processor throughput on synthetic visitor-interfaces.
+ * <p>
+ * Processor is run in-process through {@code javax.tools.JavaCompiler} with {@code -proc:only} option,
+ * so that only parsing, attribution and annotation processing are measured.
+ * Generated sources are kept in memory.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar com.github.sviperll.adt4j.benchmarks.ProcessorThroughput [definitions:cases ...]}
+ * <p>
+ * Every scenario is run several times to warm up JVM, then wall time, allocated bytes of current thread
+ * and generated source size are reported for measured runs.
+ * Scenarios with hundreds of cases generate huge equals and compareTo methods
+ * and need large heap, like {@code -Xmx8g}. Failed scenarios are reported and skipped.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public class ProcessorThroughput {
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    private static final String[] DEFAULT_SCENARIOS = {"10:2", "10:20", "10:50", "100:2", "100:10", "1000:2"};
+    private static final long STACK_SIZE = 256L * 1024 * 1024;
+
+    public static void main(final String[] args) throws InterruptedException {
+        // javac recursion depth grows with the size of generated expressions
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                runScenarios(args.length == 0 ? DEFAULT_SCENARIOS : args);
+            }
+        }, "processor-throughput", STACK_SIZE);
+        thread.start();
+        thread.join();
+    }
+
+    private static void runScenarios(String[] scenarios) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("Java compiler is not available, run benchmark with JDK");
+        System.out.println(String.format(Locale.ROOT, "%12s %8s %14s %14s %16s %8s",
+                                         "definitions", "cases", "min time, ms", "avg time, ms", "avg allocated, MB", "source, KB"));
+        for (String scenario: scenarios) {
+            String[] parts = scenario.split(":");
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Scenario should be written as definitions:cases, found: " + scenario);
+            int definitionCount = Integer.parseInt(parts[0]);
+            int caseCount = Integer.parseInt(parts[1]);
+            Map<String, String> sources = SyntheticVisitors.generate(definitionCount, caseCount);
+            long minNanos = Long.MAX_VALUE;
+            long totalNanos = 0;
+            long totalAllocatedBytes = 0;
+            long sourceBytes = 0;
+            try {
+                for (int i = 0; i < WARMUP_RUNS; i++) {
+                    run(compiler, sources);
+                }
+                for (int i = 0; i < MEASURED_RUNS; i++) {
+                    Result result = run(compiler, sources);
+                    minNanos = Math.min(minNanos, result.nanos);
+                    totalNanos += result.nanos;
+                    totalAllocatedBytes += result.allocatedBytes;
+                    sourceBytes = result.generatedSourceBytes;
+                }
+            } catch (IOException | RuntimeException | OutOfMemoryError | StackOverflowError ex) {
+                System.out.println(String.format(Locale.ROOT, "%12d %8d failed: %s", definitionCount, caseCount, ex));
+                continue;
+            }
+            System.out.println(String.format(Locale.ROOT, "%12d %8d %14.1f %14.1f %16.1f %8.1f",
+                                             definitionCount,
+                                             caseCount,
+                                             minNanos / 1e6,
+                                             totalNanos / 1e6 / MEASURED_RUNS,
+                                             totalAllocatedBytes < 0 ? Double.NaN : totalAllocatedBytes / 1048576.0 / MEASURED_RUNS,
+                                             sourceBytes / 1024.0));
+        }
+    }
+
+    private static Result run(JavaCompiler compiler, Map<String, String> sources) throws IOException {
+        List<JavaFileObject> compilationUnits = new ArrayList<>();
+        for (Map.Entry<String, String> source: sources.entrySet()) {
+            compilationUnits.add(new SourceFile(source.getKey(), source.getValue()));
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT, null);
+        GeneratedSourceFileManager fileManager = new GeneratedSourceFileManager(standardFileManager);
+        List<String> options = Arrays.asList("-proc:only",
+                                             "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, compilationUnits);
+        task.setProcessors(Collections.singletonList(new GenerateValueClassForVisitorProcessor()));
+
+        long allocatedBefore = currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        boolean isSuccessful = task.call();
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = currentThreadAllocatedBytes();
+        fileManager.close();
+
+        if (!isSuccessful) {
+            StringBuilder message = new StringBuilder();
+            message.append("Compilation failed:");
+            for (Diagnostic<? extends JavaFileObject> diagnostic: diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                    message.append("\n").append(diagnostic);
+            }
+            throw new IllegalStateException(message.toString());
+        }
+        long allocatedBytes = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new Result(nanos, allocatedBytes, fileManager.generatedSourceBytes());
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class Result {
+        final long nanos;
+        final long allocatedBytes;
+        final long generatedSourceBytes;
+
+        Result(long nanos, long allocatedBytes, long generatedSourceBytes) {
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.generatedSourceBytes = generatedSourceBytes;
+        }
+    }
+
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String source;
+
+        SourceFile(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    private static class GeneratedSourceFile extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        GeneratedSourceFile(String className, Kind kind) {
+            super(URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return new String(content.toByteArray(), java.nio.charset.Charset.defaultCharset());
+        }
+
+        long size() {
+            return content.size();
+        }
+    }
+
+    private static class GeneratedSourceFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final List<GeneratedSourceFile> generatedFiles = new ArrayList<>();
+
+        GeneratedSourceFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            GeneratedSourceFile file = new GeneratedSourceFile(className, kind);
+            generatedFiles.add(file);
+            return file;
+        }
+
+        @Override
+        public boolean isSameFile(FileObject a, FileObject b) {
+            if (a instanceof GeneratedSourceFile || b instanceof GeneratedSourceFile)
+                return a.toUri().equals(b.toUri());
+            return super.isSameFile(a, b);
+        }
+
+        long generatedSourceBytes() {
+            long result = 0;
+            for (GeneratedSourceFile file: generatedFiles) {
+                if (file.getKind() == JavaFileObject.Kind.SOURCE)
+                    result += file.size();
+            }
+            return result;
+        }
+    }
+}
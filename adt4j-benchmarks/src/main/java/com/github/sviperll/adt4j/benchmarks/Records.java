@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+/**
+ * Creates records with the same field values through every record implementation.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class Records {
+    static UncachedRecord uncached(int i) {
+        return UncachedRecord.valueOf(true, (byte)1, 'c', i, 5L, 0.5f, 0.25, "o",
+                                      new boolean[] {true, false}, new byte[][] {{1, 2}, {3}}, new char[] {'a', 'b'},
+                                      new int[] {1, 2, 3}, new long[] {4L, 5L}, new float[] {1.5f}, new double[] {2.5},
+                                      new Object[] {"a", "b"});
+    }
+
+    static SimpleCachedRecord simpleCached(int i) {
+        return SimpleCachedRecord.valueOf(true, (byte)1, 'c', i, 5L, 0.5f, 0.25, "o",
+                                          new boolean[] {true, false}, new byte[][] {{1, 2}, {3}}, new char[] {'a', 'b'},
+                                          new int[] {1, 2, 3}, new long[] {4L, 5L}, new float[] {1.5f}, new double[] {2.5},
+                                          new Object[] {"a", "b"});
+    }
+
+    static SynchronizedCachedRecord synchronizedCached(int i) {
+        return SynchronizedCachedRecord.valueOf(true, (byte)1, 'c', i, 5L, 0.5f, 0.25, "o",
+                                                new boolean[] {true, false}, new byte[][] {{1, 2}, {3}}, new char[] {'a', 'b'},
+                                                new int[] {1, 2, 3}, new long[] {4L, 5L}, new float[] {1.5f}, new double[] {2.5},
+                                                new Object[] {"a", "b"});
+    }
+
+    static PrecomputedRecord precomputed(int i) {
+        return PrecomputedRecord.valueOf(true, (byte)1, 'c', i, 5L, 0.5f, 0.25, "o",
+                                         new boolean[] {true, false}, new byte[][] {{1, 2}, {3}}, new char[] {'a', 'b'},
+                                         new int[] {1, 2, 3}, new long[] {4L, 5L}, new float[] {1.5f}, new double[] {2.5},
+                                         new Object[] {"a", "b"});
+    }
+
+    static HandWrittenRecord handWritten(int i) {
+        return new HandWrittenRecord(true, (byte)1, 'c', i, 5L, 0.5f, 0.25, "o",
+                                     new boolean[] {true, false}, new byte[][] {{1, 2}, {3}}, new char[] {'a', 'b'},
+                                     new int[] {1, 2, 3}, new long[] {4L, 5L}, new float[] {1.5f}, new double[] {2.5},
+                                     new Object[] {"a", "b"});
+    }
+
+    private Records() {
+    }
+}
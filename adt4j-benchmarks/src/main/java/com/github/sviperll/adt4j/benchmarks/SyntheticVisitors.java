@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates source code of synthetic visitor-interfaces annotated with GenerateValueClassForVisitor.
+ * <p>
+ * Every definition has requested number of cases.
+ * Cases have from one to four fields of varied types:
+ * primitives, strings, arrays, type-variables, generic types and self-references.
+ * Every second definition is comparable and uses only comparable field types.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class SyntheticVisitors {
+    static final String PACKAGE_NAME = "com.github.sviperll.adt4j.synthetic";
+
+    private static final String[] FIELD_TYPES = {"int", "long", "double", "String", "int[]", "T", "S", "java.util.List<T>", "boolean", "S"};
+    private static final String[] COMPARABLE_FIELD_TYPES = {"int", "long", "double", "String", "S", "boolean", "char"};
+
+    /**
+     * Generates sources of synthetic visitors.
+     *
+     * @param definitionCount number of visitor-interfaces to generate
+     * @param caseCount number of cases (visitor methods) in every visitor
+     * @return map from qualified class name to source code
+     */
+    static Map<String, String> generate(int definitionCount, int caseCount) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < definitionCount; i++) {
+            String name = "Synthetic" + i + "Visitor";
+            result.put(PACKAGE_NAME + "." + name, generateVisitor(name, i % 2 == 1, caseCount));
+        }
+        return result;
+    }
+
+    private static String generateVisitor(String name, boolean isComparable, int caseCount) {
+        String[] fieldTypes = isComparable ? COMPARABLE_FIELD_TYPES : FIELD_TYPES;
+        String typeParameters = isComparable ? "<S, R>" : "<T, S, R>";
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE_NAME).append(";\n\n");
+        source.append("import com.github.sviperll.adt4j.GenerateValueClassForVisitor;\n");
+        source.append("import com.github.sviperll.adt4j.Visitor;\n\n");
+        source.append("@GenerateValueClassForVisitor(isPublic = true, isComparable = ").append(isComparable).append(")\n");
+        source.append("@Visitor(resultVariableName = \"R\", selfReferenceVariableName = \"S\")\n");
+        source.append("public interface ").append(name).append(typeParameters).append(" {\n");
+        for (int i = 0; i < caseCount; i++) {
+            source.append("    R case").append(i).append("(");
+            int fieldCount = i % 4 + 1;
+            for (int j = 0; j < fieldCount; j++) {
+                if (j > 0)
+                    source.append(", ");
+                source.append(fieldTypes[(i + j) % fieldTypes.length]).append(" field").append(j);
+            }
+            source.append(");\n");
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private SyntheticVisitors() {
+    }
+}
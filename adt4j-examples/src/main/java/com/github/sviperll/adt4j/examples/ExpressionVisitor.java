@@ -29,7 +29,10 @@
  */
 package com.github.sviperll.adt4j.examples;
 
+import com.github.sviperll.adt4j.AttributeKind;
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.GenerateAttribute;
+import com.github.sviperll.adt4j.GenerateAttributes;
 import com.github.sviperll.adt4j.GeneratePredicate;
 import com.github.sviperll.adt4j.GeneratePredicates;
 import com.github.sviperll.adt4j.GenerateValueClassForVisitor;
@@ -40,7 +43,13 @@ import com.github.sviperll.adt4j.Visitor;
  *
  * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
  */
-@GenerateValueClassForVisitor(isPublic = true, hashCodeCaching = Caching.SIMPLE)
+@GenerateValueClassForVisitor(isPublic = true, hashCodeCaching = Caching.SIMPLE, generateChildren = true, generateFold = true)
+@GenerateAttributes({
+    @GenerateAttribute(name = "literalSum", type = Long.class, visitor = ExpressionLiteralSum.class),
+    @GenerateAttribute(name = "canonicalText", type = String.class, visitor = ExpressionCanonicalText.class, lazy = true),
+    @GenerateAttribute(name = "commonLiteral", type = Integer.class, visitor = ExpressionCommonLiteral.class, lazy = true),
+    @GenerateAttribute(name = "depth", kind = AttributeKind.DEPTH, lazy = true)
+})
 @Visitor(resultVariableName = "R", selfReferenceVariableName = "S")
 public interface ExpressionVisitor<S, R> {
     @GeneratePredicates({
@@ -133,7 +133,7 @@ public class GADT2<T> extends GADT2Base<T> {
         });
     }
 
-    @GenerateValueClassForVisitor(wrapperClass = GADT2.class)
+    @GenerateValueClassForVisitor(wrapperClass = GADT2.class, generateBuilders = true)
     @Visitor(resultVariableName = "R")
     public interface GADT2Visitor<T, R> {
         // <A, B> R lambda(Function<A, GADT2<B>> function, Type.Equality<T, Function<A, B>> evidence);
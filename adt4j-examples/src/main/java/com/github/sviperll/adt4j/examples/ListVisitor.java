@@ -35,7 +35,7 @@ import com.github.sviperll.adt4j.Getter;
 import com.github.sviperll.adt4j.Updater;
 import com.github.sviperll.adt4j.Visitor;
 
-@GenerateValueClassForVisitor(isPublic = true)
+@GenerateValueClassForVisitor(isPublic = true, generateMap = true, generateStream = true, generateBulkFactories = true)
 @Visitor(resultVariableName = "R", selfReferenceVariableName = "S")
 public interface ListVisitor<T, S, R> {
     R cons(@Getter @Updater T head,
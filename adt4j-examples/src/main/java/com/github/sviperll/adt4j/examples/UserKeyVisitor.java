@@ -36,7 +36,9 @@ import com.github.sviperll.adt4j.Visitor;
 @GenerateValueClassForVisitor(isSerializable = true,
                               isPublic = true,
                               isComparable = true,
-                              hashCodeCaching = Caching.PRECOMPUTE)
+                              hashCodeCaching = Caching.PRECOMPUTE,
+                              generateStableHash64 = true,
+                              generateDigestInto = true)
 @Visitor(resultVariableName = "R")
 public interface UserKeyVisitor<R> {
     R valueOf(int key);
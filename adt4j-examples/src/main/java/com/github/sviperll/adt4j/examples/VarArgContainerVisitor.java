@@ -38,7 +38,7 @@ import com.github.sviperll.adt4j.Visitor;
  *
  * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
  */
-@GenerateValueClassForVisitor
+@GenerateValueClassForVisitor(generateBuilders = true)
 @Visitor(resultVariableName = "R")
 interface VarArgContainerVisitor<R> {
     R of(int a, @Getter(name = "bs") @Updater(name = "bs") String... bs);
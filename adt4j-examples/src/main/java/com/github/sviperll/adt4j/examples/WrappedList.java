@@ -74,15 +74,10 @@ public class WrappedList<T> extends WrappedListBase<T> {
     }
 
     public <U> WrappedList<U> map(final Function<T, U> function) {
-        return accept(new WrappedListVisitor<T, WrappedList<U>>() {
+        return map(new WrappedListBaseMapper<T, U>() {
             @Override
-            public WrappedList<U> empty() {
-                return WrappedList.empty();
-            }
-
-            @Override
-            public WrappedList<U> prepend(T head, WrappedList<T> tail) {
-                return WrappedList.prepend(function.apply(head), tail.map(function));
+            public U apply(T value) {
+                return function.apply(value);
             }
         });
     }
@@ -30,6 +30,8 @@
 
 package com.github.sviperll.adt4j.examples;
 
+import com.github.sviperll.adt4j.AttributeKind;
+import com.github.sviperll.adt4j.GenerateAttribute;
 import com.github.sviperll.adt4j.GenerateValueClassForVisitor;
 import com.github.sviperll.adt4j.Getter;
 import com.github.sviperll.adt4j.Updater;
@@ -44,7 +46,8 @@ import javax.annotation.ParametersAreNonnullByDefault;
  * @param <R>
  */
 @ParametersAreNonnullByDefault
-@GenerateValueClassForVisitor(wrapperClass = WrappedList.class)
+@GenerateValueClassForVisitor(wrapperClass = WrappedList.class, generateBatchUpdate = true, generateMap = true)
+@GenerateAttribute(name = "nodeCount", kind = AttributeKind.NODE_COUNT)
 @Visitor(resultVariableName = "R")
 public interface WrappedListVisitor<T, R> {
     R empty();
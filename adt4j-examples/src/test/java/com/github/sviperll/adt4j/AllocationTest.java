@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015, Victor Nazarov <asviraspossible@gmail.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j;
+
+import com.github.sviperll.adt4j.examples.ComparableList;
+import com.github.sviperll.adt4j.examples.GroupName;
+import com.github.sviperll.adt4j.examples.List;
+import com.github.sviperll.adt4j.examples.User;
+import com.github.sviperll.adt4j.examples.UserKey;
+import java.lang.management.ManagementFactory;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks allocation budgets of generated hot paths.
+ * <p>
+ * Allocation is measured with {@code com.sun.management.ThreadMXBean} and
+ * tests are skipped when it is not available.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public class AllocationTest {
+    private static final int ATTEMPTS = 10;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private long measurementOverhead;
+    private Object sink;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        if (!threadBean.isThreadAllocatedMemoryEnabled())
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        measurementOverhead = Long.MAX_VALUE;
+        for (int i = 0; i < ATTEMPTS; i++) {
+            long before = allocatedBytes();
+            long after = allocatedBytes();
+            measurementOverhead = Math.min(measurementOverhead, after - before);
+        }
+    }
+
+    @Test
+    public void testGetterDoesNotAllocate() {
+        final User<String> user = User.<String>valueOf(UserKey.valueOf(1), ComparableList.<String>empty(), "Victor", GroupName.valueOf("group1"));
+        final List<String> list = List.cons("a", List.<String>nil());
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = user.name();
+            }
+        }));
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = list.head();
+            }
+        }));
+    }
+
+    @Test
+    public void testUpdaterWithUnchangedValueDoesNotAllocate() {
+        final String name = "Victor";
+        final User<String> user = User.<String>valueOf(UserKey.valueOf(1), ComparableList.<String>empty(), name, GroupName.valueOf("group1"));
+        assertSame(user, user.withName(name));
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = user.withName(name);
+            }
+        }));
+
+        final List<String> nil = List.nil();
+        assertSame(nil, nil.withHead("a"));
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = nil.withHead("a");
+            }
+        }));
+    }
+
+    @Test
+    public void testUpdaterWithChangedValueReturnsNewValue() {
+        User<String> user = User.<String>valueOf(UserKey.valueOf(1), ComparableList.<String>empty(), "Victor", GroupName.valueOf("group1"));
+        User<String> user1 = user.withName("Peter");
+        assertNotSame(user, user1);
+        assertEquals("Peter", user1.name());
+    }
+
+    @Test
+    public void testPrecomputedHashCodeDoesNotAllocate() {
+        final UserKey key = UserKey.valueOf(1);
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = key.hashCode() == 0 ? key : null;
+            }
+        }));
+    }
+
+    @Test
+    public void testNullaryFactoryReturnsSingleton() {
+        assertSame(List.<String>nil(), List.<Integer>nil());
+        assertSame(ComparableList.<String>empty(), ComparableList.<String>empty());
+        assertEquals(0, allocatedBytes(new Runnable() {
+            @Override
+            public void run() {
+                sink = List.<String>nil();
+            }
+        }));
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Minimal number of bytes allocated by single action run over several attempts.
+     */
+    private long allocatedBytes(Runnable action) {
+        action.run();
+        long result = Long.MAX_VALUE;
+        for (int i = 0; i < ATTEMPTS; i++) {
+            long before = allocatedBytes();
+            action.run();
+            long after = allocatedBytes();
+            result = Math.min(result, after - before - measurementOverhead);
+        }
+        return result;
+    }
+}
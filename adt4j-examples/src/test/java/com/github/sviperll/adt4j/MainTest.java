@@ -29,8 +29,20 @@
  */
 package com.github.sviperll.adt4j;
 
+import com.github.sviperll.adt4j.examples.BinaryTree;
+import com.github.sviperll.adt4j.examples.CachedPartitionKey;
 import com.github.sviperll.adt4j.examples.ComparableList;
+import com.github.sviperll.adt4j.examples.Deployment;
+import com.github.sviperll.adt4j.examples.Expression;
+import com.github.sviperll.adt4j.examples.GridCell;
 import com.github.sviperll.adt4j.examples.GroupName;
+import com.github.sviperll.adt4j.examples.Labeled;
+import com.github.sviperll.adt4j.examples.List;
+import com.github.sviperll.adt4j.examples.Measurement;
+import com.github.sviperll.adt4j.examples.PartitionKey;
+import com.github.sviperll.adt4j.examples.Point;
+import com.github.sviperll.adt4j.examples.SensorFrame;
+import com.github.sviperll.adt4j.examples.ServerSettings;
 import com.github.sviperll.adt4j.examples.User;
 import com.github.sviperll.adt4j.examples.UserKey;
 import com.github.sviperll.adt4j.examples.UserVisitor;
@@ -39,6 +51,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -109,6 +129,257 @@ public class MainTest {
         assertTrue("userKey1.equals(userKey2)", userKey1.equals(userKey2));
     }
 
+    @Test
+    public void testEqualsWithCachedHashCode() {
+        Expression expression1 = Expression.add(Expression.lit(1), Expression.mul(Expression.lit(2), Expression.lit(3)));
+        Expression expression2 = Expression.add(Expression.lit(1), Expression.mul(Expression.lit(2), Expression.lit(3)));
+        Expression expression3 = Expression.add(Expression.lit(1), Expression.mul(Expression.lit(2), Expression.lit(4)));
+
+        assertTrue("expression1.equals(expression2)", expression1.equals(expression2));
+        expression1.hashCode();
+        assertTrue("expression1.equals(expression2)", expression1.equals(expression2));
+        expression2.hashCode();
+        assertTrue("expression1.equals(expression2)", expression1.equals(expression2));
+
+        assertFalse("expression1.equals(expression3)", expression1.equals(expression3));
+        expression3.hashCode();
+        assertFalse("expression1.equals(expression3)", expression1.equals(expression3));
+    }
+
+    @Test
+    public void testEpsilonEqualsWithCachedHashCode() {
+        Measurement measurement1 = Measurement.valueOf(1.0);
+        Measurement measurement2 = Measurement.valueOf(1.0 + 1e-13);
+
+        assertTrue("measurement1.equals(measurement2)", measurement1.equals(measurement2));
+        measurement1.hashCode();
+        measurement2.hashCode();
+        assertTrue("measurement1.equals(measurement2)", measurement1.equals(measurement2));
+
+        SensorFrame frame1 = SensorFrame.reading("s1", 10L, new double[] {1.0}, null);
+        SensorFrame frame2 = SensorFrame.reading("s1", 10L, new double[] {1.0 + 1e-13}, null);
+        assertTrue("frame1.equals(frame2)", frame1.equals(frame2));
+    }
+
+    @Test
+    public void testSharedTailComparison() {
+        ComparableList<Integer> tail = ComparableList.<Integer>empty();
+        for (int i = 0; i < 100000; i++)
+            tail = ComparableList.prepend(i, tail);
+        ComparableList<Integer> list1 = ComparableList.prepend(1, tail);
+        ComparableList<Integer> list2 = ComparableList.prepend(1, tail);
+        ComparableList<Integer> list3 = ComparableList.prepend(2, tail);
+
+        assertTrue("list1.equals(list2)", list1.equals(list2));
+        assertTrue("list1.compareTo(list2) == 0", list1.compareTo(list2) == 0);
+        assertFalse("list1.equals(list3)", list1.equals(list3));
+        assertTrue("list1.compareTo(list3) < 0", list1.compareTo(list3) < 0);
+    }
+
+    @Test
+    public void testArrayFieldEquality() {
+        PartitionKey tenant = PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS);
+        PartitionKey key1 = PartitionKey.shard(tenant, 3, null, new long[] {0L, 100L});
+        PartitionKey key2 = PartitionKey.shard(tenant, 3, null, new long[] {0L, 100L});
+        PartitionKey key3 = PartitionKey.shard(tenant, 3, null, new long[] {0L, 101L});
+        PartitionKey key4 = PartitionKey.shard(tenant, 3, null, new long[] {0L});
+        assertTrue("key1.equals(key2)", key1.equals(key2));
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertFalse("key1.equals(key3)", key1.equals(key3));
+        assertFalse("key1.equals(key4)", key1.equals(key4));
+
+        SensorFrame frame1 = SensorFrame.reading("s1", 10L, new double[] {1.0, 2.0}, null);
+        SensorFrame frame2 = SensorFrame.reading("s1", 10L, new double[] {1.0 + 1e-13, 2.0}, null);
+        SensorFrame frame3 = SensorFrame.reading("s1", 10L, new double[] {1.0, 2.5}, null);
+        SensorFrame frame4 = SensorFrame.reading("s1", 10L, new double[] {1.0, 2.0}, null);
+        assertTrue("frame1.equals(frame2)", frame1.equals(frame2));
+        assertFalse("frame1.equals(frame3)", frame1.equals(frame3));
+        assertTrue("frame1.equals(frame4)", frame1.equals(frame4));
+        assertEquals(frame1.hashCode(), frame4.hashCode());
+    }
+
+    @Test
+    public void testBitwiseFloatEquality() {
+        Point point1 = Point.valueOf(Double.NaN, 0.0, new float[] {Float.NaN});
+        Point point2 = Point.valueOf(Double.NaN, 0.0, new float[] {Float.NaN});
+        Point point3 = Point.valueOf(Double.NaN, -0.0, new float[] {Float.NaN});
+
+        assertTrue("point1.equals(point2)", point1.equals(point2));
+        assertEquals(point1.hashCode(), point2.hashCode());
+        assertTrue("point1.compareTo(point2) == 0", point1.compareTo(point2) == 0);
+        assertFalse("point1.equals(point3)", point1.equals(point3));
+        assertTrue("point1.compareTo(point3) > 0", point1.compareTo(point3) > 0);
+    }
+
+    @Test
+    public void testMurmur3HashFunction() {
+        GridCell cell1 = GridCell.valueOf(3, 5, true);
+        GridCell cell2 = GridCell.valueOf(3, 5, true);
+        assertTrue("cell1.equals(cell2)", cell1.equals(cell2));
+        assertEquals(cell1.hashCode(), cell2.hashCode());
+
+        // Low bits of hash codes should be well distributed
+        // even for small field values
+        Set<Integer> buckets = new HashSet<Integer>();
+        for (int row = 0; row < 16; row++) {
+            for (int column = 0; column < 16; column++) {
+                buckets.add(GridCell.valueOf(row, column, true).hashCode() & 0xFF);
+            }
+        }
+        assertTrue("buckets.size() > 128", buckets.size() > 128);
+    }
+
+    @Test
+    public void testStableHash64() {
+        PartitionKey tenant = PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS);
+        PartitionKey key1 = PartitionKey.shard(tenant, 3, null, new long[] {0L, 100L});
+        PartitionKey key2 = PartitionKey.shard(PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS), 3, null, new long[] {0L, 100L});
+        PartitionKey key3 = PartitionKey.shard(tenant, 3, 1L, new long[] {0L, 100L});
+
+        assertEquals(key1.stableHash64(), key2.stableHash64());
+        assertFalse("key1.stableHash64() != key3.stableHash64()", key1.stableHash64() == key3.stableHash64());
+        assertFalse("tenant.stableHash64() != UserKey.valueOf(1).stableHash64()", tenant.stableHash64() == UserKey.valueOf(1).stableHash64());
+
+        // Stable hash should never change between JVM processes and releases
+        assertEquals(-1317689651368146414L, key1.stableHash64());
+    }
+
+    @Test
+    public void testGenericStableHash64() {
+        Labeled<String> string1 = Labeled.labeled("a", "x");
+        Labeled<String> string2 = Labeled.labeled("a", "x");
+        Labeled<String> string3 = Labeled.labeled("a", "y");
+        assertEquals(string1.stableHash64(), string2.stableHash64());
+        assertFalse("string1.stableHash64() != string3.stableHash64()", string1.stableHash64() == string3.stableHash64());
+
+        Labeled<TimeUnit> unit1 = Labeled.labeled("a", TimeUnit.DAYS);
+        Labeled<TimeUnit> unit2 = Labeled.labeled("a", TimeUnit.HOURS);
+        assertFalse("unit1.stableHash64() != unit2.stableHash64()", unit1.stableHash64() == unit2.stableHash64());
+
+        Labeled<Labeled<Integer>> nested1 = Labeled.labeled("a", Labeled.labeled("b", 1));
+        Labeled<Labeled<Integer>> nested2 = Labeled.labeled("a", Labeled.labeled("b", 1));
+        Labeled<Labeled<Integer>> nested3 = Labeled.labeled("a", Labeled.labeled("b", 2));
+        assertEquals(nested1.stableHash64(), nested2.stableHash64());
+        assertFalse("nested1.stableHash64() != nested3.stableHash64()", nested1.stableHash64() == nested3.stableHash64());
+
+        try {
+            Labeled.labeled("a", new Object()).stableHash64();
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testIncrementalHashCodeUpdate() {
+        SensorFrame reading = SensorFrame.reading("t1", 100L, new double[] {1.0, 2.5, -0.0}, null);
+        SensorFrame missing = SensorFrame.missing(100L, "t1");
+
+        SensorFrame updated = reading.withTimestamp(200L).withSensor("t2").withLabel("calibrated").withSamples(new double[] {Double.NaN});
+        SensorFrame expected = SensorFrame.reading("t2", 200L, new double[] {Double.NaN}, "calibrated");
+        assertEquals(expected, updated);
+        assertEquals(expected.hashCode(), updated.hashCode());
+
+        updated = updated.withLabel(null).withSamples(new double[] {1.0, 2.5, -0.0}).withSensor("t1").withTimestamp(100L);
+        assertEquals(reading, updated);
+        assertEquals(reading.hashCode(), updated.hashCode());
+
+        updated = missing.withSensor("t2").withTimestamp(300L).withSamples(new double[] {1.0});
+        expected = SensorFrame.missing(300L, "t2");
+        assertEquals(expected, updated);
+        assertEquals(expected.hashCode(), updated.hashCode());
+    }
+
+    @Test
+    public void testBatchUpdate() {
+        SensorFrame reading = SensorFrame.reading("t1", 100L, new double[] {1.0}, null);
+        SensorFrame updated = reading.batchUpdate().withTimestamp(200L).withSensor("t2").withLabel("calibrated").build();
+        SensorFrame expected = SensorFrame.reading("t2", 200L, reading.samples(), "calibrated");
+        assertEquals(expected, updated);
+        assertEquals(expected.hashCode(), updated.hashCode());
+        assertSame(reading, reading.batchUpdate().build());
+        assertSame(reading, reading.batchUpdate().withSensor("t1").withTimestamp(100L).withLabel(null).build());
+
+        SensorFrame missing = SensorFrame.missing(100L, "t1");
+        assertEquals(SensorFrame.missing(300L, "t1"), missing.batchUpdate().withTimestamp(300L).withSamples(new double[] {1.0}).build());
+    }
+
+    @Test
+    public void testBuilders() {
+        SensorFrame.ReadingSensorFrameBuilder builder = SensorFrame.readingBuilder();
+        double[] samples = new double[] {1.0};
+        SensorFrame first = builder.sensor("t1").timestamp(100L).samples(samples).build();
+        SensorFrame second = builder.timestamp(200L).label("calibrated").build();
+        assertEquals(SensorFrame.reading("t1", 100L, samples, null), first);
+        assertEquals(SensorFrame.reading("t1", 200L, samples, "calibrated"), second);
+        assertEquals(SensorFrame.missing(300L, "t2"), SensorFrame.missingBuilder().timestamp(300L).sensor("t2").build());
+        try {
+            SensorFrame.missingBuilder().timestamp(300L).build();
+            fail("NullPointerException expected for missing sensor");
+        } catch (NullPointerException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDigestInto() throws NoSuchAlgorithmException {
+        PartitionKey tenant = PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS);
+        PartitionKey key1 = PartitionKey.shard(tenant, 3, null, new long[] {0L, 100L});
+        PartitionKey key2 = PartitionKey.shard(PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS), 3, null, new long[] {0L, 100L});
+        PartitionKey key3 = PartitionKey.shard(tenant, 3, 1L, new long[] {0L, 100L});
+
+        assertArrayEquals(digest("SHA-256", key1::digestInto), digest("SHA-256", key2::digestInto));
+        assertFalse("digest(key1) != digest(key3)", Arrays.equals(digest("SHA-256", key1::digestInto), digest("SHA-256", key3::digestInto)));
+
+        // UserKey caches hash code so its digest is memoized for each algorithm
+        UserKey user = UserKey.valueOf(1);
+        byte[] sha256 = digest("SHA-256", user::digestInto);
+        byte[] md5 = digest("MD5", user::digestInto);
+        assertEquals(16, md5.length);
+        assertArrayEquals(sha256, digest("SHA-256", user::digestInto));
+        assertArrayEquals(sha256, digest("SHA-256", UserKey.valueOf(1)::digestInto));
+        assertFalse("digest(UserKey.valueOf(1)) != digest(UserKey.valueOf(2))", Arrays.equals(sha256, digest("SHA-256", UserKey.valueOf(2)::digestInto)));
+    }
+
+    @Test
+    public void testGenericDigestInto() throws NoSuchAlgorithmException {
+        Labeled<Labeled<Integer>> nested1 = Labeled.labeled("a", Labeled.labeled("b", 1));
+        Labeled<Labeled<Integer>> nested2 = Labeled.labeled("a", Labeled.labeled("b", 1));
+        Labeled<Labeled<Integer>> nested3 = Labeled.labeled("a", Labeled.labeled("b", 2));
+        assertArrayEquals(digest("SHA-256", nested1::digestInto), digest("SHA-256", nested2::digestInto));
+        assertFalse("digest(nested1) != digest(nested3)", Arrays.equals(digest("SHA-256", nested1::digestInto), digest("SHA-256", nested3::digestInto)));
+
+        Labeled<Integer> integer = Labeled.labeled("a", 1);
+        Labeled<String> string = Labeled.labeled("a", "1");
+        assertFalse("digest(integer) != digest(string)", Arrays.equals(digest("SHA-256", integer::digestInto), digest("SHA-256", string::digestInto)));
+
+        try {
+            digest("SHA-256", Labeled.labeled("a", new Object())::digestInto);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testDigestIntoDoesntDependOnCaching() throws NoSuchAlgorithmException {
+        PartitionKey key = PartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS);
+        CachedPartitionKey cachedKey = CachedPartitionKey.tenant("acme", UserKey.valueOf(1), TimeUnit.DAYS);
+        for (int i = 0; i < 1000; i++) {
+            key = PartitionKey.shard(key, i, i % 2 == 0 ? null : (long)i, new long[] {i});
+            cachedKey = CachedPartitionKey.shard(cachedKey, i, i % 2 == 0 ? null : (long)i, new long[] {i});
+        }
+        byte[] sha256 = digest("SHA-256", key::digestInto);
+        assertArrayEquals(sha256, digest("SHA-256", cachedKey::digestInto));
+        assertArrayEquals(digest("MD5", key::digestInto), digest("MD5", cachedKey::digestInto));
+        assertArrayEquals(sha256, digest("SHA-256", cachedKey::digestInto));
+        assertArrayEquals(sha256, digest("SHA-256", key::digestInto));
+    }
+
+    private static byte[] digest(String algorithm, Consumer<MessageDigest> value) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        value.accept(digest);
+        return digest.digest();
+    }
+
     @Test
     public void testComparable() throws IOException, ClassNotFoundException {
         ComparableList<String> list1 = ComparableList.<String>empty();
@@ -144,4 +415,313 @@ public class MainTest {
         assertTrue("list1.compareTo(list2) < 0", list1.compareTo(list2) < 0);
         assertTrue("list2.compareTo(list1) > 0", list2.compareTo(list1) > 0);
     }
+
+    @Test
+    public void testLenses() {
+        ServerSettings primary = ServerSettings.of("primary.example.com", 80);
+        ServerSettings replica = ServerSettings.of("replica.example.com", 80);
+        Deployment deployment = Deployment.of("production", primary, replica);
+
+        Deployment.DeploymentLens<Deployment> root = Deployment.lens();
+        assertEquals(80, root.primary().port(deployment));
+        assertEquals("replica.example.com", root.replica().host(deployment));
+
+        Deployment updated = root.primary().withPort(deployment, 8080);
+        assertEquals(Deployment.of("production", ServerSettings.of("primary.example.com", 8080), replica), updated);
+        assertSame(replica, updated.replica());
+        assertSame(primary.host(), updated.primary().host());
+        assertEquals(80, deployment.primary().port());
+
+        assertSame(deployment, root.primary().withPort(deployment, 80));
+        assertSame(deployment, root.replica().withHost(deployment, replica.host()));
+        assertSame(deployment, root.withName(deployment, deployment.name()));
+
+        assertSame(root, Deployment.lens());
+        assertSame(root.primary(), root.primary());
+    }
+
+    @Test
+    public void testMap() {
+        List<String> list = List.nil();
+        for (int i = 0; i < 100000; i++) {
+            list = List.cons(i == 0 ? "last" : "element", list);
+        }
+        List<String> same = list.map(new List.ListMapper<String, String>() {
+            @Override
+            public String apply(String value) {
+                return value;
+            }
+        });
+        assertSame(list, same);
+
+        List<String> updated = list.map(new List.ListMapper<String, String>() {
+            @Override
+            public String apply(String value) {
+                return value.equals("last") ? "first" : value;
+            }
+        });
+        assertNotSame(list, updated);
+        assertEquals("element", updated.head());
+        List<String> last = updated;
+        while (!last.tail().isEmpty()) {
+            last = last.tail();
+        }
+        assertEquals("first", last.head());
+
+        List<Integer> lengths = List.cons("a", List.cons("bbb", List.<String>nil())).map(new List.ListMapper<String, Integer>() {
+            @Override
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        assertEquals(List.cons(1, List.cons(3, List.<Integer>nil())), lengths);
+    }
+
+    @Test
+    public void testChildren() {
+        Expression left = Expression.lit(1);
+        Expression right = Expression.lit(2);
+        Expression sum = Expression.add(left, right);
+        assertEquals(0, left.childCount());
+        assertEquals(2, sum.childCount());
+        assertSame(right, sum.child(1));
+        assertEquals(Arrays.asList(left, right), sum.children());
+        assertSame(sum, sum.withChildren(Arrays.asList(left, right)));
+        assertEquals(Expression.add(right, left), sum.withChildren(Arrays.asList(right, left)));
+        try {
+            sum.withChildren(Arrays.asList(left));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRewrite() {
+        final Expression zero = Expression.lit(0);
+        final Expression one = Expression.lit(1);
+        Expression.ExpressionRewriteRule rule = new Expression.ExpressionRewriteRule() {
+            @Override
+            public Expression apply(Expression value) {
+                if (value.isAdd() && value.right().equals(zero))
+                    return value.left();
+                else if (value.isMul() && value.right().equals(one))
+                    return Expression.add(value.left(), zero);
+                else
+                    return null;
+            }
+        };
+        Expression expression = Expression.lit(5);
+        for (int i = 0; i < 1000; i++) {
+            expression = i % 2 == 0 ? Expression.add(expression, zero) : Expression.mul(expression, one);
+        }
+        Expression shared = Expression.mul(Expression.lit(2), Expression.lit(3));
+        assertEquals(Expression.add(Expression.lit(5), shared), Expression.add(expression, shared).rewrite(rule));
+
+        Expression normal = Expression.add(shared, shared);
+        assertSame(normal, normal.rewrite(rule));
+    }
+
+    @Test
+    public void testFoldParallel() {
+        Expression.ExpressionFoldVisitor<Integer> evaluator = new Expression.ExpressionFoldVisitor<Integer>() {
+            @Override
+            public Integer add(Integer left, Integer right) {
+                return left + right;
+            }
+
+            @Override
+            public Integer mul(Integer left, Integer right) {
+                return left * right;
+            }
+
+            @Override
+            public Integer lit(int value) {
+                return value;
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            java.util.List<Expression> level = new java.util.ArrayList<Expression>();
+            for (int i = 0; i < 1 << 16; i++) {
+                level.add(Expression.lit(1));
+            }
+            while (level.size() > 1) {
+                java.util.List<Expression> nextLevel = new java.util.ArrayList<Expression>();
+                for (int i = 0; i < level.size(); i += 2) {
+                    nextLevel.add(Expression.add(level.get(i), level.get(i + 1)));
+                }
+                level = nextLevel;
+            }
+            Expression balanced = level.get(0);
+            assertEquals(65536, (int)balanced.foldParallel(pool, evaluator, 1000));
+            assertEquals(65536, (int)balanced.foldParallel(pool, evaluator, -1));
+
+            Expression deep = Expression.lit(0);
+            for (int i = 0; i < 100000; i++) {
+                deep = Expression.add(Expression.lit(1), deep);
+            }
+            assertEquals(100000, (int)deep.foldParallel(pool, evaluator, 1000));
+            assertEquals(100002, (int)Expression.add(deep, Expression.mul(Expression.lit(2), Expression.lit(1))).foldParallel(pool, evaluator, 0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFold() {
+        Expression.ExpressionFoldVisitor<String> printer = new Expression.ExpressionFoldVisitor<String>() {
+            @Override
+            public String add(String left, String right) {
+                return "(" + left + " + " + right + ")";
+            }
+
+            @Override
+            public String mul(String left, String right) {
+                return left + " * " + right;
+            }
+
+            @Override
+            public String lit(int value) {
+                return Integer.toString(value);
+            }
+        };
+        Expression expression = Expression.mul(Expression.add(Expression.lit(5), Expression.lit(1)), Expression.lit(2));
+        assertEquals("(5 + 1) * 2", expression.fold(printer));
+
+        Expression.ExpressionFoldVisitor<Long> evaluator = new Expression.ExpressionFoldVisitor<Long>() {
+            @Override
+            public Long add(Long left, Long right) {
+                return left + right;
+            }
+
+            @Override
+            public Long mul(Long left, Long right) {
+                return left * right;
+            }
+
+            @Override
+            public Long lit(int value) {
+                return (long)value;
+            }
+        };
+        Expression deep = Expression.lit(0);
+        for (int i = 1; i <= 200000; i++) {
+            deep = i % 2 == 0 ? Expression.add(deep, Expression.lit(i)) : Expression.add(Expression.lit(i), deep);
+        }
+        assertEquals(Long.valueOf(200000L * 200001L / 2), deep.fold(evaluator));
+    }
+
+    @Test
+    public void testIterator() {
+        assertFalse(List.<String>nil().iterator().hasNext());
+
+        List<Integer> list = List.nil();
+        for (int i = 100000; i > 0; i--) {
+            list = List.cons(i, list);
+        }
+        java.util.Iterator<Integer> iterator = list.iterator();
+        for (int i = 1; i <= 100000; i++) {
+            assertTrue(iterator.hasNext());
+            assertEquals(Integer.valueOf(i), iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.next();
+            fail("NoSuchElementException expected");
+        } catch (java.util.NoSuchElementException ex) {
+        }
+    }
+
+    @Test
+    public void testBulkFactories() {
+        Integer[] elements = new Integer[1000000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = i;
+        }
+        for (List<Integer> list: Arrays.asList(List.fromArray(elements), List.fromIterable(Arrays.asList(elements)))) {
+            for (int i = 0; i < elements.length; i++) {
+                assertEquals(Integer.valueOf(i), list.head());
+                list = list.tail();
+            }
+            assertTrue(list.isEmpty());
+        }
+        assertEquals(List.cons("a", List.cons("b", List.<String>nil())), List.fromArray(new String[] {"a", "b"}));
+        assertEquals(List.<Integer>nil(), List.fromArray(new Integer[0]));
+
+        BinaryTree<Integer> tree = BinaryTree.balancedFromArray(elements);
+        java.util.Iterator<Integer> iterator = tree.iterator();
+        for (int i = 0; i < elements.length; i++) {
+            assertEquals(Integer.valueOf(i), iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+        int depth = 0;
+        for (BinaryTree<Integer> node = tree; !node.isEmpty(); node = node.left()) {
+            depth++;
+        }
+        assertEquals(20, depth);
+        assertEquals(tree, BinaryTree.balancedFromIterable(Arrays.asList(elements)));
+        assertEquals(BinaryTree.node(BinaryTree.node(BinaryTree.<String>empty(), "a", BinaryTree.<String>empty()), "b", BinaryTree.<String>empty()),
+                     BinaryTree.balancedFromArray(new String[] {"a", "b"}));
+    }
+
+    @Test
+    public void testAttributes() throws IOException, ClassNotFoundException {
+        Integer[] elements = new Integer[1000];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = i;
+        }
+        BinaryTree<Integer> tree = BinaryTree.balancedFromArray(elements);
+        // Empty subtrees are nodes too
+        assertEquals(2001, tree.nodeCount());
+        assertEquals(1, BinaryTree.<Integer>empty().nodeCount());
+        assertEquals(11, tree.depth());
+        assertEquals(1, BinaryTree.<Integer>empty().depth());
+
+        ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
+        ObjectOutputStream outputStream = new ObjectOutputStream(byteArray);
+        outputStream.writeObject(tree);
+        ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(byteArray.toByteArray()));
+        @SuppressWarnings("unchecked")
+        BinaryTree<Integer> deserialized = (BinaryTree<Integer>)inputStream.readObject();
+        assertEquals(tree, deserialized);
+        assertEquals(2001, deserialized.nodeCount());
+        assertEquals(11, deserialized.depth());
+
+        Expression shared = Expression.add(Expression.lit(2), Expression.lit(3));
+        Expression expression = shared;
+        for (int i = 0; i < 40; i++) {
+            expression = Expression.mul(expression, expression);
+        }
+        assertEquals(Long.valueOf(5L << 40), expression.literalSum());
+    }
+
+    @Test
+    public void testLazyAttributes() {
+        Expression expression1 = Expression.mul(Expression.add(Expression.lit(3), Expression.lit(2)), Expression.lit(4));
+        Expression expression2 = Expression.mul(Expression.lit(4), Expression.add(Expression.lit(2), Expression.lit(3)));
+        assertEquals("((2 + 3) * 4)", expression1.canonicalText());
+        assertEquals(expression1.canonicalText(), expression2.canonicalText());
+        assertSame(expression1.canonicalText(), expression1.canonicalText());
+        assertSame(expression1.left().canonicalText(), expression1.left().canonicalText());
+        assertEquals(Integer.valueOf(4), Expression.mul(Expression.lit(4), Expression.lit(4)).commonLiteral());
+        assertNull(expression1.commonLiteral());
+        assertEquals(3, expression1.depth());
+    }
+
+    @Test
+    public void testDeepLazyAttributes() {
+        Expression expression = Expression.lit(1);
+        Expression mismatched = Expression.lit(2);
+        for (int i = 0; i < 200000; i++) {
+            expression = Expression.add(Expression.lit(1), expression);
+            mismatched = Expression.add(Expression.lit(1), mismatched);
+        }
+        assertEquals(200001, expression.depth());
+        assertEquals(Integer.valueOf(1), expression.commonLiteral());
+        assertEquals(Integer.valueOf(1), expression.right().commonLiteral());
+        assertNull(mismatched.commonLiteral());
+        assertNull(mismatched.commonLiteral());
+        assertNull(mismatched.right().commonLiteral());
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j;
+
+import com.github.sviperll.adt4j.java8.StreamList;
+import com.github.sviperll.adt4j.java8.StreamTree;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests spliterator and stream methods, that are generated only for Java 8 sources.
+ * <p>
+ * Test sources are compiled as Java 8 sources, while examples are compiled as Java 7 sources.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public class StreamTest {
+    private static final int SIZE = 100000;
+    private static final long SUM = (long)SIZE * (SIZE - 1) / 2;
+
+    private static Integer[] elements() {
+        Integer[] elements = new Integer[SIZE];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = i;
+        }
+        return elements;
+    }
+
+    private static List<Integer> iteratedElements(Iterator<Integer> iterator) {
+        List<Integer> result = new ArrayList<>();
+        while (iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    private static void splitRecursively(Spliterator<Integer> spliterator, int depth, List<Integer> result) {
+        long size = spliterator.getExactSizeIfKnown();
+        Spliterator<Integer> prefix = depth == 0 ? null : spliterator.trySplit();
+        if (prefix != null) {
+            assertTrue(prefix.hasCharacteristics(Spliterator.SIZED));
+            assertEquals(size, prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown());
+            splitRecursively(prefix, depth - 1, result);
+            splitRecursively(spliterator, depth - 1, result);
+        } else {
+            int start = result.size();
+            spliterator.forEachRemaining(result::add);
+            assertEquals(size, result.size() - start);
+        }
+    }
+
+    @Test
+    public void testListSpliterator() {
+        StreamList<Integer> list = StreamList.fromArray(elements());
+        Spliterator<Integer> spliterator = list.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+        assertEquals(SIZE, spliterator.getExactSizeIfKnown());
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertEquals(SIZE, prefix.estimateSize() + spliterator.estimateSize());
+        assertEquals(0L, StreamList.<Integer>nil().spliterator().getExactSizeIfKnown());
+    }
+
+    @Test
+    public void testListParallelStream() {
+        StreamList<Integer> list = StreamList.fromArray(elements());
+        assertEquals(SUM, list.stream().parallel().mapToLong(Integer::longValue).sum());
+        assertEquals(SIZE, list.stream().parallel().count());
+        assertEquals(Integer.valueOf(0), list.stream().parallel().findFirst().get());
+    }
+
+    @Test
+    public void testTreeParallelStream() {
+        StreamTree<Integer> tree = StreamTree.balancedFromArray(elements());
+        Spliterator<Integer> spliterator = tree.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+        assertEquals(SIZE, spliterator.getExactSizeIfKnown());
+        assertNotNull(spliterator.trySplit());
+        assertEquals(SUM, tree.stream().parallel().mapToLong(Integer::longValue).sum());
+        assertEquals(SIZE, tree.stream().parallel().distinct().count());
+    }
+
+    @Test
+    public void testTreeSpliteratorSplitsStructurally() {
+        StreamTree<Integer> tree = StreamTree.balancedFromArray(elements());
+        Spliterator<Integer> spliterator = tree.spliterator();
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertTrue(prefix.hasCharacteristics(Spliterator.SUBSIZED));
+        assertTrue("prefix.estimateSize() > SIZE / 4", prefix.estimateSize() > SIZE / 4);
+        assertTrue("spliterator.estimateSize() > SIZE / 4", spliterator.estimateSize() > SIZE / 4);
+        assertEquals(SIZE, prefix.estimateSize() + spliterator.estimateSize());
+
+        List<Integer> result = new ArrayList<>();
+        prefix.forEachRemaining(result::add);
+        spliterator.forEachRemaining(result::add);
+        assertEquals(iteratedElements(tree.iterator()), result);
+    }
+
+    @Test
+    public void testSplitsPreserveOrderAndSizes() {
+        StreamTree<Integer> tree = StreamTree.balancedFromArray(elements());
+        List<Integer> treeResult = new ArrayList<>();
+        splitRecursively(tree.spliterator(), 12, treeResult);
+        assertEquals(iteratedElements(tree.iterator()), treeResult);
+
+        StreamList<Integer> list = StreamList.fromArray(elements());
+        List<Integer> listResult = new ArrayList<>();
+        splitRecursively(list.spliterator(), 12, listResult);
+        assertEquals(iteratedElements(list.iterator()), listResult);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j;
+
+/**
+ * Denotes how synthesized attribute is computed from fields of value
+ *
+ * @see GenerateAttribute
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public enum AttributeKind {
+    /**
+     * Number of nodes in value: one plus node counts of all fields of value class type.
+     * <p>
+     * Every case is a node, including cases without elements,
+     * so list of n elements has n + 1 nodes and binary tree of n elements has 2n + 1 nodes.
+     * Number of elements of value is not known by processor,
+     * custom attribute should be used to count them.
+     * <p>
+     * Node count is an int, saturated at Integer.MAX_VALUE, since shared subtrees are counted every time they occur.
+     */
+    NODE_COUNT,
+
+    /**
+     * Depth of value: one plus the largest depth among fields of value class type.
+     * <p>
+     * Depth is an int.
+     */
+    DEPTH,
+
+    /**
+     * Attribute is computed by user-supplied visitor.
+     * <p>
+     * Visitor receives attribute values of fields of value class type instead of these fields
+     * and values of all other fields as is.
+     *
+     * @see GenerateAttribute#visitor()
+     */
+    CUSTOM;
+}
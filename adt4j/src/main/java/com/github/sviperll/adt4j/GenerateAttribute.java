@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates synthesized attribute of value class.
+ * <p>
+ * Synthesized attribute is computed from fields of value, where fields of value class type
+ * are replaced with their attribute values.
+ * Attribute is computed once, when value is constructed, and is stored in a field of every value,
+ * so getter of attribute takes constant time.
+ * Lazy attribute is computed on first access instead, see {@link #lazy()}.
+ * <p>
+ * <blockquote><pre><code>
+ *     &#64;GenerateValueClassForVisitor
+ *     &#64;GenerateAttribute(name = "nodeCount", kind = AttributeKind.NODE_COUNT)
+ *     &#64;Visitor(resultVariableName = "R", selfReferenceVariableName = "S")
+ *     interface ListVisitor&lt;T, S, R&gt; {
+ *         R empty();
+ *         R prepend(T head, S tail);
+ *     }
+ * </code></pre></blockquote>
+ * <p>
+ * <tt>nodeCount()</tt> method will be generated in the example above,
+ * it returns n + 1 for list of n elements, since empty list is counted as node too.
+ *
+ * @see GenerateAttributes
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Documented
+public @interface GenerateAttribute {
+    /**
+     * Name of generated attribute getter.
+     *
+     * @return Name of generated attribute getter
+     */
+    String name();
+
+    /**
+     * How attribute is computed.
+     *
+     * @return How attribute is computed
+     */
+    AttributeKind kind() default AttributeKind.CUSTOM;
+
+    /**
+     * Type of custom attribute.
+     * <p>
+     * Node count and depth attributes are always of int type.
+     *
+     * @return Type of custom attribute
+     */
+    Class<?> type() default Object.class;
+
+    /**
+     * Visitor that computes custom attribute.
+     * <p>
+     * Visitor should be a class with accessible constructor without arguments,
+     * that implements visitor-interface, where self-reference type-variable and result type-variable
+     * are both replaced with attribute type.
+     * Visitor should be free of side-effects, since it is shared by all values.
+     * <p>
+     * <blockquote><pre><code>
+     *     class ExpressionWeight implements ExpressionVisitor&lt;Integer, Integer&gt; {
+     *         public Integer lit(int value) {
+     *             return 1;
+     *         }
+     *         public Integer add(Integer left, Integer right) {
+     *             return left + right + 1;
+     *         }
+     *     }
+     * </code></pre></blockquote>
+     *
+     * @return Visitor that computes custom attribute
+     */
+    Class<?> visitor() default Object.class;
+
+    /**
+     * Java's access modifier for generated attribute getter.
+     *
+     * @return Java's access modifier for generated attribute getter.
+     */
+    MemberAccess access() default MemberAccess.PUBLIC;
+
+    /**
+     * Weather attribute is computed on first access instead of value construction.
+     * <p>
+     * Lazy attribute is stored in a non-final field, that is excluded from equals, hashCode and serialization,
+     * like cached hash code.
+     * Computed attribute is published without locking, so
+     * attribute may be computed more than once when it's accessed concurrently.
+     * Null result of custom attribute visitor is cached as well.
+     * <p>
+     * First access to lazy attribute computes attributes of all fields of value class type,
+     * that are not yet computed.
+     * Values are traversed with explicit stack, so deep values don't overflow the stack.
+     *
+     * @return Weather attribute is computed on first access
+     */
+    boolean lazy() default false;
+}
@@ -173,6 +173,17 @@ public @interface GenerateValueClassForVisitor {
      */
     int hashCodeBase() default 37;
 
+    /**
+     * Function used by generated hashCode method to combine hash codes of fields.
+     * <p>
+     * {@code MURMUR3} should be used when values with small integer or boolean fields
+     * are used as keys in hash-based collections.
+     *
+     * @return function used to combine hash codes of fields
+     * @see HashFunction
+     */
+    HashFunction hashFunction() default HashFunction.POLYNOMIAL;
+
     /**
      * hashCode method caching strategy.
      * <p>
@@ -189,6 +200,258 @@ public @interface GenerateValueClassForVisitor {
      */
     Caching hashCodeCaching() default Caching.NONE;
 
+    /**
+     * Specifies weather stableHash64 method should be generated.
+     * <p>
+     * {@code long stableHash64()} method returns 64-bit hash code that only depends on
+     * case names and field values and is the same in every JVM process.
+     * It can be used as a partition key when values are distributed across processes.
+     * <p>
+     * Supported field types are primitives, boxed primitives, strings, enums,
+     * arrays of supported types and value classes with stableHash64 method.
+     * Fields of other types are reported as compilation errors.
+     * <p>
+     * Values of type variables are checked at run-time: they can be of any supported type
+     * or of the value class itself, {@code IllegalArgumentException} is thrown for other values.
+     *
+     * @return weather stableHash64 method should be generated
+     */
+    boolean generateStableHash64() default false;
+
+    /**
+     * Specifies weather digestInto method should be generated.
+     * <p>
+     * {@code void digestInto(MessageDigest digest)} method feeds canonical encoding
+     * of case name and field values directly into given digest.
+     * It can be used to compute content addresses of values.
+     * <p>
+     * Supported field types are primitives, boxed primitives, strings, enums,
+     * arrays of supported types and value classes with digestInto method.
+     * Fields of other types are reported as compilation errors.
+     * <p>
+     * Values of type variables are checked at run-time: they can be of any supported type
+     * or of the value class itself, {@code IllegalArgumentException} is thrown for other values.
+     * <p>
+     * Nested values with digestInto method are encoded as length followed by their own digest
+     * computed with the same algorithm.
+     * When hashCode caching is enabled, digests of nested values are memoized for last used algorithm,
+     * so nested values that are already digested are not traversed again.
+     * Encoding is the same whether digests are memoized or not.
+     *
+     * @return weather digestInto method should be generated
+     * @see #hashCodeCaching()
+     */
+    boolean generateDigestInto() default false;
+
+    /**
+     * Specifies weather batchUpdate method should be generated.
+     * <p>
+     * {@code batchUpdate()} method returns mutable object with the same updaters as value class.
+     * Changes collected with this object are applied at once by its {@code build()} method,
+     * so that single new value is created instead of one value for each chained updater call:
+     * <blockquote><pre>{@code
+     * record = record.batchUpdate().withA(a).withB(b).withC(c).build();
+     * }</pre></blockquote>
+     * <p>
+     * Nothing is generated when value class has no updaters.
+     *
+     * @return weather batchUpdate method should be generated
+     * @see Updater
+     */
+    boolean generateBatchUpdate() default false;
+
+    /**
+     * Specifies weather builders should be generated for cases.
+     * <p>
+     * For each case with fields, static method named after the case with "Builder" suffix
+     * returns new mutable builder with a setter for each field.
+     * Builder's {@code build()} method creates value through the same static factory method,
+     * but fields are kept in builder, so the same builder can be reused to build next value:
+     * <blockquote><pre>{@code
+     * ValueOfRecordBuilder builder = Record.valueOfBuilder();
+     * for (Row row: rows) {
+     *     records.add(builder.id(row.getLong(0)).weight(row.getDouble(1)).build());
+     * }
+     * }</pre></blockquote>
+     * <p>
+     * Arrays are not copied, neither by setters nor by build method,
+     * so array passed to setter shouldn't be modified after value is built.
+     *
+     * @return weather builders should be generated
+     */
+    boolean generateBuilders() default false;
+
+    /**
+     * Specifies weather lens class should be generated.
+     * <p>
+     * Lens class is generated as nested class of value class named after value class with "Lens" suffix.
+     * Lens focuses on some value inside root value and has a method for every getter and updater
+     * that reads or updates corresponding field of focused value given root value.
+     * Fields with both getter and updater, whose type is a value class with lenses,
+     * can be focused on, so that deeply nested field can be updated in a single expression:
+     * <blockquote><pre>{@code
+     * Config updated = Config.lens().server().withPort(config, 8080);
+     * }</pre></blockquote>
+     * <p>
+     * Update reads values along the focused path once from the root down
+     * and rebuilds them once from the bottom up, so it takes time proportional to depth of focused value.
+     * Values along the focused path are rebuilt only when updated value actually changes,
+     * all other values are shared with original root.
+     *
+     * @return weather lens class should be generated
+     * @see Getter
+     * @see Updater
+     */
+    boolean generateLenses() default false;
+
+    /**
+     * Specifies weather map method should be generated.
+     * <p>
+     * Map method is only available for value classes with single unbounded type parameter.
+     * It applies given function to every field of type parameter type,
+     * recursively maps every field of value class type and keeps all other fields as is.
+     * Function is passed as an instance of generated nested interface named after value class
+     * with "Mapper" suffix:
+     * <blockquote><pre>{@code
+     * List<String> strings = integers.map(new ListMapper<Integer, String>() {
+     *     public String apply(Integer value) {
+     *         return value.toString();
+     *     }
+     * });
+     * }</pre></blockquote>
+     * <p>
+     * Map method doesn't use recursion, so it can be used with arbitrary long lists and deep trees.
+     * Nodes are rebuilt only when mapped values differ, so mostly-identity transformations
+     * reuse unchanged parts of original value and the value itself is returned
+     * when function returns the very same value for every element.
+     *
+     * @return weather map method should be generated
+     */
+    boolean generateMap() default false;
+
+    /**
+     * Specifies weather methods to access and replace children should be generated.
+     * <p>
+     * Children are values of fields of value class type itself, in the order of declaration.
+     * {@code childCount()} and {@code child(int)} methods allow to enumerate children without allocation,
+     * {@code children()} returns list of children and
+     * {@code withChildren(List)} returns value of the same case with children replaced.
+     * withChildren returns the very same value when every given child is the same as the current one.
+     * <p>
+     * When hash code is cached, {@code rewrite} method is generated as well.
+     * Rewrite method accepts rule as an instance of generated nested interface
+     * named after value class with "RewriteRule" suffix.
+     * Rule is applied bottom-up: to every child first and then to the value rebuilt from rewritten children.
+     * Whenever rule returns new value, this value is rewritten again, until rule returns null or equal value.
+     * Rewriting uses explicit stack instead of recursion and memoizes results with hash map,
+     * so equal subtrees are rewritten only once:
+     * <blockquote><pre>{@code
+     * Expression simplified = expression.rewrite(new ExpressionRewriteRule() {
+     *     public Expression apply(Expression value) {
+     *         return value.isMul() && value.right().equals(Expression.lit(1)) ? value.left() : null;
+     *     }
+     * });
+     * }</pre></blockquote>
+     *
+     * @return weather children and rewrite methods should be generated
+     * @see #hashCodeCaching()
+     */
+    boolean generateChildren() default false;
+
+    /**
+     * Specifies weather fold and foldParallel methods should be generated.
+     * <p>
+     * Fold visitor is an instance of generated nested interface
+     * named after value class with "FoldVisitor" suffix.
+     * Fold visitor has a method for every case of value class.
+     * Every field of value class type is replaced with the result of folding of this field,
+     * so evaluation of recursive value needs no recursive calls:
+     * <blockquote><pre>{@code
+     * int result = expression.fold(new ExpressionFoldVisitor<Integer>() {
+     *     public Integer lit(int value) {
+     *         return value;
+     *     }
+     *     public Integer add(Integer left, Integer right) {
+     *         return left + right;
+     *     }
+     *     ...
+     * });
+     * }</pre></blockquote>
+     * <p>
+     * foldParallel method folds value in given {@code ForkJoinPool}.
+     * Subtrees with more nodes than given threshold are folded as separate tasks,
+     * when there are at least two such subtrees among children of some node.
+     * Negative threshold disables forking altogether.
+     * Fold visitor methods may be called concurrently and should be free of side-effects:
+     * <blockquote><pre>{@code
+     * int sum = expression.foldParallel(pool, new ExpressionFoldVisitor<Integer>() {
+     *     public Integer lit(int value) {
+     *         return value;
+     *     }
+     *     public Integer add(Integer left, Integer right) {
+     *         return left + right;
+     *     }
+     *     ...
+     * }, 10000);
+     * }</pre></blockquote>
+     * <p>
+     * Folding uses explicit stack instead of recursion,
+     * so arbitrary deep values can be folded.
+     * Number of nodes is computed once and cached in every node.
+     *
+     * @return weather fold and foldParallel methods should be generated
+     */
+    boolean generateFold() default false;
+
+    /**
+     * Specifies weather iterator, spliterator and stream methods should be generated.
+     * <p>
+     * Value class should have exactly one type parameter.
+     * Elements are values of fields whose type is this type parameter.
+     * Elements of fields of value class type are enumerated in place of these fields,
+     * so {@code List.prepend(1, List.prepend(2, List.empty())).iterator()}
+     * returns 1 and then 2 and binary tree elements are enumerated in-order
+     * when value field is declared between left and right subtrees.
+     * Iteration uses explicit stack instead of recursion.
+     * <p>
+     * spliterator and stream methods are generated only when source version is Java 8 or later.
+     * Number of elements is computed once and cached in every node,
+     * so that spliterator reports {@code SIZED} characteristic.
+     * Spliterator splits structurally: subtrees are handed off with their cached number of elements,
+     * so parallel streams over balanced trees split without traversal.
+     * Lists and other values, where only single element can be handed off,
+     * are split by copying batches of elements.
+     *
+     * @return weather iterator, spliterator and stream methods should be generated
+     */
+    boolean generateStream() default false;
+
+    /**
+     * Specifies weather bulk factories should be generated.
+     * <p>
+     * Value class should have exactly one type parameter,
+     * a case without any fields and a case with single field of type parameter type
+     * and one or two fields of value class type.
+     * <p>
+     * For list-shaped value class, that is when node case has single field of value class type,
+     * {@code fromArray(T[])} and {@code fromIterable(Iterable)} methods are generated.
+     * Value is built by single loop from the last element to the first one:
+     * <blockquote><pre>{@code
+     * List<String> list = List.fromArray(new String[] {"a", "b", "c"});
+     * }</pre></blockquote>
+     * <p>
+     * For tree-shaped value class, that is when node case has two fields of value class type,
+     * {@code balancedFromArray(T[])} and {@code balancedFromIterable(Iterable)} methods are generated.
+     * These methods build balanced tree, whose elements are enumerated in the same order as they are given,
+     * see {@link #generateStream()}.
+     * <p>
+     * Values are built with usual factory methods,
+     * so cached hash codes are computed from already built children.
+     *
+     * @return weather bulk factories should be generated
+     */
+    boolean generateBulkFactories() default false;
+
     /**
      * Specifies weather generated class should be serializable.
      *
@@ -214,8 +477,31 @@ public @interface GenerateValueClassForVisitor {
      */
     long serialVersionUID() default 1L;
 
+    /**
+     * Equality of float and double fields in generated equals and compareTo methods.
+     * <p>
+     * {@code BITWISE} equality is consistent with generated hashCode method
+     * and should be used when values are used as keys in hash-based collections.
+     *
+     * @return equality of float and double fields
+     * @see FloatEquality
+     */
+    FloatEquality floatEquality() default FloatEquality.EPSILON;
+
+    /**
+     * Maximum difference of equal float values when {@code EPSILON} float equality is used.
+     *
+     * @return maximum difference of equal float values
+     * @see #floatEquality()
+     */
     float floatEpsilon() default 0.000001f;
-    double doubleEpsilon() default 0.000000000001;
 
+    /**
+     * Maximum difference of equal double values when {@code EPSILON} float equality is used.
+     *
+     * @return maximum difference of equal double values
+     * @see #floatEquality()
+     */
+    double doubleEpsilon() default 0.000000000001;
 
 }
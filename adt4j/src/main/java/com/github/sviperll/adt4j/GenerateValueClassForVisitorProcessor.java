@@ -34,6 +34,7 @@ import com.github.sviperll.adt4j.model.Stage0ValueClassModelFactory;
 import com.github.sviperll.adt4j.model.Stage1ValueClassModel;
 import com.github.sviperll.adt4j.model.util.FilerCodeWriter;
 import com.github.sviperll.adt4j.model.util.GenerationProcess;
+import com.github.sviperll.adt4j.model.util.GenerationStatistics;
 import com.github.sviperll.adt4j.model.util.Throwables;
 import com.helger.jcodemodel.AbstractJClass;
 import com.helger.jcodemodel.JAnnotationUse;
@@ -43,8 +44,12 @@ import com.helger.jcodemodel.JDefinedClass;
 import com.helger.jcodemodel.JPackage;
 import com.helger.jcodemodel.meta.CodeModelBuildingException;
 import com.helger.jcodemodel.meta.JCodeModelJavaxLangModelAdapter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -57,6 +62,7 @@ import java.util.logging.Logger;
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -65,6 +71,8 @@ import javax.lang.model.util.Elements;
 import javax.tools.Diagnostic;
 
 @SupportedAnnotationTypes({"com.github.sviperll.adt4j.GenerateValueClassForVisitor",
+                           "com.github.sviperll.adt4j.GenerateAttribute",
+                           "com.github.sviperll.adt4j.GenerateAttributes",
                            "com.github.sviperll.adt4j.GeneratePredicate",
                            "com.github.sviperll.adt4j.GeneratePredicates",
                            "com.github.sviperll.adt4j.Getter",
@@ -72,7 +80,17 @@ import javax.tools.Diagnostic;
                            "com.github.sviperll.adt4j.Visitor",
                            "com.github.sviperll.adt4j.WrapsGeneratedValueClass"})
 @SupportedSourceVersion(SourceVersion.RELEASE_7)
+@SupportedOptions({GenerateValueClassForVisitorProcessor.STATISTICS_OPTION})
 public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
+    /**
+     * Name of processor option that enables statistics report.
+     * <p>
+     * Option value is a path of a file to write report to, like {@code -Aadt4j.stats=target/adt4j-stats.json}.
+     * Report is a JSON document with time spent in each stage of processing
+     * and with size of generated code for each annotated element.
+     */
+    public static final String STATISTICS_OPTION = "adt4j.stats";
+
     private static final Logger logger = Logger.getLogger(GenerateValueClassForVisitorProcessor.class.getName());
     private static final Visitor DEFAULT_VISITOR_IMPLEMENTATION;
     static {
@@ -101,6 +119,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
 
     private final Set<String> remainingElements = new HashSet<>();
     private final Map<String, List<String>> errorMap = new TreeMap<>();
+    private final GenerationStatistics statistics = new GenerationStatistics();
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations,
@@ -161,6 +180,19 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
                 processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, typeElement);
             }
         }
+        String statisticsPath = processingEnv.getOptions().get(STATISTICS_OPTION);
+        if (statisticsPath != null)
+            writeStatistics(statisticsPath);
+    }
+
+    private void writeStatistics(String path) {
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8)) {
+                statistics.writeJson(writer);
+            }
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Unable to write " + STATISTICS_OPTION + " report to " + path + ": " + ex);
+        }
     }
 
     private class ElementProcessor {
@@ -220,7 +252,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
 
         void writeGeneratedCode() {
             try {
-                FilerCodeWriter writer = new FilerCodeWriter(processingEnv.getFiler(), processingEnv.getMessager());
+                FilerCodeWriter writer = new FilerCodeWriter(processingEnv.getFiler(), processingEnv.getMessager(), statistics);
                 try {
                     jCodeModel.build(writer);
                 } finally {
@@ -242,6 +274,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
             final JCodeModelJavaxLangModelAdapter adapter = new JCodeModelJavaxLangModelAdapter(bootJCodeModel, elementUtils);
             Stage0ValueClassModelFactory stage0Processor = Stage0ValueClassModelFactory.createFactory(new CheckExistingJDefinedClassFactory(adapter, elementUtils));
             for (TypeElement element: elements) {
+                long startTime = System.nanoTime();
                 JDefinedClass bootVisitorModel;
                 try {
                     bootVisitorModel = adapter.getClassWithErrorTypes(element);
@@ -257,6 +290,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
                     Stage0ValueClassModel model = stage0Processor.createStage0Model(bootVisitorModel, visitorAnnotation);
                     result.put(element.getQualifiedName().toString(), model);
                 }
+                statistics.recordStage0(element.getQualifiedName().toString(), System.nanoTime() - startTime);
             }
             return result;
         }
@@ -264,6 +298,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
         private Map<String, Stage1ValueClassModel> processStage1(Map<String, Stage0ValueClassModel> stage0Results) throws RuntimeException {
             Map<String, Stage1ValueClassModel> result = new TreeMap<>();
             for (TypeElement element: elements) {
+                long startTime = System.nanoTime();
                 GenerationProcess generation = new GenerationProcess();
                 Visitor visitorAnnotation = element.getAnnotation(Visitor.class);
                 if (visitorAnnotation == null) {
@@ -327,6 +362,7 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
                         result.put(element.getQualifiedName().toString(), model);
                 }
                 errorMap.put(element.getQualifiedName().toString(), generation.reportedErrors());
+                statistics.recordStage1(element.getQualifiedName().toString(), System.nanoTime() - startTime);
             }
             return result;
         }
@@ -334,15 +370,18 @@ public class GenerateValueClassForVisitorProcessor extends AbstractProcessor {
         private Map<String, TypeElement> processStage2(Map<String, Stage1ValueClassModel> stage1Results) {
             Map<String, TypeElement> result = new TreeMap<>();
             for (TypeElement element: elements) {
+                long startTime = System.nanoTime();
                 GenerationProcess generation = new GenerationProcess();
                 generation.reportAllErrors(errorMap.get(element.getQualifiedName().toString()));
                 Stage1ValueClassModel stage1Model = stage1Results.get(element.getQualifiedName().toString());
                 if (stage1Model != null) {
-                    JDefinedClass model = generation.processGenerationResult(stage1Model.createResult());
+                    JDefinedClass model = generation.processGenerationResult(stage1Model.createResult(processingEnv.getSourceVersion()));
                     if (model == null)
                         throw new IllegalStateException("Model shouldn't be null during stage2");
                     errorMap.put(element.getQualifiedName().toString(), generation.reportedErrors());
                     result.put(model.fullName(), element);
+                    statistics.recordStage2(element.getQualifiedName().toString(), System.nanoTime() - startTime);
+                    statistics.recordGeneratedClass(element.getQualifiedName().toString(), model);
                 }
             }
             return result;
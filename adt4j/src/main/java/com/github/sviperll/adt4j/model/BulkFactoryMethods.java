@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model;
+
+import com.github.sviperll.adt4j.model.config.VisitorDefinition;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JTypeVar;
+import com.helger.jcodemodel.JVar;
+import javax.annotation.Nullable;
+
+/**
+ * Recognizes shape of value class for generated bulk factories.
+ * <p>
+ * Value class can be built in bulk when it has an empty case without any fields
+ * and a node case with single field of type parameter type and one or two fields of value class type.
+ * Value class with single child field is list-shaped and is built from the last element to the first.
+ * Value class with two child fields is tree-shaped and is built as balanced tree.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class BulkFactoryMethods {
+    static final String FROM_ARRAY_METHOD_NAME = "fromArray";
+    static final String FROM_ITERABLE_METHOD_NAME = "fromIterable";
+    static final String BALANCED_FROM_ARRAY_METHOD_NAME = "balancedFromArray";
+    static final String BALANCED_FROM_ITERABLE_METHOD_NAME = "balancedFromIterable";
+
+    @Nullable
+    static Shape shape(VisitorDefinition visitorDefinition, JTypeVar typeParameter, AbstractJClass valueClass, AbstractJClass wrappedValueClass) {
+        String emptyCaseName = null;
+        for (JMethod interfaceMethod: visitorDefinition.methodDefinitions()) {
+            if (emptyCaseName == null && interfaceMethod.params().isEmpty() && interfaceMethod.varParam() == null)
+                emptyCaseName = interfaceMethod.name();
+        }
+        if (emptyCaseName == null)
+            return null;
+        for (JMethod interfaceMethod: visitorDefinition.methodDefinitions()) {
+            if (interfaceMethod.varParam() == null && interfaceMethod.typeParams().length == 0) {
+                int elementCount = 0;
+                int childCount = 0;
+                int childrenBeforeElement = 0;
+                boolean hasOtherFields = false;
+                for (JVar param: interfaceMethod.params()) {
+                    MapMethod.FieldKind kind = MapMethod.fieldKind(visitorDefinition, typeParameter, param.type(), valueClass, wrappedValueClass);
+                    if (kind == MapMethod.FieldKind.ELEMENT)
+                        elementCount++;
+                    else if (kind == MapMethod.FieldKind.CHILD) {
+                        childCount++;
+                        if (elementCount == 0)
+                            childrenBeforeElement++;
+                    } else
+                        hasOtherFields = true;
+                }
+                if (!hasOtherFields && elementCount == 1 && (childCount == 1 || childCount == 2))
+                    return new Shape(emptyCaseName, interfaceMethod.name(), childCount, childrenBeforeElement);
+            }
+        }
+        return null;
+    }
+
+    private BulkFactoryMethods() {
+    }
+
+    static class Shape {
+        private final String emptyCaseName;
+        private final String nodeCaseName;
+        private final int childCount;
+        private final int childrenBeforeElement;
+
+        private Shape(String emptyCaseName, String nodeCaseName, int childCount, int childrenBeforeElement) {
+            this.emptyCaseName = emptyCaseName;
+            this.nodeCaseName = nodeCaseName;
+            this.childCount = childCount;
+            this.childrenBeforeElement = childrenBeforeElement;
+        }
+
+        String emptyCaseName() {
+            return emptyCaseName;
+        }
+
+        String nodeCaseName() {
+            return nodeCaseName;
+        }
+
+        boolean isTree() {
+            return childCount == 2;
+        }
+
+        /**
+         * Number of fields of value class type declared before element field.
+         */
+        int childrenBeforeElement() {
+            return childrenBeforeElement;
+        }
+    }
+}
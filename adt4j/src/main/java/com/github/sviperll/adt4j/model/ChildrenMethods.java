@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model;
+
+import com.github.sviperll.adt4j.model.config.VisitorDefinition;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JTypeVar;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Recognizes child fields for generated children, withChildren and rewrite methods.
+ * <p>
+ * Child field is a field of value class type with exactly the same type arguments as the value itself,
+ * that is field that is declared with self-reference type variable of visitor
+ * or with explicitly written value class type.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class ChildrenMethods {
+    static final String CHILD_COUNT_METHOD_NAME = "childCount";
+    static final String CHILD_METHOD_NAME = "child";
+    static final String CHILDREN_METHOD_NAME = "children";
+    static final String WITH_CHILDREN_METHOD_NAME = "withChildren";
+    static final String REWRITE_METHOD_NAME = "rewrite";
+
+    static boolean isChild(VisitorDefinition visitorDefinition, Collection<? extends JTypeVar> typeParameters, AbstractJType type, AbstractJClass valueClass, AbstractJClass wrappedValueClass) {
+        return visitorDefinition.isSelfTypeParameter(type)
+               || isValueClass(type, typeParameters, valueClass)
+               || isValueClass(type, typeParameters, wrappedValueClass);
+    }
+
+    private static boolean isValueClass(AbstractJType type, Collection<? extends JTypeVar> typeParameters, AbstractJClass valueClass) {
+        if (type.isError() || valueClass.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = (AbstractJClass)type;
+        if (!klass.erasure().fullName().equals(valueClass.erasure().fullName()))
+            return false;
+        List<? extends AbstractJClass> typeArguments = klass.getTypeParameters();
+        if (typeArguments.size() != typeParameters.size())
+            return false;
+        Iterator<? extends AbstractJClass> typeArgument = typeArguments.iterator();
+        for (JTypeVar typeParameter: typeParameters) {
+            if (typeArgument.next() != typeParameter)
+                return false;
+        }
+        return true;
+    }
+
+    private ChildrenMethods() {
+    }
+}
@@ -29,9 +29,11 @@
  */
 package com.github.sviperll.adt4j.model;
 
+import com.github.sviperll.adt4j.FloatEquality;
 import com.github.sviperll.adt4j.model.config.FloatCustomization;
 import com.github.sviperll.adt4j.model.util.Types;
 import com.github.sviperll.adt4j.model.util.VariableNameSource;
+import com.helger.jcodemodel.AbstractJClass;
 import com.helger.jcodemodel.AbstractJType;
 import com.helger.jcodemodel.IJExpression;
 import com.helger.jcodemodel.JBlock;
@@ -100,12 +102,13 @@ class CompareToMethod {
         }
 
         private void appendNonnullArray(IJExpression value1, IJExpression value2, AbstractJType type) {
+            JBlock notSame = body._if(value1.ne(value2))._then();
             JInvocation invocation = types._Math.staticInvoke("min");
             invocation.arg(value1.ref("length"));
             invocation.arg(value2.ref("length"));
-            JVar length = body.decl(types._int, nameSource.get("length"), invocation);
+            JVar length = notSame.decl(types._int, nameSource.get("length"), invocation);
             VariableNameSource localNames = nameSource.forBlock();
-            JForLoop _for = body._for();
+            JForLoop _for = notSame._for();
             JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
             _for.test(i.lt(length));
             _for.update(i.incr());
@@ -114,32 +117,44 @@ class CompareToMethod {
                 forBody.appendNullableValue(type.elementType(), value1.component(i), value2.component(i));
             else
                 forBody.appendNotNullValue(type.elementType(), value1.component(i), value2.component(i));
-            appendNotNullValue(types._int, value1.ref("length"), value2.ref("length"));
+            Body notSameBody = new Body(resultVariable, notSame, nameSource);
+            notSameBody.appendNotNullValue(types._int, value1.ref("length"), value2.ref("length"));
         }
 
         private void appendPrimitive(AbstractJType type, IJExpression value1, IJExpression value2) {
-            IJExpression equalityCondition;
-            if (!type.name().equals("float") && !type.name().equals("doable")) {
-                equalityCondition = value1.eq(value2);
+            IJExpression condition;
+            if (isFloatingPoint(type) && floatCustomization.floatEquality() == FloatEquality.BITWISE) {
+                AbstractJClass boxedType = type.name().equals("float") ? types._Float : types._Double;
+                condition = boxedType.staticInvoke("compare").arg(value1).arg(value2);
             } else {
-                IJExpression epsilon = type.name().equals("float") ? JExpr.lit(floatCustomization.floatEpsilon()) : JExpr.lit(floatCustomization.doubleEpsilon());
-                JInvocation invocation = types._Math.staticInvoke("abs");
-                invocation.arg(value1.minus(value2));
-                equalityCondition = invocation.lte(epsilon);
+                IJExpression equalityCondition;
+                if (!isFloatingPoint(type)) {
+                    equalityCondition = value1.eq(value2);
+                } else {
+                    IJExpression epsilon = type.name().equals("float") ? JExpr.lit(floatCustomization.floatEpsilon()) : JExpr.lit(floatCustomization.doubleEpsilon());
+                    JInvocation invocation = types._Math.staticInvoke("abs");
+                    invocation.arg(value1.minus(value2));
+                    equalityCondition = invocation.lte(epsilon);
+                }
+                condition = JOp.cond(equalityCondition, JExpr.lit(0), JOp.cond(value1.lt(value2), JExpr.lit(-1), JExpr.lit(1)));
             }
-            IJExpression condition = JOp.cond(equalityCondition, JExpr.lit(0), JOp.cond(value1.lt(value2), JExpr.lit(-1), JExpr.lit(1)));
             body.assign(resultVariable, condition);
             JConditional _if = body._if(resultVariable.ne(JExpr.lit(0)));
             _if._then()._return(resultVariable);
         }
 
         private void appendNonnullComparable(IJExpression value1, IJExpression value2) {
+            // Identity check avoids walking shared parts of persistent structures
+            JBlock notSame = body._if(value1.ne(value2))._then();
             JInvocation invocation = value1.invoke("compareTo");
             invocation.arg(value2);
-            body.assign(resultVariable, invocation);
-            JConditional _if = body._if(resultVariable.ne(JExpr.lit(0)));
+            notSame.assign(resultVariable, invocation);
+            JConditional _if = notSame._if(resultVariable.ne(JExpr.lit(0)));
             _if._then()._return(resultVariable);
         }
     }
 
+    private static boolean isFloatingPoint(AbstractJType type) {
+        return type.name().equals("float") || type.name().equals("double");
+    }
 }
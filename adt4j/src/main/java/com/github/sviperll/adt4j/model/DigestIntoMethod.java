@@ -0,0 +1,560 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model;
+
+import com.github.sviperll.adt4j.model.util.Types;
+import com.github.sviperll.adt4j.model.util.VariableNameSource;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.EClassType;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JCatchBlock;
+import com.helger.jcodemodel.JClassAlreadyExistsException;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JFieldRef;
+import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JTryBlock;
+import com.helger.jcodemodel.JTypeVar;
+import com.helger.jcodemodel.JVar;
+
+/**
+ * Generates digestInto method.
+ * <p>
+ * Canonical encoding of case name and field values is fed directly into given MessageDigest,
+ * no intermediate byte arrays are built.
+ * Numbers are written as big-endian two's complement values,
+ * strings and enum constant names are written as length followed by UTF-16 code units,
+ * nullable values and arrays are prefixed with null marker and length.
+ * Nested values with digestInto method are written as length followed by their own digest
+ * computed with the same algorithm,
+ * so that encoding doesn't depend on whether these digests are memoized.
+ * <p>
+ * Digests of nested values are computed before anything is written for enclosing value,
+ * so that single scratch digest is enough for every nested value.
+ * Computed digests are pushed to the byte stack of scratch object,
+ * that is created once for every top-level digestInto call,
+ * and are popped when enclosing value is written.
+ * Memoized digests are fed directly from memoized byte array.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class DigestIntoMethod {
+    static final String METHOD_NAME = "digestInto";
+
+    static DigestIntoMethod createInstance(Types types, FinalValueClassModelEnvironment environment, boolean isMemoized) {
+        JDefinedClass scratchClass;
+        try {
+            scratchClass = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, environment.valueClassName() + "DigestScratch", EClassType.CLASS);
+        } catch (JClassAlreadyExistsException ex) {
+            throw new RuntimeException("Unexpected exception", ex);
+        }
+        JFieldVar scratchDigestField = scratchClass.field(JMod.NONE, types._MessageDigest, "digest");
+        JFieldVar scratchBufferField = scratchClass.field(JMod.NONE, types._byte.array(), "buffer");
+        JFieldVar scratchSizeField = scratchClass.field(JMod.NONE, types._int, "size");
+        JFieldVar scratchDigestLengthField = scratchClass.field(JMod.NONE, types._int, "digestLength");
+
+        VariableNameSource nameSource = new VariableNameSource();
+        JMethod intMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Int");
+        JVar digest = intMethod.param(types._MessageDigest, nameSource.get("digest"));
+        JVar value = intMethod.param(types._int, nameSource.get("value"));
+        intMethod.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, value.shrz(JExpr.lit(24)))));
+        intMethod.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, value.shrz(JExpr.lit(16)))));
+        intMethod.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, value.shrz(JExpr.lit(8)))));
+        intMethod.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, value)));
+
+        nameSource = new VariableNameSource();
+        JMethod longMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Long");
+        digest = longMethod.param(types._MessageDigest, nameSource.get("digest"));
+        value = longMethod.param(types._long, nameSource.get("value"));
+        longMethod.body().add(JExpr.invoke(intMethod).arg(digest).arg(JExpr.cast(types._int, value.shrz(JExpr.lit(32)))));
+        longMethod.body().add(JExpr.invoke(intMethod).arg(digest).arg(JExpr.cast(types._int, value)));
+
+        nameSource = new VariableNameSource();
+        JMethod stringMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "String");
+        digest = stringMethod.param(types._MessageDigest, nameSource.get("digest"));
+        JVar string = stringMethod.param(types._String, nameSource.get("value"));
+        stringMethod.body().add(JExpr.invoke(intMethod).arg(digest).arg(string.invoke("length")));
+        VariableNameSource localNames = nameSource.forBlock();
+        JForLoop _for = stringMethod.body()._for();
+        JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+        _for.test(i.lt(string.invoke("length")));
+        _for.update(i.incr());
+        JVar c = _for.body().decl(types._int, localNames.get("c"), string.invoke("charAt").arg(i));
+        _for.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, c.shrz(JExpr.lit(8)))));
+        _for.body().add(digest.invoke("update").arg(JExpr.cast(types._byte, c)));
+
+        AbstractJClass valueClass = environment.unwrappedValueClassTypeInsideValueClass().erasure();
+        AbstractJClass[] typeArguments = new AbstractJClass[environment.getValueTypeParameters().size()];
+        for (int k = 0; k < typeArguments.length; k++)
+            typeArguments[k] = types.createWildcard();
+        AbstractJClass usedValueClass = typeArguments.length == 0 ? valueClass : valueClass.narrow(typeArguments);
+
+        // Values of type variables are dispatched at runtime
+        nameSource = new VariableNameSource();
+        JMethod objectMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Object");
+        digest = objectMethod.param(types._MessageDigest, nameSource.get("digest"));
+        JVar object = objectMethod.param(types._Object, nameSource.get("value"));
+        JConditional _if = objectMethod.body()._if(object._instanceof(types._String));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(1))));
+        _if._then().add(JExpr.invoke(stringMethod).arg(digest).arg(JExpr.cast(types._String, object)));
+        AbstractJClass enumType = types._Enum.narrow(types.createWildcard());
+        _if = _if._elseif(object._instanceof(types._Enum));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(2))));
+        _if._then().add(JExpr.invoke(stringMethod).arg(digest).arg(JExpr.cast(enumType, object).invoke("name")));
+        _if = _if._elseif(object._instanceof(types._Boolean));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(3))));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JOp.cond(JExpr.cast(types._Boolean, object).invoke("booleanValue"), JExpr.lit(1), JExpr.lit(0)))));
+        _if = _if._elseif(object._instanceof(types._Character));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(4))));
+        _if._then().add(JExpr.invoke(intMethod).arg(digest).arg(JExpr.cast(types._Character, object).invoke("charValue")));
+        _if = _if._elseif(object._instanceof(types._Float));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(5))));
+        _if._then().add(JExpr.invoke(intMethod).arg(digest).arg(types._Float.staticInvoke("floatToIntBits").arg(JExpr.cast(types._Float, object).invoke("floatValue"))));
+        _if = _if._elseif(object._instanceof(types._Double));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(6))));
+        _if._then().add(JExpr.invoke(longMethod).arg(digest).arg(types._Double.staticInvoke("doubleToLongBits").arg(JExpr.cast(types._Double, object).invoke("doubleValue"))));
+        IJExpression isIntegral = object._instanceof(types._Long).cor(object._instanceof(types._Integer)).cor(object._instanceof(types._Short)).cor(object._instanceof(types._Byte));
+        _if = _if._elseif(isIntegral);
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(7))));
+        _if._then().add(JExpr.invoke(longMethod).arg(digest).arg(JExpr.cast(types._Number, object).invoke("longValue")));
+        _if = _if._elseif(object._instanceof(valueClass));
+        _if._then().add(digest.invoke("update").arg(JExpr.cast(types._byte, JExpr.lit(8))));
+        _if._then().add(JExpr.cast(usedValueClass, object).invoke(METHOD_NAME).arg(digest));
+        JInvocation exception = JExpr._new(types._IllegalArgumentException);
+        exception.arg(JExpr.lit("Value has no canonical encoding: ").plus(object.invoke("getClass").invoke("getName")));
+        _if._else()._throw(exception);
+
+        nameSource = new VariableNameSource();
+        JMethod scratchMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Scratch");
+        scratchMethod.type(types._MessageDigest);
+        digest = scratchMethod.param(types._MessageDigest, nameSource.get("digest"));
+        JVar scratch = scratchMethod.param(scratchClass, nameSource.get("scratch"));
+        _if = scratchMethod.body()._if(scratch.ref(scratchDigestField).eq(JExpr._null()));
+        JTryBlock _try = _if._then()._try();
+        _try.body().assign(scratch.ref(scratchDigestField), types._MessageDigest.staticInvoke("getInstance").arg(digest.invoke("getAlgorithm")).arg(digest.invoke("getProvider")));
+        JCatchBlock _catch = _try._catch(types._NoSuchAlgorithmException);
+        JVar ex = _catch.param(nameSource.get("ex"));
+        _catch.body()._throw(JExpr._new(types._IllegalStateException).arg(ex));
+        _if._then().assign(scratch.ref(scratchBufferField), JExpr.newArray(types._byte, JExpr.lit(64)));
+        _if._else().add(scratch.ref(scratchDigestField).invoke("reset"));
+        scratchMethod.body()._return(scratch.ref(scratchDigestField));
+
+        nameSource = new VariableNameSource();
+        JMethod pushMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Push");
+        scratch = pushMethod.param(scratchClass, nameSource.get("scratch"));
+        JVar valueDigest = pushMethod.param(types._MessageDigest, nameSource.get("valueDigest"));
+        JVar length = pushMethod.body().decl(types._int, nameSource.get("length"), valueDigest.invoke("getDigestLength"));
+        JVar result = pushMethod.body().decl(types._byte.array(), nameSource.get("result"), JExpr._null());
+        // Digest length is not known in advance for some providers
+        _if = pushMethod.body()._if(length.eq0());
+        _if._then().assign(result, valueDigest.invoke("digest"));
+        _if._then().assign(length, result.ref("length"));
+        JFieldRef buffer = scratch.ref(scratchBufferField);
+        JFieldRef size = scratch.ref(scratchSizeField);
+        _if = pushMethod.body()._if(buffer.ref("length").minus(size).lt(length));
+        JInvocation newCapacity = types._Math.staticInvoke("max").arg(buffer.ref("length").mul(JExpr.lit(2))).arg(size.plus(length));
+        _if._then().assign(buffer, types._Arrays.staticInvoke("copyOf").arg(buffer).arg(newCapacity));
+        _if = pushMethod.body()._if(result.ne(JExpr._null()));
+        _if._then().add(types._System.staticInvoke("arraycopy").arg(result).arg(JExpr.lit(0)).arg(buffer).arg(size).arg(length));
+        _try = _if._else()._try();
+        _try.body().add(valueDigest.invoke("digest").arg(buffer).arg(size).arg(length));
+        _catch = _try._catch(types._DigestException);
+        ex = _catch.param(nameSource.get("ex"));
+        _catch.body()._throw(JExpr._new(types._IllegalStateException).arg(ex));
+        pushMethod.body().assign(scratch.ref(scratchDigestLengthField), length);
+        pushMethod.body().assignPlus(size, length);
+
+        nameSource = new VariableNameSource();
+        JMethod nestedMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Nested");
+        nestedMethod.type(types._int);
+        digest = nestedMethod.param(types._MessageDigest, nameSource.get("digest"));
+        scratch = nestedMethod.param(scratchClass, nameSource.get("scratch"));
+        JVar offset = nestedMethod.param(types._int, nameSource.get("offset"));
+        length = nestedMethod.body().decl(types._int, nameSource.get("length"), scratch.ref(scratchDigestLengthField));
+        nestedMethod.body().add(JExpr.invoke(intMethod).arg(digest).arg(length));
+        nestedMethod.body().add(digest.invoke("update").arg(scratch.ref(scratchBufferField)).arg(offset).arg(length));
+        nestedMethod.body()._return(offset.plus(length));
+
+        JMethod[] memoizationMethods = null;
+        if (isMemoized)
+            memoizationMethods = buildMemoizationMethods(types, environment, intMethod);
+
+        AbstractJClass wrappedValueClass = environment.wrappedValueClassTypeInsideValueClass().erasure();
+        return new DigestIntoMethod(types, valueClass, wrappedValueClass, scratchClass, scratchSizeField, intMethod, longMethod, stringMethod, objectMethod, scratchMethod, pushMethod, nestedMethod, memoizationMethods);
+    }
+
+    /**
+     * Builds static methods to memoize digest of value in a single byte array.
+     * <p>
+     * Memoized digest is prefixed with length and characters of algorithm name,
+     * so that digests of different algorithms are never confused
+     * and no other objects are kept with every value.
+     *
+     * @return method, that tests if memoized digest is computed with given algorithm,
+     *         method, that creates memoized digest,
+     *         and method, that writes memoized digest as nested value
+     */
+    private static JMethod[] buildMemoizationMethods(Types types, FinalValueClassModelEnvironment environment, JMethod intMethod) {
+        VariableNameSource nameSource = new VariableNameSource();
+        JMethod matchesMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "CachedValueMatches");
+        matchesMethod.type(types._boolean);
+        JVar cached = matchesMethod.param(types._byte.array(), nameSource.get("cached"));
+        JVar algorithm = matchesMethod.param(types._String, nameSource.get("algorithm"));
+        IJExpression mismatch = cached.eq(JExpr._null());
+        mismatch = mismatch.cor(cached.ref("length").lte(algorithm.invoke("length")));
+        mismatch = mismatch.cor(cached.component(JExpr.lit(0)).band(JExpr.lit(0xFF)).ne(algorithm.invoke("length")));
+        matchesMethod.body()._if(mismatch)._then()._return(JExpr.FALSE);
+        VariableNameSource localNames = nameSource.forBlock();
+        JForLoop _for = matchesMethod.body()._for();
+        JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+        _for.test(i.lt(algorithm.invoke("length")));
+        _for.update(i.incr());
+        IJExpression characterMismatch = cached.component(i.plus(JExpr.lit(1))).ne(JExpr.cast(types._byte, algorithm.invoke("charAt").arg(i)));
+        _for.body()._if(characterMismatch)._then()._return(JExpr.FALSE);
+        matchesMethod.body()._return(JExpr.TRUE);
+
+        nameSource = new VariableNameSource();
+        JMethod createMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "CachedValue");
+        createMethod.type(types._byte.array());
+        algorithm = createMethod.param(types._String, nameSource.get("algorithm"));
+        JVar digest = createMethod.param(types._byte.array(), nameSource.get("digest"));
+        JVar offset = createMethod.body().decl(types._int, nameSource.get("offset"), algorithm.invoke("length").plus(JExpr.lit(1)));
+        JVar result = createMethod.body().decl(types._byte.array(), nameSource.get("result"), JExpr.newArray(types._byte, offset.plus(digest.ref("length"))));
+        createMethod.body().assign(result.component(JExpr.lit(0)), JExpr.cast(types._byte, algorithm.invoke("length")));
+        localNames = nameSource.forBlock();
+        _for = createMethod.body()._for();
+        i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+        _for.test(i.lt(algorithm.invoke("length")));
+        _for.update(i.incr());
+        _for.body().assign(result.component(i.plus(JExpr.lit(1))), JExpr.cast(types._byte, algorithm.invoke("charAt").arg(i)));
+        createMethod.body().add(types._System.staticInvoke("arraycopy").arg(digest).arg(JExpr.lit(0)).arg(result).arg(offset).arg(digest.ref("length")));
+        createMethod.body()._return(result);
+
+        nameSource = new VariableNameSource();
+        JMethod nestedMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "NestedCachedValue");
+        digest = nestedMethod.param(types._MessageDigest, nameSource.get("digest"));
+        cached = nestedMethod.param(types._byte.array(), nameSource.get("cached"));
+        offset = nestedMethod.body().decl(types._int, nameSource.get("offset"), cached.component(JExpr.lit(0)).band(JExpr.lit(0xFF)).plus(JExpr.lit(1)));
+        JVar length = nestedMethod.body().decl(types._int, nameSource.get("length"), cached.ref("length").minus(offset));
+        nestedMethod.body().add(JExpr.invoke(intMethod).arg(digest).arg(length));
+        nestedMethod.body().add(digest.invoke("update").arg(cached).arg(offset).arg(length));
+        return new JMethod[] {matchesMethod, createMethod, nestedMethod};
+    }
+
+    /**
+     * Whether digest of field of given type can be generated.
+     * <p>
+     * Values of type variables are dispatched at runtime,
+     * they can be strings, enums, boxed primitives or values of the value class itself.
+     */
+    static boolean isSupported(Types types, AbstractJType type) {
+        if (type.isError() || type instanceof JTypeVar || type.isPrimitive())
+            return true;
+        else if (type.isArray())
+            return isSupported(types, type.elementType());
+        else
+            return type.unboxify().isPrimitive() || types.isString(type) || types.isEnum(type) || types.declaresInstanceMethod(type, METHOD_NAME, 1);
+    }
+
+    private final Types types;
+    private final AbstractJClass valueClass;
+    private final AbstractJClass wrappedValueClass;
+    private final JDefinedClass scratchClass;
+    private final JFieldVar scratchSizeField;
+    private final JMethod intMethod;
+    private final JMethod longMethod;
+    private final JMethod stringMethod;
+    private final JMethod objectMethod;
+    private final JMethod scratchMethod;
+    private final JMethod pushMethod;
+    private final JMethod nestedMethod;
+    private final JMethod[] memoizationMethods;
+
+    private DigestIntoMethod(Types types, AbstractJClass valueClass, AbstractJClass wrappedValueClass, JDefinedClass scratchClass, JFieldVar scratchSizeField, JMethod intMethod, JMethod longMethod, JMethod stringMethod, JMethod objectMethod, JMethod scratchMethod, JMethod pushMethod, JMethod nestedMethod, JMethod[] memoizationMethods) {
+        this.types = types;
+        this.valueClass = valueClass;
+        this.wrappedValueClass = wrappedValueClass;
+        this.scratchClass = scratchClass;
+        this.scratchSizeField = scratchSizeField;
+        this.intMethod = intMethod;
+        this.longMethod = longMethod;
+        this.stringMethod = stringMethod;
+        this.objectMethod = objectMethod;
+        this.scratchMethod = scratchMethod;
+        this.pushMethod = pushMethod;
+        this.nestedMethod = nestedMethod;
+        this.memoizationMethods = memoizationMethods;
+    }
+
+    AbstractJClass scratchType() {
+        return scratchClass;
+    }
+
+    /**
+     * Returns reset scratch digest, that is created on first use.
+     */
+    JInvocation scratch(IJExpression digest, IJExpression scratch) {
+        return JExpr.invoke(scratchMethod).arg(digest).arg(scratch);
+    }
+
+    /**
+     * Finishes given digest and pushes result to the byte stack of scratch object.
+     */
+    JInvocation push(IJExpression scratch, IJExpression valueDigest) {
+        return JExpr.invoke(pushMethod).arg(scratch).arg(valueDigest);
+    }
+
+    JInvocation cachedValueMatches(IJExpression cached, IJExpression algorithm) {
+        return JExpr.invoke(memoizationMethods[0]).arg(cached).arg(algorithm);
+    }
+
+    JInvocation createCachedValue(IJExpression algorithm, IJExpression digest) {
+        return JExpr.invoke(memoizationMethods[1]).arg(algorithm).arg(digest);
+    }
+
+    private boolean isMemoized() {
+        return memoizationMethods != null;
+    }
+
+    /**
+     * Whether digest of value of given type is pushed to the byte stack of scratch object
+     * before enclosing value is written.
+     */
+    boolean isPushed(AbstractJType type) {
+        if (type.isArray())
+            return isPushed(type.elementType());
+        else
+            return isWrittenAsDigest(type) && !(isMemoized() && isValueClass(type));
+    }
+
+    Body createBody(JBlock methodBody, VariableNameSource nameSource, JVar digest, JVar scratch, JMethod subDigestMethod, boolean pushesNestedDigests) {
+        JVar scratchSize = null;
+        JVar nestedDigestOffset = null;
+        if (pushesNestedDigests) {
+            scratchSize = methodBody.decl(types._int, nameSource.get("scratchSize"), scratch.ref(scratchSizeField));
+            nestedDigestOffset = methodBody.decl(types._int, nameSource.get("nestedDigestOffset"), scratchSize);
+        }
+        return new Body(digest, scratch, subDigestMethod, scratchSize, nestedDigestOffset, methodBody, nameSource);
+    }
+
+    private boolean isValueClass(AbstractJType type) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = ((AbstractJClass)type).erasure();
+        return klass.fullName().equals(valueClass.fullName()) || !wrappedValueClass.isError() && klass.fullName().equals(wrappedValueClass.fullName());
+    }
+
+    private boolean hasDigestInto(AbstractJType type) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = ((AbstractJClass)type).erasure();
+        return types.declaresInstanceMethod(klass, METHOD_NAME, 1);
+    }
+
+    private boolean isWrittenAsDigest(AbstractJType type) {
+        if (type.isArray())
+            return isWrittenAsDigest(type.elementType());
+        else if (type.isPrimitive() || type.unboxify().isPrimitive() || types.isString(type) || types.isEnum(type))
+            return false;
+        else
+            return isValueClass(type) || hasDigestInto(type);
+    }
+
+    private AbstractJType cachedValueType(AbstractJType type) {
+        return type.isArray() ? cachedValueType(type.elementType()).array() : types._byte.array();
+    }
+
+    class Body {
+        private final JVar digest;
+        private final JVar scratch;
+        private final JMethod subDigestMethod;
+        private final JVar scratchSize;
+        private final JVar nestedDigestOffset;
+        private final JBlock body;
+        private final VariableNameSource nameSource;
+
+        private Body(JVar digest, JVar scratch, JMethod subDigestMethod, JVar scratchSize, JVar nestedDigestOffset, JBlock body, VariableNameSource nameSource) {
+            this.digest = digest;
+            this.scratch = scratch;
+            this.subDigestMethod = subDigestMethod;
+            this.scratchSize = scratchSize;
+            this.nestedDigestOffset = nestedDigestOffset;
+            this.body = body;
+            this.nameSource = nameSource;
+        }
+
+        private Body withBlock(JBlock block, VariableNameSource localNames) {
+            return new Body(digest, scratch, subDigestMethod, scratchSize, nestedDigestOffset, block, localNames);
+        }
+
+        /**
+         * Computes digests of nested values before anything is written.
+         *
+         * @return expression to pass to append methods instead of given value
+         */
+        IJExpression prepareValue(AbstractJType type, IJExpression value, boolean isNullable) {
+            if (!isWrittenAsDigest(type))
+                return value;
+            else if (!isPushed(type)) {
+                // Memoized digests are kept as is, so that they are never copied
+                JVar prepared;
+                JBlock block;
+                if (!isNullable) {
+                    prepared = body.decl(cachedValueType(type), nameSource.get("nestedDigest"));
+                    block = body;
+                } else {
+                    prepared = body.decl(cachedValueType(type), nameSource.get("nestedDigest"), JExpr._null());
+                    block = body._if(value.ne(JExpr._null()))._then();
+                }
+                if (type.isArray()) {
+                    block.assign(prepared, JExpr.newArray(cachedValueType(type.elementType()), value.ref("length")));
+                    VariableNameSource localNames = nameSource.forBlock();
+                    JForLoop _for = block._for();
+                    JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+                    _for.test(i.lt(value.ref("length")));
+                    _for.update(i.incr());
+                    Body forBody = withBlock(_for.body(), localNames);
+                    _for.body().assign(prepared.component(i), forBody.prepareValue(type.elementType(), value.component(i), true));
+                } else {
+                    block.assign(prepared, unwrap(type, value).invoke(subDigestMethod).arg(digest).arg(scratch));
+                }
+                return prepared;
+            } else {
+                JBlock block = !isNullable ? body : body._if(value.ne(JExpr._null()))._then();
+                if (type.isArray()) {
+                    VariableNameSource localNames = nameSource.forBlock();
+                    JForLoop _for = block._for();
+                    JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+                    _for.test(i.lt(value.ref("length")));
+                    _for.update(i.incr());
+                    Body forBody = withBlock(_for.body(), localNames);
+                    forBody.prepareValue(type.elementType(), value.component(i), true);
+                } else if (isValueClass(type)) {
+                    block.add(unwrap(type, value).invoke(subDigestMethod).arg(digest).arg(scratch));
+                } else {
+                    JVar valueDigest = block.decl(types._MessageDigest, nameSource.get("valueDigest"), scratch(digest, scratch));
+                    block.add(value.invoke(METHOD_NAME).arg(valueDigest));
+                    block.add(push(scratch, valueDigest));
+                }
+                return value;
+            }
+        }
+
+        private IJExpression unwrap(AbstractJType type, IJExpression value) {
+            return ((AbstractJClass)type).erasure().fullName().equals(valueClass.fullName()) ? value : JExpr.cast(valueClass, value);
+        }
+
+        void appendCaseName(String caseName) {
+            body.add(JExpr.invoke(stringMethod).arg(digest).arg(JExpr.lit(caseName)));
+        }
+
+        void appendNullableValue(AbstractJType type, IJExpression value) {
+            if (!type.isReference())
+                throw new AssertionError("appendNullableValue called for non-reference type");
+            else {
+                JConditional _if = body._if(value.eq(JExpr._null()));
+                Body thenBody = withBlock(_if._then(), nameSource);
+                thenBody.updateByte(JExpr.lit(0));
+                Body elseBody = withBlock(_if._else(), nameSource);
+                elseBody.updateByte(JExpr.lit(1));
+                elseBody.appendNotNullValue(type, value);
+            }
+        }
+
+        /**
+         * Appends value, values that are written as digest should be prepared with prepareValue method.
+         */
+        void appendNotNullValue(AbstractJType type, IJExpression value) {
+            if (type.isArray()) {
+                body.add(JExpr.invoke(intMethod).arg(digest).arg(value.ref("length")));
+                AbstractJType elementType = type.elementType();
+                if (elementType.isPrimitive() && elementType.name().equals("byte"))
+                    body.add(digest.invoke("update").arg(value));
+                else {
+                    VariableNameSource localNames = nameSource.forBlock();
+                    JForLoop _for = body._for();
+                    JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+                    _for.test(i.lt(value.ref("length")));
+                    _for.update(i.incr());
+                    Body forBody = withBlock(_for.body(), localNames);
+                    if (elementType.isReference())
+                        forBody.appendNullableValue(elementType, value.component(i));
+                    else
+                        forBody.appendNotNullValue(elementType, value.component(i));
+                }
+            } else if (type.isPrimitive()) {
+                if (type.name().equals("boolean"))
+                    updateByte(JOp.cond(value, JExpr.lit(1), JExpr.lit(0)));
+                else if (type.name().equals("byte"))
+                    body.add(digest.invoke("update").arg(value));
+                else if (type.name().equals("float"))
+                    body.add(JExpr.invoke(intMethod).arg(digest).arg(types._Float.staticInvoke("floatToIntBits").arg(value)));
+                else if (type.name().equals("double"))
+                    body.add(JExpr.invoke(longMethod).arg(digest).arg(types._Double.staticInvoke("doubleToLongBits").arg(value)));
+                else if (type.name().equals("long"))
+                    body.add(JExpr.invoke(longMethod).arg(digest).arg(value));
+                else
+                    body.add(JExpr.invoke(intMethod).arg(digest).arg(value));
+            } else if (type.unboxify().isPrimitive()) {
+                appendNotNullValue(type.unboxify(), value);
+            } else if (types.isString(type)) {
+                body.add(JExpr.invoke(stringMethod).arg(digest).arg(value));
+            } else if (types.isEnum(type)) {
+                body.add(JExpr.invoke(stringMethod).arg(digest).arg(value.invoke("name")));
+            } else if (isPushed(type)) {
+                body.assign(nestedDigestOffset, JExpr.invoke(nestedMethod).arg(digest).arg(scratch).arg(nestedDigestOffset));
+            } else if (isWrittenAsDigest(type)) {
+                body.add(JExpr.invoke(memoizationMethods[2]).arg(digest).arg(value));
+            } else {
+                body.add(JExpr.invoke(objectMethod).arg(digest).arg(value));
+            }
+        }
+
+        /**
+         * Pops digests of nested values from the byte stack of scratch object.
+         */
+        void finish() {
+            if (scratchSize != null)
+                body.assign(scratch.ref(scratchSizeField), scratchSize);
+        }
+
+        private void updateByte(IJExpression value) {
+            body.add(digest.invoke("update").arg(JExpr.cast(types._byte, value)));
+        }
+    }
+}
@@ -29,9 +29,11 @@
  */
 package com.github.sviperll.adt4j.model;
 
+import com.github.sviperll.adt4j.FloatEquality;
 import com.github.sviperll.adt4j.model.config.FloatCustomization;
 import com.github.sviperll.adt4j.model.util.Types;
 import com.github.sviperll.adt4j.model.util.VariableNameSource;
+import com.helger.jcodemodel.AbstractJClass;
 import com.helger.jcodemodel.AbstractJType;
 import com.helger.jcodemodel.IJExpression;
 import com.helger.jcodemodel.JBlock;
@@ -105,9 +107,16 @@ class EqualsMethod {
     private void appendNonnullPrimitive(AbstractJType type, IJExpression value1, IJExpression value2, boolean isLast) {
         IJExpression equalsCondition;
         IJExpression notEqualsCondition;
-        if (!type.name().equals("float") && !type.name().equals("doable")) {
+        if (!isFloatingPoint(type)) {
             equalsCondition = value1.eq(value2);
             notEqualsCondition = value1.ne(value2);
+        } else if (floatCustomization.floatEquality() == FloatEquality.BITWISE) {
+            String bitsMethodName = type.name().equals("float") ? "floatToIntBits" : "doubleToLongBits";
+            AbstractJClass boxedType = type.name().equals("float") ? types._Float : types._Double;
+            IJExpression bits1 = boxedType.staticInvoke(bitsMethodName).arg(value1);
+            IJExpression bits2 = boxedType.staticInvoke(bitsMethodName).arg(value2);
+            equalsCondition = bits1.eq(bits2);
+            notEqualsCondition = bits1.ne(bits2);
         } else {
             IJExpression epsilon = type.name().equals("float") ? JExpr.lit(floatCustomization.floatEpsilon()) : JExpr.lit(floatCustomization.doubleEpsilon());
             JInvocation invocation = types._Math.staticInvoke("abs");
@@ -124,28 +133,65 @@ class EqualsMethod {
     }
 
     private void appendNonnullArray(IJExpression value1, IJExpression value2, AbstractJType type, boolean isLast) {
-        appendNotNullValue(types._int, value1.ref("length"), value2.ref("length"));
-        VariableNameSource localNames = nameSource.forBlock();
-        JForLoop _for = body._for();
-        JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
-        _for.test(i.lt(value1.ref("length")));
-        _for.update(i.incr());
-        EqualsMethod forBody = new EqualsMethod(types, _for.body(), localNames, floatCustomization);
-        if (type.elementType().isReference())
-            forBody.appendNullableValue(type.elementType(), value1.component(i), value2.component(i));
+        if (hasArraysEquals(type)) {
+            // Arrays.equals and Arrays.deepEquals are JIT intrinsics and check identity first
+            JInvocation invocation = types._Arrays.staticInvoke(type.elementType().isArray() ? "deepEquals" : "equals");
+            invocation.arg(value1);
+            invocation.arg(value2);
+            if (isLast) {
+                body._return(invocation);
+            } else {
+                JConditional _if = body._if(invocation.not());
+                _if._then()._return(JExpr.FALSE);
+            }
+        } else {
+            EqualsMethod notSameBody = new EqualsMethod(types, body._if(value1.ne(value2))._then(), nameSource, floatCustomization);
+            notSameBody.appendNotNullValue(types._int, value1.ref("length"), value2.ref("length"));
+            VariableNameSource localNames = nameSource.forBlock();
+            JForLoop _for = notSameBody.body._for();
+            JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+            _for.test(i.lt(value1.ref("length")));
+            _for.update(i.incr());
+            EqualsMethod forBody = new EqualsMethod(types, _for.body(), localNames, floatCustomization);
+            if (type.elementType().isReference())
+                forBody.appendNullableValue(type.elementType(), value1.component(i), value2.component(i));
+            else
+                forBody.appendNotNullValue(type.elementType(), value1.component(i), value2.component(i));
+            if (isLast)
+                body._return(JExpr.TRUE);
+        }
+    }
+
+    /**
+     * Whether given array type can be compared with {@code Arrays.equals} or {@code Arrays.deepEquals}.
+     * <p>
+     * {@code Arrays.equals} compares floating-point values bitwise, so arrays of floating-point values
+     * are only applicable with bitwise float equality.
+     * Multi-dimensional arrays are only applicable when their innermost element type is primitive,
+     * since {@code Arrays.deepEquals} compares arrays found in {@code Object} elements deeply.
+     */
+    private boolean hasArraysEquals(AbstractJType arrayType) {
+        AbstractJType elementType = arrayType.elementType();
+        while (elementType.isArray())
+            elementType = elementType.elementType();
+        if (isFloatingPoint(elementType) && floatCustomization.floatEquality() != FloatEquality.BITWISE)
+            return false;
         else
-            forBody.appendNotNullValue(type.elementType(), value1.component(i), value2.component(i));
-        if (isLast)
-            body._return(JExpr.TRUE);
+            return !arrayType.elementType().isArray() || elementType.isPrimitive();
+    }
+
+    private static boolean isFloatingPoint(AbstractJType type) {
+        return type.name().equals("float") || type.name().equals("double");
     }
 
     private void appendNonnullObject(IJExpression value1, IJExpression value2, boolean isLast) {
+        // Identity check avoids walking shared parts of persistent structures
         JInvocation invocation = value1.invoke("equals");
         invocation.arg(value2);
         if (isLast) {
-            body._return(invocation);
+            body._return(value1.eq(value2).cor(invocation));
         } else {
-            JConditional _if = body._if(invocation.not());
+            JConditional _if = body._if(value1.ne(value2).cand(invocation.not()));
             _if._then()._return(JExpr.FALSE);
         }
     }
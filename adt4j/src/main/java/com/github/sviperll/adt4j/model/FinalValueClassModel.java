@@ -29,7 +29,11 @@
  */
 package com.github.sviperll.adt4j.model;
 
+import com.github.sviperll.adt4j.AttributeKind;
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.FloatEquality;
+import com.github.sviperll.adt4j.HashFunction;
+import com.github.sviperll.adt4j.model.config.AttributeConfiguration;
 import com.github.sviperll.adt4j.model.config.FieldConfiguration;
 import com.github.sviperll.adt4j.model.config.PredicateConfigutation;
 import com.github.sviperll.adt4j.model.config.Serialization;
@@ -47,24 +51,34 @@ import com.helger.jcodemodel.JAnnotationArrayMember;
 import com.helger.jcodemodel.JAnnotationUse;
 import com.helger.jcodemodel.JBlock;
 import com.helger.jcodemodel.JClassAlreadyExistsException;
+import com.helger.jcodemodel.JCatchBlock;
 import com.helger.jcodemodel.JConditional;
 import com.helger.jcodemodel.JDefinedClass;
 import com.helger.jcodemodel.JExpr;
 import com.helger.jcodemodel.JFieldRef;
 import com.helger.jcodemodel.JFieldVar;
+import com.helger.jcodemodel.JForEach;
+import com.helger.jcodemodel.JForLoop;
 import com.helger.jcodemodel.JInvocation;
 import com.helger.jcodemodel.JMethod;
 import com.helger.jcodemodel.JMod;
 import com.helger.jcodemodel.JOp;
 import com.helger.jcodemodel.JSynchronizedBlock;
+import com.helger.jcodemodel.JTryBlock;
 import com.helger.jcodemodel.JTypeVar;
 import com.helger.jcodemodel.JVar;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import javax.annotation.Nullable;
 
 public class FinalValueClassModel {
     static FinalValueClassModel createErrorModel(FinalValueClassModelEnvironment environment, Types types) {
@@ -75,6 +89,8 @@ public class FinalValueClassModel {
         return new FinalValueClassModel(environment, types, false);
     }
 
+    static final String LENS_CLASS_SUFFIX = "Lens";
+
     private final FinalValueClassModelEnvironment environment;
     private final Types types;
     private final boolean isError;
@@ -143,6 +159,285 @@ public class FinalValueClassModel {
         return factoryMethod;
     }
 
+    /**
+     * Builds lens class body.
+     * <p>
+     * Lens class is declared with class header. Lens focuses on some value inside root value of type S.
+     * It has a method for every getter and updater, that gets or updates field of focused value
+     * given root value.
+     * Fields that have both getter and updater and are value classes with lenses themselves
+     * can be focused on with methods without arguments, so that lenses are composed.
+     * <p>
+     * Composed lenses are fused: update reads values along focused path only once from the root down,
+     * recording them in a spine list, and then rebuilds the path once from the bottom up
+     * using recorded values, reusing all unchanged values.
+     * Focusing lenses are created once for every parent lens and are reused.
+     */
+    void buildLens(Collection<FieldConfiguration> getters, Collection<FieldConfiguration> updaters) throws JClassAlreadyExistsException {
+        JDefinedClass lensClass = environment.getValueClassInnerClass(environment.valueClassName() + LENS_CLASS_SUFFIX);
+        if (lensClass == null)
+            throw new IllegalStateException("Lens class should be declared with class header");
+        JTypeVar[] lensTypeParams = lensClass.typeParams();
+        JTypeVar rootType = lensTypeParams[lensTypeParams.length - 1];
+        AbstractJClass[] valueTypeArguments = Arrays.copyOf(lensTypeParams, lensTypeParams.length - 1, AbstractJClass[].class);
+        AbstractJClass usedValueClassType = environment.wrappedValueClassType(valueTypeArguments);
+        AbstractJClass usedLensType = lensClass.narrow(lensTypeParams);
+        AbstractJClass spineType = types._List.narrow(types._Object);
+
+        lensClass.constructor(JMod.PROTECTED);
+
+        VariableNameSource nameSource = new VariableNameSource();
+        JMethod focusMethod = lensClass.method(JMod.PROTECTED | JMod.ABSTRACT, usedValueClassType, "focus");
+        focusMethod.param(rootType, nameSource.get("root"));
+        Source.annotateNullable(focusMethod.param(spineType, nameSource.get("spine")));
+
+        nameSource = new VariableNameSource();
+        JMethod replaceMethod = lensClass.method(JMod.PROTECTED | JMod.ABSTRACT, rootType, "replace");
+        replaceMethod.param(spineType, nameSource.get("spine"));
+        replaceMethod.param(usedValueClassType, nameSource.get("value"));
+
+        nameSource = new VariableNameSource();
+        JMethod getMethod = lensClass.method(JMod.PUBLIC | JMod.FINAL, usedValueClassType, "get");
+        Source.annotateNonnull(getMethod);
+        JVar root = getMethod.param(rootType, nameSource.get("root"));
+        getMethod.body()._return(JExpr.invoke(focusMethod).arg(root).arg(JExpr._null()));
+
+        nameSource = new VariableNameSource();
+        JMethod setMethod = lensClass.method(JMod.PUBLIC | JMod.FINAL, rootType, "set");
+        root = setMethod.param(rootType, nameSource.get("root"));
+        JVar value = setMethod.param(usedValueClassType, nameSource.get("value"));
+        Source.annotateNonnull(value);
+        JVar spine = setMethod.body().decl(spineType, nameSource.get("spine"), JExpr._new(types._ArrayList.narrow(types._Object)));
+        setMethod.body().add(JExpr.invoke(focusMethod).arg(root).arg(spine));
+        setMethod.body()._return(JExpr.invoke(replaceMethod).arg(spine).arg(value));
+
+        JDefinedClass identityLens = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC, environment.valueClassName() + "IdentityLens", EClassType.CLASS);
+        for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+            JTypeVar typeParameter = identityLens.generify(visitorTypeParameter.name());
+            typeParameter.boundLike(visitorTypeParameter);
+        }
+        AbstractJClass identityValueType = environment.wrappedValueClassType(identityLens.typeParams());
+        List<AbstractJClass> identityLensTypeArguments = new ArrayList<AbstractJClass>(identityLens.typeParamList());
+        identityLensTypeArguments.add(identityValueType);
+        identityLens._extends(lensClass.narrow(identityLensTypeArguments));
+        nameSource = new VariableNameSource();
+        JMethod identityFocusMethod = identityLens.method(JMod.PROTECTED, identityValueType, focusMethod.name());
+        identityFocusMethod.annotate(Override.class);
+        root = identityFocusMethod.param(identityValueType, nameSource.get("root"));
+        identityFocusMethod.param(spineType, nameSource.get("spine"));
+        identityFocusMethod.body()._return(root);
+        nameSource = new VariableNameSource();
+        JMethod identityReplaceMethod = identityLens.method(JMod.PROTECTED, identityValueType, replaceMethod.name());
+        identityReplaceMethod.annotate(Override.class);
+        identityReplaceMethod.param(spineType, nameSource.get("spine"));
+        identityReplaceMethod.body()._return(identityReplaceMethod.param(identityValueType, nameSource.get("value")));
+
+        JFieldVar identityLensField = environment.buildValueClassField(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, identityLens, "LENS");
+        JAnnotationUse fieldAnnotationUse = identityLensField.annotate(SuppressWarnings.class);
+        JAnnotationArrayMember paramArray = fieldAnnotationUse.paramArray("value");
+        paramArray.param("unchecked");
+        paramArray.param("rawtypes");
+        identityLensField.init(JExpr._new(identityLens));
+
+        JMethod identityMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.STATIC, "lens");
+        Source.annotateNonnull(identityMethod);
+        JAnnotationUse methodAnnotationUse = identityMethod.annotate(SuppressWarnings.class);
+        methodAnnotationUse.param("value", "unchecked");
+        for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+            JTypeVar typeParameter = identityMethod.generify(visitorTypeParameter.name());
+            typeParameter.boundLike(visitorTypeParameter);
+        }
+        List<AbstractJClass> identityMethodLensTypeArguments = new ArrayList<AbstractJClass>(identityMethod.typeParamList());
+        identityMethodLensTypeArguments.add(environment.wrappedValueClassType(identityMethod.typeParams()));
+        identityMethod.type(lensClass.narrow(identityMethodLensTypeArguments));
+        identityMethod.body()._return(identityLensField);
+
+        for (FieldConfiguration getter: getters) {
+            nameSource = new VariableNameSource();
+            JMethod method = lensClass.method(Source.toJMod(getter.accessLevel()) | JMod.FINAL, getter.type(), getter.name());
+            if (getter.type().isReference()) {
+                if (getter.isNullable())
+                    Source.annotateNullable(method);
+                else
+                    Source.annotateNonnull(method);
+            }
+            root = method.param(rootType, nameSource.get("root"));
+            method.body()._return(JExpr.invoke(focusMethod).arg(root).arg(JExpr._null()).invoke(getter.name()));
+        }
+        for (FieldConfiguration updater: updaters) {
+            nameSource = new VariableNameSource();
+            JMethod method = lensClass.method(Source.toJMod(updater.accessLevel()) | JMod.FINAL, rootType, updater.name());
+            root = method.param(rootType, nameSource.get("root"));
+            JVar newValue;
+            if (updater.isVarArg())
+                newValue = method.varParam(updater.type().elementType(), nameSource.get("newValue"));
+            else
+                newValue = method.param(updater.type(), nameSource.get("newValue"));
+            if (updater.type().isReference()) {
+                if (updater.isNullable())
+                    Source.annotateNullable(newValue);
+                else
+                    Source.annotateNonnull(newValue);
+            }
+            spine = method.body().decl(spineType, nameSource.get("spine"), JExpr._new(types._ArrayList.narrow(types._Object)));
+            JVar focused = method.body().decl(usedValueClassType, nameSource.get("focused"), JExpr.invoke(focusMethod).arg(root).arg(spine));
+            method.body()._return(JExpr.invoke(replaceMethod).arg(spine).arg(focused.invoke(updater.name()).arg(newValue)));
+        }
+        for (FieldConfiguration getter: getters) {
+            FieldConfiguration updater = findUpdaterForTheSameField(getter, updaters);
+            AbstractJClass fieldLensType = getter.isNullable() || updater == null ? null : fieldLensType(getter.type(), rootType, lensClass);
+            if (fieldLensType != null) {
+                JFieldVar fieldLensField = lensClass.field(JMod.PRIVATE, fieldLensType, getter.name() + LENS_CLASS_SUFFIX, JExpr._null());
+                JMethod method = lensClass.method(Source.toJMod(getter.accessLevel()) | JMod.FINAL, fieldLensType, getter.name());
+                Source.annotateNonnull(method);
+                JVar result = method.body().decl(fieldLensType, "result", JExpr.refthis(fieldLensField));
+                JBlock creation = method.body()._if(result.eq(JExpr._null()))._then();
+                JVar parent = creation.decl(JMod.FINAL, usedLensType, "parent", JExpr._this());
+                JDefinedClass fieldLens = lensClass.owner().anonymousClass(fieldLensType);
+
+                nameSource = new VariableNameSource();
+                JMethod fieldFocusMethod = fieldLens.method(JMod.PROTECTED, getter.type(), focusMethod.name());
+                fieldFocusMethod.annotate(Override.class);
+                root = fieldFocusMethod.param(rootType, nameSource.get("root"));
+                spine = fieldFocusMethod.param(spineType, nameSource.get("spine"));
+                JVar focused = fieldFocusMethod.body().decl(usedValueClassType, nameSource.get("focused"), parent.invoke(focusMethod).arg(root).arg(spine));
+                fieldFocusMethod.body()._if(spine.ne(JExpr._null()))._then().add(spine.invoke("add").arg(focused));
+                fieldFocusMethod.body()._return(focused.invoke(getter.name()));
+
+                nameSource = new VariableNameSource();
+                JMethod fieldReplaceMethod = fieldLens.method(JMod.PROTECTED, rootType, replaceMethod.name());
+                fieldReplaceMethod.annotate(Override.class);
+                fieldReplaceMethod.annotate(SuppressWarnings.class).param("value", "unchecked");
+                spine = fieldReplaceMethod.param(spineType, nameSource.get("spine"));
+                value = fieldReplaceMethod.param(getter.type(), nameSource.get("value"));
+                IJExpression last = spine.invoke("remove").arg(spine.invoke("size").minus(JExpr.lit(1)));
+                focused = fieldReplaceMethod.body().decl(usedValueClassType, nameSource.get("focused"), JExpr.cast(usedValueClassType, last));
+                fieldReplaceMethod.body()._return(parent.invoke(replaceMethod).arg(spine).arg(focused.invoke(updater.name()).arg(value)));
+
+                creation.assign(result, JExpr._new(fieldLens));
+                creation.assign(JExpr.refthis(fieldLensField), result);
+                method.body()._return(result);
+            }
+        }
+    }
+
+    @Nullable
+    private FieldConfiguration findUpdaterForTheSameField(FieldConfiguration getter, Collection<FieldConfiguration> updaters) {
+        for (FieldConfiguration updater: updaters) {
+            if (!updater.isVarArg() && updater.accessLevel() == getter.accessLevel() && isTheSameField(getter, updater))
+                return updater;
+        }
+        return null;
+    }
+
+    private boolean isTheSameField(FieldConfiguration field1, FieldConfiguration field2) {
+        for (JMethod interfaceMethod: environment.visitorDefinition().methodDefinitions()) {
+            List<JVar> params = new ArrayList<>(interfaceMethod.params());
+            if (interfaceMethod.varParam() != null)
+                params.add(interfaceMethod.varParam());
+            for (JVar param: params) {
+                if (field1.isFieldValue(interfaceMethod, param.name()) != field2.isFieldValue(interfaceMethod, param.name()))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lens type that focuses on value of given type, or null if there is no such lens type.
+     */
+    @Nullable
+    private AbstractJClass fieldLensType(AbstractJType type, AbstractJClass rootType, JDefinedClass lensClass) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return null;
+        AbstractJClass klass = (AbstractJClass)type;
+        AbstractJClass erasure = klass.erasure();
+        List<AbstractJClass> typeArguments = new ArrayList<AbstractJClass>(klass.getTypeParameters());
+        typeArguments.add(rootType);
+        AbstractJClass wrappedValueClass = environment.wrappedValueClassTypeInsideValueClass().erasure();
+        if (!wrappedValueClass.isError() && erasure.fullName().equals(wrappedValueClass.fullName()))
+            return lensClass.narrow(typeArguments);
+        if (erasure instanceof JDefinedClass) {
+            for (JDefinedClass innerClass: ((JDefinedClass)erasure).classes()) {
+                if (innerClass.name().equals(erasure.name() + LENS_CLASS_SUFFIX) && innerClass.typeParams().length == typeArguments.size())
+                    return innerClass.narrow(typeArguments);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds reusable builder class for each case with fields.
+     * <p>
+     * Builder fields have the same types as case fields, so primitives are never boxed.
+     * Builder keeps its fields after build method is called,
+     * so the same builder can be reused for the next value with only changed fields set.
+     */
+    void buildBuilders(Map<String, JMethod> constructorMethods) throws JClassAlreadyExistsException {
+        for (JMethod interfaceMethodDefinition: environment.visitorDefinition().methodDefinitions()) {
+            if (interfaceMethodDefinition.params().isEmpty() && !interfaceMethodDefinition.hasVarArgs())
+                continue;
+            JMethod constructorMethod = constructorMethods.get(interfaceMethodDefinition.name());
+            String builderClassName = Source.capitalize(interfaceMethodDefinition.name()) + environment.valueClassName() + "Builder";
+            JDefinedClass builderClass = environment.buildValueClassInnerClass(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, builderClassName, EClassType.CLASS);
+            JMethod builderMethod = environment.buildValueClassMethod(Source.toJMod(environment.factoryMethodAccessLevel()) | JMod.STATIC, interfaceMethodDefinition.name() + "Builder");
+            Source.annotateNonnull(builderMethod);
+            for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+                JTypeVar typeParameter = builderClass.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+                typeParameter = builderMethod.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+            }
+            AbstractJClass usedValueClassType = environment.wrappedValueClassType(builderClass.typeParams());
+            VisitorDefinition.VisitorUsage usedVisitor = environment.visitor(usedValueClassType, usedValueClassType, types._RuntimeException);
+            MethodUsage genericInterfaceMethod = usedVisitor.findMethod(interfaceMethodDefinition.name());
+            if (genericInterfaceMethod == null)
+                throw new IllegalStateException("Method with given name not found: " + interfaceMethodDefinition.name());
+            for (JTypeVar visitorTypeParameter: genericInterfaceMethod.typeParams()) {
+                JTypeVar typeParameter = builderClass.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+                typeParameter = builderMethod.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+            }
+            MethodUsage usedInterfaceMethod = genericInterfaceMethod.narrow(Arrays.copyOfRange(builderClass.typeParams(), environment.getValueTypeParameters().size(), builderClass.typeParams().length));
+            AbstractJClass usedBuilderType = Source.narrowType(builderClass, builderClass.typeParams());
+            AbstractJClass builderTypeInsideBuilderMethod = Source.narrowType(builderClass, builderMethod.typeParams());
+            builderMethod.type(builderTypeInsideBuilderMethod);
+            builderMethod.body()._return(JExpr._new(builderTypeInsideBuilderMethod));
+
+            builderClass.constructor(JMod.NONE);
+            JInvocation staticInvoke = environment.invokeValueClassStaticMethod(constructorMethod, builderClass.typeParams());
+            List<VariableDeclaration> params = new ArrayList<>(usedInterfaceMethod.params());
+            VariableDeclaration varParam = usedInterfaceMethod.varParam();
+            if (varParam != null)
+                params.add(varParam);
+            for (VariableDeclaration param: params) {
+                boolean isVarParam = param == varParam;
+                AbstractJType paramType = isVarParam ? param.type().elementType().declarable().array() : param.type().declarable();
+                JFieldVar field = builderClass.field(JMod.PRIVATE, paramType, param.name());
+                JMethod setter = builderClass.method(JMod.PUBLIC | JMod.FINAL, usedBuilderType, param.name());
+                Source.annotateNonnull(setter);
+                JVar value;
+                if (isVarParam)
+                    value = setter.varParam(paramType.elementType(), param.name());
+                else
+                    value = setter.param(paramType, param.name());
+                if (paramType.isReference()) {
+                    if (Source.isNullable(param))
+                        Source.annotateNullable(value);
+                    else
+                        Source.annotateNonnull(value);
+                }
+                setter.body().assign(JExpr._this().ref(field), value);
+                setter.body()._return(JExpr._this());
+                staticInvoke.arg(JExpr._this().ref(field));
+            }
+            JMethod buildMethod = builderClass.method(JMod.PUBLIC | JMod.FINAL, usedValueClassType, "build");
+            Source.annotateNonnull(buildMethod);
+            buildMethod.body()._return(staticInvoke);
+        }
+    }
+
     private JDefinedClass buildFactoryClass(Map<String, JMethod> constructorMethods) throws JClassAlreadyExistsException {
         JDefinedClass factoryClass = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC, environment.valueClassName() + "Factory", EClassType.CLASS);
         for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
@@ -300,6 +595,15 @@ public class FinalValueClassModel {
         private final Map<String, JDefinedClass> caseClasses;
         private final JFieldVar acceptorField;
         private final JFieldVar hashCodeCachedValueField;
+        private JMethod precomputedHashCodeConstructor = null;
+        private JMethod childCountAcceptorMethod = null;
+        private JMethod childAcceptorMethod = null;
+        private JMethod foldIterativelyMethod = null;
+        private JDefinedClass foldTaskClass = null;
+        private final List<JFieldVar> attributeFields = new ArrayList<>();
+        private final List<JMethod> attributeAcceptorMethods = new ArrayList<>();
+        private final List<JFieldVar> lazyAttributeFields = new ArrayList<>();
+        private JFieldVar nullAttributeValueField = null;
 
         private MethodBuilder(Map<String, JDefinedClass> caseClasses, JFieldVar acceptorField, JFieldVar hashCodeCachedValueField) {
             this.caseClasses = caseClasses;
@@ -319,10 +623,180 @@ public class FinalValueClassModel {
                     JInvocation invocation = acceptorParam.invoke(hashCodeAcceptorMethodName());
                     constructor.body().assign(JExpr.refthis(hashCodeCachedValueField), invocation);
                 }
+                buildAttributesComputation(constructor.body(), acceptorParam);
                 constructor.body().assign(JExpr.refthis(acceptorField.name()), acceptorParam);
             }
         }
 
+        /**
+         * Builds fields and getters for synthesized attributes.
+         * <p>
+         * Attributes are computed by acceptor methods in every constructor,
+         * fields of value class type are replaced with their already computed attribute values.
+         * Attributes are stored in final fields, like precomputed hash code.
+         * For serializable classes attributes are transient and are recomputed when value is read.
+         * <p>
+         * Lazy attributes are computed by getters instead, and fields of value class type
+         * are replaced with results of their getters.
+         * Getters compute missing attributes of fields of value class type first, with explicit stack.
+         * Lazy attributes are stored in transient non-final fields, like simple cached hash code,
+         * with zero or null meaning that attribute is not computed yet.
+         * Null results of custom attributes are stored as sentinel object, so that they are cached too.
+         * Reference fields are volatile, so that computed attribute is safely published without locking.
+         */
+        void buildAttributes(Collection<AttributeConfiguration> attributes, Serialization serialization) {
+            for (AttributeConfiguration attribute: attributes) {
+                AbstractJType attributeType = attribute.kind() == AttributeKind.CUSTOM ? attribute.type() : types._int;
+                JMethod getter = environment.buildValueClassMethod(Source.toJMod(attribute.accessLevel()) | JMod.FINAL, attribute.name());
+                getter.type(attributeType);
+                if (isError) {
+                    getter.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                } else {
+                    JFieldVar field;
+                    if (!attribute.isLazy()) {
+                        int mods = JMod.PRIVATE;
+                        mods = serialization.isSerializable() ? mods | JMod.TRANSIENT : mods | JMod.FINAL;
+                        field = environment.buildValueClassField(mods, attributeType, attribute.name() + "CachedValue");
+                        getter.body()._return(JExpr.refthis(field));
+                    } else {
+                        int mods = JMod.PRIVATE;
+                        mods = !serialization.isSerializable() ? mods : mods | JMod.TRANSIENT;
+                        // Null results of custom attributes are stored as sentinel object
+                        AbstractJType fieldType = attribute.kind() == AttributeKind.CUSTOM ? types._Object : attributeType;
+                        mods = fieldType.isPrimitive() ? mods : mods | JMod.VOLATILE;
+                        field = environment.buildValueClassField(mods, fieldType, attribute.name() + "CachedValue");
+                    }
+
+                    JFieldVar visitor = null;
+                    if (attribute.kind() == AttributeKind.CUSTOM) {
+                        String visitorFieldName = attribute.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.US) + "_ATTRIBUTE_VISITOR";
+                        visitor = environment.buildValueClassField(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, attribute.visitor(), visitorFieldName, JExpr._new(attribute.visitor()));
+                    }
+
+                    JMethod acceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, Source.decapitalize(environment.valueClassName()) + Source.capitalize(attribute.name()));
+                    acceptorMethod.type(attributeType);
+                    AbstractJClass[] acceptingInterfaceTypeParams = environment.acceptingInterfaceTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]);
+                    for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                        JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                        AbstractJClass caseValueClassType = environment.unwrappedValueClassType(Arrays.copyOf(caseClass.typeParams(), acceptingInterfaceTypeParams.length, AbstractJClass[].class));
+                        VariableNameSource nameSource = new VariableNameSource();
+                        JMethod caseAcceptorMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, attributeType, acceptorMethod.name());
+                        caseAcceptorMethod.annotate(Override.class);
+                        JBlock body = caseAcceptorMethod.body();
+                        List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                        if (interfaceMethod1.varParam() != null)
+                            params.add(interfaceMethod1.varParam());
+                        if (attribute.kind() == AttributeKind.NODE_COUNT) {
+                            JVar nodeCount = body.decl(types._long, nameSource.get("nodeCount"), JExpr.lit(1L));
+                            for (JVar param: params) {
+                                if (isChild(param.type())) {
+                                    IJExpression childValue = JExpr.refthis(caseClass.fields().get(param.name()));
+                                    JBlock block = Source.isNullable(param) ? body._if(childValue.ne(JExpr._null()))._then() : body;
+                                    block.assignPlus(nodeCount, childAttribute(attribute, unwrapped(caseValueClassType, childValue), field, getter));
+                                }
+                            }
+                            body._return(JExpr.cast(types._int, types._Math.staticInvoke("min").arg(nodeCount).arg(types._Integer.staticRef("MAX_VALUE"))));
+                        } else if (attribute.kind() == AttributeKind.DEPTH) {
+                            JVar depth = body.decl(types._int, nameSource.get("depth"), JExpr.lit(0));
+                            for (JVar param: params) {
+                                if (isChild(param.type())) {
+                                    IJExpression childValue = JExpr.refthis(caseClass.fields().get(param.name()));
+                                    JBlock block = Source.isNullable(param) ? body._if(childValue.ne(JExpr._null()))._then() : body;
+                                    block.assign(depth, types._Math.staticInvoke("max").arg(depth).arg(childAttribute(attribute, unwrapped(caseValueClassType, childValue), field, getter)));
+                                }
+                            }
+                            body._return(depth.plus(JExpr.lit(1)));
+                        } else {
+                            JInvocation invocation = visitor.invoke(interfaceMethod1.name());
+                            for (JVar param: params) {
+                                IJExpression value = JExpr.refthis(caseClass.fields().get(param.name()));
+                                if (!isChild(param.type()))
+                                    invocation.arg(value);
+                                else {
+                                    IJExpression childAttribute = childAttribute(attribute, unwrapped(caseValueClassType, value), field, getter);
+                                    invocation.arg(Source.isNullable(param) ? JOp.cond(value.eq(JExpr._null()), JExpr._null(), childAttribute) : childAttribute);
+                                }
+                            }
+                            body._return(invocation);
+                        }
+                    }
+                    if (!attribute.isLazy()) {
+                        attributeFields.add(field);
+                        attributeAcceptorMethods.add(acceptorMethod);
+                    } else {
+                        VariableNameSource nameSource = new VariableNameSource();
+                        JFieldRef cachedValue = JExpr.refthis(field);
+                        JVar result = getter.body().decl(field.type(), nameSource.get("result"), cachedValue);
+                        JConditional _if = getter.body()._if(field.type().isPrimitive() ? result.eq0() : result.eq(JExpr._null()));
+                        buildLazyAttributeComputation(_if._then(), nameSource, field, acceptorMethod);
+                        _if._then().assign(result, cachedValue);
+                        if (field.type().isPrimitive())
+                            getter.body()._return(result);
+                        else
+                            getter.body()._return(JOp.cond(result.eq(nullAttributeValueField()), JExpr._null(), JExpr.cast(attributeType, result)));
+                        lazyAttributeFields.add(field);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes lazy attribute of this value and of all values of value class type, where it's not yet computed.
+         * <p>
+         * Values are traversed with explicit stack and attributes are computed bottom-up,
+         * so that attributes of children are already cached when attribute of their parent is computed
+         * and deep values don't overflow the stack.
+         */
+        private void buildLazyAttributeComputation(JBlock computation, VariableNameSource nameSource, JFieldVar field, JMethod acceptorMethod) {
+            buildChildAcceptorMethods();
+            AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassTypeInsideValueClass();
+            JVar nodes = computation.decl(types._List.narrow(unwrappedUsedValueClassType), nameSource.get("nodes"), JExpr._new(types._ArrayList.narrow(unwrappedUsedValueClassType)));
+            JVar expanded = computation.decl(types._BitSet, nameSource.get("expanded"), JExpr._new(types._BitSet));
+            computation.add(nodes.invoke("add").arg(JExpr._this()));
+            JBlock loop = computation._while(nodes.invoke("isEmpty").not()).body();
+            JVar top = loop.decl(types._int, nameSource.get("top"), nodes.invoke("size").minus(JExpr.lit(1)));
+            JVar node = loop.decl(unwrappedUsedValueClassType, nameSource.get("node"), nodes.invoke("get").arg(top));
+            JVar childCount = loop.decl(types._int, nameSource.get("childCount"), node.ref(acceptorField).invoke(childCountAcceptorMethod));
+            IJExpression isComputed = field.type().isPrimitive() ? node.ref(field).ne(JExpr.lit(0)) : node.ref(field).ne(JExpr._null());
+            JConditional isKnown = loop._if(isComputed);
+            isKnown._then().add(nodes.invoke("remove").arg(top));
+            isKnown._then().add(expanded.invoke("clear").arg(top));
+            JConditional needsExpansion = isKnown._elseif(childCount.ne(JExpr.lit(0)).cand(expanded.invoke("get").arg(top).not()));
+            needsExpansion._then().add(expanded.invoke("set").arg(top));
+            JForLoop pushLoop = needsExpansion._then()._for();
+            JVar i = pushLoop.init(types._int, nameSource.get("i"), JExpr.lit(0));
+            pushLoop.test(i.lt(childCount));
+            pushLoop.update(i.incr());
+            JVar child = pushLoop.body().decl(unwrappedUsedValueClassType, nameSource.get("child"), node.ref(acceptorField).invoke(childAcceptorMethod).arg(i));
+            IJExpression isChildMissing = field.type().isPrimitive() ? child.ref(field).eq(JExpr.lit(0)) : child.ref(field).eq(JExpr._null());
+            pushLoop.body()._if(child.ne(JExpr._null()).cand(isChildMissing))._then().add(nodes.invoke("add").arg(child));
+            JBlock computing = needsExpansion._else();
+            computing.add(nodes.invoke("remove").arg(top));
+            computing.add(expanded.invoke("clear").arg(top));
+            if (field.type().isPrimitive())
+                computing.assign(node.ref(field), node.ref(acceptorField).invoke(acceptorMethod));
+            else {
+                JVar value = computing.decl(field.type(), nameSource.get("value"), node.ref(acceptorField).invoke(acceptorMethod));
+                computing.assign(node.ref(field), JOp.cond(value.eq(JExpr._null()), nullAttributeValueField(), value));
+            }
+        }
+
+        private JFieldVar nullAttributeValueField() {
+            if (nullAttributeValueField == null)
+                nullAttributeValueField = environment.buildValueClassField(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, types._Object, "NULL_ATTRIBUTE_VALUE", JExpr._new(types._Object));
+            return nullAttributeValueField;
+        }
+
+        private IJExpression childAttribute(AttributeConfiguration attribute, IJExpression child, JFieldVar field, JMethod getter) {
+            return attribute.isLazy() ? child.invoke(getter) : child.ref(field);
+        }
+
+        private void buildAttributesComputation(JBlock body, IJExpression acceptor) {
+            for (int i = 0; i < attributeFields.size(); i++) {
+                body.assign(JExpr.refthis(attributeFields.get(i)), acceptor.invoke(attributeAcceptorMethods.get(i)));
+            }
+        }
+
         void buildProtectedConstructor(Serialization serialization) {
             JMethod constructor = environment.buildValueClassConstructor(JMod.PROTECTED);
             JAnnotationUse annotation = constructor.annotate(SuppressWarnings.class);
@@ -340,6 +814,12 @@ public class FinalValueClassModel {
 
                 if (environment.hashCodeCaching().enabled())
                     constructor.body().assign(JExpr.refthis(hashCodeCachedValueField), param.ref(hashCodeCachedValueField));
+                for (JFieldVar attributeField: attributeFields) {
+                    constructor.body().assign(JExpr.refthis(attributeField), param.ref(attributeField));
+                }
+                for (JFieldVar attributeField: lazyAttributeFields) {
+                    constructor.body().assign(JExpr.refthis(attributeField), param.ref(attributeField));
+                }
                 constructor.body().assign(JExpr.refthis(acceptorField), param.ref(acceptorField));
             }
         }
@@ -493,7 +973,7 @@ public class FinalValueClassModel {
             return constructorMethods;
         }
 
-        void buildHashCodeMethod(int hashCodeBase) {
+        void buildHashCodeMethod(int hashCodeBase, HashFunction hashFunction) {
             if (!isError) {
                 String hashCodeMethodName = hashCodeAcceptorMethodName();
                 JMethod hashCodeMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "hashCode");
@@ -552,7 +1032,7 @@ public class FinalValueClassModel {
                         varArgument = caseClass.fields().get(param.name());
                     }
 
-                    HashCodeMethod methodModel = new HashCodeMethod(types, hashCodeBase, caseHashCodeMethod.body(), nameSource);
+                    HashCodeMethod methodModel = new HashCodeMethod(types, hashCodeBase, hashFunction, caseHashCodeMethod.body(), nameSource);
                     HashCodeMethod.Body body = methodModel.createBody(tag);
                     for (int i = 0; i < arguments.size(); i++) {
                         param = interfaceMethod1.params().get(i);
@@ -568,12 +1048,138 @@ public class FinalValueClassModel {
                         else
                             body.appendNotNullValue(varArgument.type(), JExpr.refthis(varArgument));
                     }
+                    body.appendFinalization();
                     caseHashCodeMethod.body()._return(body.result());
                     tag++;
                 }
             }
         }
 
+        void buildStableHash64Method() {
+            JMethod stableHash64Method = environment.getValueClassMethod(StableHash64Method.METHOD_NAME);
+            if (stableHash64Method == null)
+                throw new IllegalStateException("stableHash64 method should be declared with class header");
+            if (isError) {
+                stableHash64Method.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                String stableHash64MethodName = Source.decapitalize(environment.valueClassName()) + Source.capitalize(StableHash64Method.METHOD_NAME);
+                stableHash64Method.body()._return(JExpr.refthis(acceptorField).invoke(stableHash64MethodName));
+
+                JMethod acceptingInterfaceMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, stableHash64MethodName);
+                acceptingInterfaceMethod.type(types._long);
+
+                StableHash64Method methodModel = StableHash64Method.createInstance(types, environment);
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    JMethod caseStableHash64Method = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._long, stableHash64MethodName);
+                    caseStableHash64Method.annotate(Override.class);
+
+                    VariableNameSource nameSource = new VariableNameSource();
+                    StableHash64Method.Body body = methodModel.createBody(caseStableHash64Method.body(), nameSource, interfaceMethod1.name());
+                    for (JVar param: interfaceMethod1.params()) {
+                        JFieldVar argument = caseClass.fields().get(param.name());
+                        if (Source.isNullable(param))
+                            body.appendNullableValue(argument.type(), JExpr.refthis(argument));
+                        else
+                            body.appendNotNullValue(argument.type(), JExpr.refthis(argument));
+                    }
+                    JVar varParam = interfaceMethod1.varParam();
+                    if (varParam != null) {
+                        JFieldVar varArgument = caseClass.fields().get(varParam.name());
+                        if (Source.isNullable(varParam))
+                            body.appendNullableValue(varArgument.type(), JExpr.refthis(varArgument));
+                        else
+                            body.appendNotNullValue(varArgument.type(), JExpr.refthis(varArgument));
+                    }
+                    caseStableHash64Method.body()._return(body.result());
+                }
+            }
+        }
+
+        void buildDigestIntoMethod(Serialization serialization) {
+            JMethod digestIntoMethod = environment.getValueClassMethod(DigestIntoMethod.METHOD_NAME, types._MessageDigest);
+            if (digestIntoMethod == null)
+                throw new IllegalStateException("digestInto method should be declared with class header");
+            if (isError) {
+                digestIntoMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                JVar digest = digestIntoMethod.params().get(0);
+                String digestIntoMethodName = Source.decapitalize(environment.valueClassName()) + Source.capitalize(DigestIntoMethod.METHOD_NAME);
+                DigestIntoMethod methodModel = DigestIntoMethod.createInstance(types, environment, environment.hashCodeCaching().enabled());
+                AbstractJClass scratchType = methodModel.scratchType();
+
+                JMethod acceptingInterfaceMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, digestIntoMethodName);
+                acceptingInterfaceMethod.param(types._MessageDigest, digest.name());
+                acceptingInterfaceMethod.param(scratchType, "scratch");
+
+                JInvocation invocation = JExpr.refthis(acceptorField).invoke(acceptingInterfaceMethod).arg(digest);
+                invocation.arg(JExpr._new(scratchType));
+                digestIntoMethod.body().add(invocation);
+
+                // Nested values are written as their own digest, that is memoized when hashCode caching is enabled
+                VariableNameSource nameSource = new VariableNameSource();
+                JMethod subDigestMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.FINAL, "subDigest");
+                JVar subDigest = subDigestMethod.param(types._MessageDigest, nameSource.get("digest"));
+                JVar scratch = subDigestMethod.param(scratchType, nameSource.get("scratch"));
+                JBlock body = subDigestMethod.body();
+                if (!environment.hashCodeCaching().enabled()) {
+                    // Digest is pushed to the byte stack of scratch object
+                    subDigestMethod.type(types._void);
+                    JVar valueDigest = body.decl(types._MessageDigest, nameSource.get("valueDigest"), methodModel.scratch(subDigest, scratch));
+                    body.add(JExpr.refthis(acceptorField).invoke(acceptingInterfaceMethod).arg(valueDigest).arg(scratch));
+                    body.add(methodModel.push(scratch, valueDigest));
+                } else {
+                    // Memoized digest is returned as is and should never be modified
+                    subDigestMethod.type(types._byte.array());
+                    int mods = JMod.PRIVATE | JMod.VOLATILE;
+                    mods = !serialization.isSerializable() ? mods : mods | JMod.TRANSIENT;
+                    JFieldVar cachedValueField = environment.buildValueClassField(mods, types._byte.array(), "digestCachedValue");
+                    JVar algorithm = body.decl(types._String, nameSource.get("algorithm"), subDigest.invoke("getAlgorithm"));
+                    JVar cached = body.decl(types._byte.array(), nameSource.get("cached"), JExpr.refthis(cachedValueField));
+                    JConditional _if = body._if(methodModel.cachedValueMatches(cached, algorithm).not());
+                    JVar valueDigest = _if._then().decl(types._MessageDigest, nameSource.get("valueDigest"), methodModel.scratch(subDigest, scratch));
+                    _if._then().add(JExpr.refthis(acceptorField).invoke(acceptingInterfaceMethod).arg(valueDigest).arg(scratch));
+                    _if._then().assign(cached, methodModel.createCachedValue(algorithm, valueDigest.invoke("digest")));
+                    _if._then().assign(JExpr.refthis(cachedValueField), cached);
+                    body._return(cached);
+                }
+
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    JMethod caseDigestIntoMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._void, digestIntoMethodName);
+                    caseDigestIntoMethod.annotate(Override.class);
+
+                    nameSource = new VariableNameSource();
+                    JVar caseDigest = caseDigestIntoMethod.param(types._MessageDigest, nameSource.get(digest.name()));
+                    JVar caseScratch = caseDigestIntoMethod.param(scratchType, nameSource.get("scratch"));
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    boolean pushesNestedDigests = false;
+                    for (JVar param: params) {
+                        if (methodModel.isPushed(param.type()))
+                            pushesNestedDigests = true;
+                    }
+                    DigestIntoMethod.Body caseBody = methodModel.createBody(caseDigestIntoMethod.body(), nameSource, caseDigest, caseScratch, subDigestMethod, pushesNestedDigests);
+                    List<IJExpression> values = new ArrayList<>();
+                    for (JVar param: params) {
+                        JFieldVar argument = caseClass.fields().get(param.name());
+                        values.add(caseBody.prepareValue(argument.type(), JExpr.refthis(argument), Source.isNullable(param)));
+                    }
+                    caseBody.appendCaseName(interfaceMethod1.name());
+                    for (int i = 0; i < params.size(); i++) {
+                        JVar param = params.get(i);
+                        JFieldVar argument = caseClass.fields().get(param.name());
+                        if (Source.isNullable(param))
+                            caseBody.appendNullableValue(argument.type(), values.get(i));
+                        else
+                            caseBody.appendNotNullValue(argument.type(), values.get(i));
+                    }
+                    caseBody.finish();
+                }
+            }
+        }
+
         void buildToStringMethod() {
             if (!isError) {
                 JMethod toStringMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "toString");
@@ -730,11 +1336,28 @@ public class FinalValueClassModel {
                     }
                 }
 
+                JMethod hashCodeUpdaterMethod = null;
+                if (updatesHashCodeIncrementally()) {
+                    hashCodeUpdaterMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, hashCodeAcceptorMethodName() + Source.capitalize(updaterName));
+                    hashCodeUpdaterMethod.type(types._int);
+                    VariableNameSource hashCodeUpdaterNameSource = new VariableNameSource();
+                    hashCodeUpdaterMethod.param(types._int, hashCodeUpdaterNameSource.get("hashCode"));
+                    hashCodeUpdaterMethod.param(field.type(), hashCodeUpdaterNameSource.get("newValue"));
+                }
+
                 JInvocation invocation1 = JExpr.refthis(acceptorField).invoke(acceptingInterfaceUpdaterMethod);
                 invocation1.arg(newValue);
                 JVar newAcceptor = updaterMethod.body().decl(usedAcceptingInterfaceType, updaterNameSource.get("newAcceptor"), invocation1);
                 JInvocation constructorInvocation = JExpr._new(unwrappedUsedValueClassType);
                 constructorInvocation.arg(newAcceptor);
+                if (hashCodeUpdaterMethod != null) {
+                    // Only changed field is rehashed, other fields may hold arbitrary large arrays
+                    buildPrecomputedHashCodeConstructor();
+                    JInvocation hashCodeUpdate = JExpr.refthis(acceptorField).invoke(hashCodeUpdaterMethod);
+                    hashCodeUpdate.arg(JExpr.refthis(hashCodeCachedValueField));
+                    hashCodeUpdate.arg(newValue);
+                    constructorInvocation.arg(hashCodeUpdate);
+                }
                 JConditional _if = updaterMethod.body()._if(newAcceptor.ne(JExpr.refthis(acceptorField)));
                 _if._then()._return(environment.wrappedValue(usedValueClassType, constructorInvocation));
 
@@ -763,13 +1386,13 @@ public class FinalValueClassModel {
                             Source.annotateNonnull(newValue);
                         }
                     }
-                    boolean isChanged = false;
+                    JFieldVar changedField = null;
                     JInvocation invocation = JExpr._new(usedCaseClassType);
                     for (JVar param: interfaceMethod1.params()) {
                         JFieldVar argument = caseClass.fields().get(param.name());
                         if (field.isFieldValue(interfaceMethod1, param.name())) {
                             invocation.arg(newValue);
-                            isChanged = true;
+                            changedField = argument;
                         } else {
                             invocation.arg(JExpr.refthis(argument));
                         }
@@ -779,19 +1402,1384 @@ public class FinalValueClassModel {
                         JFieldVar argument = caseClass.fields().get(param.name());
                         if (field.isFieldValue(interfaceMethod1, param.name())) {
                             invocation.arg(newValue);
-                            isChanged = true;
+                            changedField = argument;
                         } else {
                             invocation.arg(JExpr.refthis(argument));
                         }
                     }
-                    if (isChanged)
+                    if (changedField != null) {
+                        JConditional unchanged = caseClassUpdaterMethod.body()._if(sameValue(field.type(), newValue, JExpr.refthis(changedField)));
+                        unchanged._then()._return(JExpr._this());
                         caseClassUpdaterMethod.body()._return(invocation);
-                    else
+                    } else
                         caseClassUpdaterMethod.body()._return(JExpr._this());
+
+                    if (hashCodeUpdaterMethod != null) {
+                        VariableNameSource ccHashCodeUpdaterNameSource = new VariableNameSource();
+                        JMethod caseClassHashCodeUpdaterMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._int, hashCodeUpdaterMethod.name());
+                        caseClassHashCodeUpdaterMethod.annotate(Override.class);
+                        JVar hashCode = caseClassHashCodeUpdaterMethod.param(types._int, ccHashCodeUpdaterNameSource.get("hashCode"));
+                        newValue = caseClassHashCodeUpdaterMethod.param(field.type(), ccHashCodeUpdaterNameSource.get("newValue"));
+                        if (changedField == null)
+                            caseClassHashCodeUpdaterMethod.body()._return(hashCode);
+                        else {
+                            int fieldCount = interfaceMethod1.params().size() + (interfaceMethod1.hasVarArgs() ? 1 : 0);
+                            int fieldIndex = 0;
+                            boolean isNullable = false;
+                            for (JVar param1: interfaceMethod1.params()) {
+                                if (param1.name().equals(changedField.name())) {
+                                    isNullable = Source.isNullable(param1);
+                                    break;
+                                }
+                                fieldIndex++;
+                            }
+                            if (fieldIndex == interfaceMethod1.params().size())
+                                isNullable = Source.isNullable(interfaceMethod1.varParam());
+                            HashCodeMethod methodModel = new HashCodeMethod(types, environment.hashCodeBase(), environment.hashFunction(), caseClassHashCodeUpdaterMethod.body(), ccHashCodeUpdaterNameSource);
+                            IJExpression result = methodModel.updatedHashCode(hashCode, fieldIndex, fieldCount, field.type(), isNullable, JExpr.refthis(changedField), newValue);
+                            caseClassHashCodeUpdaterMethod.body()._return(result);
+                        }
+                    }
+                }
+            }
+        }
+
+        void buildBatchUpdate(Collection<FieldConfiguration> updaters) {
+            JDefinedClass batchUpdateClass;
+            try {
+                batchUpdateClass = environment.buildValueClassInnerClass(JMod.PUBLIC | JMod.STATIC | JMod.FINAL, environment.valueClassName() + "BatchUpdate", EClassType.CLASS);
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception :)", ex);
+            }
+            for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+                JTypeVar typeParameter = batchUpdateClass.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+            }
+            AbstractJClass usedBatchUpdateType = Source.narrowType(batchUpdateClass, batchUpdateClass.typeParams());
+            AbstractJClass usedValueClassType = environment.wrappedValueClassType(batchUpdateClass.typeParams());
+            AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassType(batchUpdateClass.typeParams());
+
+            VariableNameSource fieldNameSource = new VariableNameSource();
+            JFieldVar valueField = batchUpdateClass.field(JMod.PRIVATE | JMod.FINAL, unwrappedUsedValueClassType, fieldNameSource.get("value"));
+            JMethod constructor = batchUpdateClass.constructor(JMod.NONE);
+            JVar valueParam = constructor.param(unwrappedUsedValueClassType, valueField.name());
+            constructor.body().assign(JExpr._this().ref(valueField), valueParam);
+
+            Map<String, JFieldVar> newValueFields = new TreeMap<>();
+            Map<String, JFieldVar> changedFields = new TreeMap<>();
+            for (FieldConfiguration field: updaters) {
+                JFieldVar newValueField = batchUpdateClass.field(JMod.PRIVATE, field.type(), fieldNameSource.get(field.name()));
+                JFieldVar changedField = batchUpdateClass.field(JMod.PRIVATE, types._boolean, fieldNameSource.get(field.name() + "Changed"), JExpr.FALSE);
+                newValueFields.put(field.name(), newValueField);
+                changedFields.put(field.name(), changedField);
+
+                VariableNameSource nameSource = new VariableNameSource();
+                JMethod updaterMethod = batchUpdateClass.method(Source.toJMod(field.accessLevel()) | JMod.FINAL, usedBatchUpdateType, field.name());
+                Source.annotateNonnull(updaterMethod);
+                JVar newValue;
+                if (field.isVarArg())
+                    newValue = updaterMethod.varParam(field.type().elementType(), nameSource.get("newValue"));
+                else
+                    newValue = updaterMethod.param(field.type(), nameSource.get("newValue"));
+                if (field.type().isReference()) {
+                    if (field.isNullable()) {
+                        Source.annotateNullable(newValue);
+                    } else {
+                        Source.annotateNonnull(newValue);
+                    }
+                }
+                updaterMethod.body().assign(JExpr._this().ref(newValueField), newValue);
+                updaterMethod.body().assign(JExpr._this().ref(changedField), JExpr.TRUE);
+                updaterMethod.body()._return(JExpr._this());
+            }
+
+            JMethod batchUpdateMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "batchUpdate");
+            AbstractJClass batchUpdateTypeInsideValueClass = Source.narrowType(batchUpdateClass, environment.unwrappedValueClassTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]));
+            batchUpdateMethod.type(batchUpdateTypeInsideValueClass);
+            Source.annotateNonnull(batchUpdateMethod);
+            batchUpdateMethod.body()._return(JExpr._new(batchUpdateTypeInsideValueClass).arg(JExpr._this()));
+
+            JMethod buildMethod = batchUpdateClass.method(JMod.PUBLIC | JMod.FINAL, usedValueClassType, "build");
+            Source.annotateNonnull(buildMethod);
+            if (isError) {
+                buildMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                String batchUpdateMethodName = Source.decapitalize(environment.valueClassName()) + "BatchUpdate";
+                AbstractJClass usedAcceptingInterfaceType = environment.acceptingInterfaceType(batchUpdateClass.typeParams());
+                JMethod acceptingInterfaceMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, batchUpdateMethodName);
+                acceptingInterfaceMethod.type(environment.acceptingInterfaceTypeInsideValueClass());
+                Source.annotateNonnull(acceptingInterfaceMethod);
+                acceptingInterfaceMethod.param(Source.narrowType(batchUpdateClass, environment.acceptingInterfaceTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0])), "update");
+
+                VariableNameSource nameSource = new VariableNameSource();
+                JFieldRef acceptor = JExpr._this().ref(valueField).ref(acceptorField);
+                JVar newAcceptor = buildMethod.body().decl(usedAcceptingInterfaceType, nameSource.get("newAcceptor"), acceptor.invoke(batchUpdateMethodName).arg(JExpr._this()));
+                JConditional _if = buildMethod.body()._if(newAcceptor.ne(acceptor));
+                _if._then()._return(environment.wrappedValue(usedValueClassType, JExpr._new(unwrappedUsedValueClassType).arg(newAcceptor)));
+                IJExpression value = JExpr._this().ref(valueField);
+                IJExpression unchangedResult;
+                if (!environment.wrappingEnabled())
+                    unchangedResult = value;
+                else
+                    unchangedResult = JExpr.cond(value._instanceof(usedValueClassType.erasure()), JExpr.cast(usedValueClassType, value), environment.wrappedValue(usedValueClassType, value));
+                _if._else()._return(unchangedResult);
+
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    AbstractJClass usedCaseClassType = Source.narrowType(caseClass, caseClass.typeParams());
+                    JMethod caseClassMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, environment.acceptingInterfaceType(caseClass.typeParams()), batchUpdateMethodName);
+                    Source.annotateNonnull(caseClassMethod);
+                    caseClassMethod.annotate(Override.class);
+                    nameSource = new VariableNameSource();
+                    JVar update = caseClassMethod.param(Source.narrowType(batchUpdateClass, caseClass.typeParams()), nameSource.get("update"));
+
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    JInvocation invocation = JExpr._new(usedCaseClassType);
+                    IJExpression isUnchanged = null;
+                    for (JVar param: params) {
+                        JFieldVar argument = caseClass.fields().get(param.name());
+                        FieldConfiguration updatedField = null;
+                        for (FieldConfiguration field: updaters) {
+                            if (field.isFieldValue(interfaceMethod1, param.name()))
+                                updatedField = field;
+                        }
+                        if (updatedField == null)
+                            invocation.arg(JExpr.refthis(argument));
+                        else {
+                            IJExpression newValue = JOp.cond(update.ref(changedFields.get(updatedField.name())),
+                                                             update.ref(newValueFields.get(updatedField.name())),
+                                                             JExpr.refthis(argument));
+                            JVar variable = caseClassMethod.body().decl(argument.type(), nameSource.get(param.name()), newValue);
+                            invocation.arg(variable);
+                            IJExpression isSame = sameValue(updatedField.type(), variable, JExpr.refthis(argument));
+                            isUnchanged = isUnchanged == null ? isSame : isUnchanged.cand(isSame);
+                        }
+                    }
+                    if (isUnchanged != null) {
+                        JConditional unchanged = caseClassMethod.body()._if(isUnchanged);
+                        unchanged._then()._return(JExpr._this());
+                        caseClassMethod.body()._return(invocation);
+                    } else
+                        caseClassMethod.body()._return(JExpr._this());
+                }
+            }
+        }
+
+        /**
+         * Builds map method, that applies function to every value of type parameter.
+         * <p>
+         * Structure is traversed iteratively with explicit stack, so deep structures don't overflow call stack.
+         * Every node is rebuilt only when some of its fields changed,
+         * otherwise original node is reused, so that the whole value is returned
+         * when function returns the very same value for every element.
+         *
+         * @see MapMethod
+         */
+        void buildMapMethod(Map<String, JMethod> constructorMethods) {
+            JTypeVar visitorTypeParameter = environment.getValueTypeParameters().iterator().next();
+            String resultTypeParameterName = MapMethod.resultTypeParameterName(visitorTypeParameter);
+            JDefinedClass mapperInterface;
+            try {
+                mapperInterface = environment.buildValueClassInnerClass(JMod.PUBLIC, environment.valueClassName() + "Mapper", EClassType.INTERFACE);
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception :)", ex);
+            }
+            JTypeVar mapperArgumentType = mapperInterface.generify(visitorTypeParameter.name());
+            JTypeVar mapperResultType = mapperInterface.generify(resultTypeParameterName);
+            JMethod applyMethod = mapperInterface.method(JMod.PUBLIC, mapperResultType, "apply");
+            applyMethod.param(mapperArgumentType, "value");
+
+            AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassTypeInsideValueClass();
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+            AbstractJClass typeParameter = unwrappedUsedValueClassType.getTypeParameters().get(0);
+            JMethod mapMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, MapMethod.METHOD_NAME);
+            JTypeVar resultTypeParameter = mapMethod.generify(resultTypeParameterName);
+            AbstractJClass resultValueClassType = environment.wrappedValueClassType(new AbstractJClass[] {resultTypeParameter});
+            mapMethod.type(resultValueClassType);
+            Source.annotateNonnull(mapMethod);
+            VariableNameSource nameSource = new VariableNameSource();
+            JVar function = mapMethod.param(mapperInterface.narrow(typeParameter.wildcardSuper(), resultTypeParameter.wildcard()), nameSource.get("function"));
+            if (isError) {
+                mapMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                buildChildAcceptorMethods();
+                String mapNodeMethodName = Source.decapitalize(environment.valueClassName()) + "Map";
+
+                AbstractJClass[] acceptingInterfaceTypeParams = environment.acceptingInterfaceTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]);
+                JMethod mapNodeMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, mapNodeMethodName);
+                JTypeVar mapNodeResultTypeParameter = mapNodeMethod.generify(resultTypeParameterName);
+                mapNodeMethod.type(environment.wrappedValueClassType(new AbstractJClass[] {mapNodeResultTypeParameter}));
+                Source.annotateNullable(mapNodeMethod);
+                mapNodeMethod.param(mapperInterface.narrow(acceptingInterfaceTypeParams[0].wildcardSuper(), mapNodeResultTypeParameter.wildcard()), "function");
+                mapNodeMethod.param(types._List.narrow(types._Object), "results");
+                mapNodeMethod.param(types._int, "offset");
+
+                JAnnotationUse annotation = mapMethod.annotate(SuppressWarnings.class);
+                annotation.param("value", "unchecked");
+                JBlock body = mapMethod.body();
+                JVar nodes = body.decl(types._List.narrow(usedValueClassType), nameSource.get("nodes"), JExpr._new(types._ArrayList.narrow(usedValueClassType)));
+                JVar expanded = body.decl(types._BitSet, nameSource.get("expanded"), JExpr._new(types._BitSet));
+                JVar results = body.decl(types._List.narrow(types._Object), nameSource.get("results"), JExpr._new(types._ArrayList.narrow(types._Object)));
+                IJExpression root;
+                if (!environment.wrappingEnabled())
+                    root = JExpr._this();
+                else
+                    root = JExpr.cond(JExpr._this()._instanceof(usedValueClassType.erasure()), JExpr.cast(usedValueClassType, JExpr._this()), environment.wrappedValue(usedValueClassType, JExpr._this()));
+                body.add(nodes.invoke("add").arg(root));
+                JBlock loop = body._while(nodes.invoke("isEmpty").not()).body();
+                JVar top = loop.decl(types._int, nameSource.get("top"), nodes.invoke("size").minus(JExpr.lit(1)));
+                JVar node = loop.decl(usedValueClassType, nameSource.get("node"), nodes.invoke("get").arg(top));
+                JConditional isNull = loop._if(node.eq(JExpr._null()));
+                isNull._then().add(nodes.invoke("remove").arg(top));
+                isNull._then().add(results.invoke("add").arg(JExpr._null()));
+                JBlock notNull = isNull._else();
+                IJExpression nodeAcceptor = environment.wrappingEnabled() ? JExpr.cast(unwrappedUsedValueClassType, node).ref(acceptorField) : node.ref(acceptorField);
+                JVar acceptor = notNull.decl(acceptorField.type(), nameSource.get("acceptor"), nodeAcceptor);
+                JVar childCount = notNull.decl(types._int, nameSource.get("childCount"), acceptor.invoke(childCountAcceptorMethod));
+                JConditional needsExpansion = notNull._if(childCount.ne(JExpr.lit(0)).cand(expanded.invoke("get").arg(top).not()));
+                needsExpansion._then().add(expanded.invoke("set").arg(top));
+                JForLoop forLoop = needsExpansion._then()._for();
+                JVar i = forLoop.init(types._int, nameSource.get("i"), childCount.minus(JExpr.lit(1)));
+                forLoop.test(i.gte(JExpr.lit(0)));
+                forLoop.update(i.decr());
+                forLoop.body().add(nodes.invoke("add").arg(acceptor.invoke(childAcceptorMethod).arg(i)));
+                JBlock mapNode = needsExpansion._else();
+                mapNode.add(nodes.invoke("remove").arg(top));
+                mapNode.add(expanded.invoke("clear").arg(top));
+                JVar offset = mapNode.decl(types._int, nameSource.get("offset"), results.invoke("size").minus(childCount));
+                JVar mapped = mapNode.decl(resultValueClassType, nameSource.get("mapped"), acceptor.invoke(mapNodeMethod).narrow(resultTypeParameter).arg(function).arg(results).arg(offset));
+                mapNode.add(results.invoke("subList").arg(offset).arg(results.invoke("size")).invoke("clear"));
+                JConditional isChanged = mapNode._if(mapped.ne(JExpr._null()));
+                isChanged._then().add(results.invoke("add").arg(mapped));
+                isChanged._else().add(results.invoke("add").arg(node));
+                body._return(JExpr.cast(resultValueClassType, results.invoke("get").arg(JExpr.lit(0))));
+
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    AbstractJClass caseTypeParameter = caseClass.typeParams()[0];
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+
+                    nameSource = new VariableNameSource();
+                    JMethod caseMapNodeMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._void, mapNodeMethodName);
+                    caseMapNodeMethod.annotate(Override.class);
+                    JTypeVar caseResultTypeParameter = caseMapNodeMethod.generify(resultTypeParameterName);
+                    AbstractJClass caseResultValueClassType = environment.wrappedValueClassType(new AbstractJClass[] {caseResultTypeParameter});
+                    caseMapNodeMethod.type(caseResultValueClassType);
+                    Source.annotateNullable(caseMapNodeMethod);
+                    JVar caseFunction = caseMapNodeMethod.param(mapperInterface.narrow(caseTypeParameter.wildcardSuper(), caseResultTypeParameter.wildcard()), nameSource.get("function"));
+                    JVar caseResults = caseMapNodeMethod.param(types._List.narrow(types._Object), nameSource.get("results"));
+                    JVar caseOffset = caseMapNodeMethod.param(types._int, nameSource.get("offset"));
+
+                    JInvocation invocation = environment.invokeValueClassStaticMethod(constructorMethods.get(interfaceMethod1.name()), new AbstractJClass[] {caseResultTypeParameter});
+                    IJExpression isUnchanged = null;
+                    int childIndex = 0;
+                    for (JVar param: params) {
+                        JFieldVar field = caseClass.fields().get(param.name());
+                        MapMethod.FieldKind kind = mapFieldKind(visitorTypeParameter, param);
+                        if (kind == MapMethod.FieldKind.ELEMENT) {
+                            IJExpression mappedValue = caseFunction.invoke(applyMethod).arg(JExpr.refthis(field));
+                            if (Source.isNullable(param))
+                                mappedValue = JOp.cond(JExpr.refthis(field).eq(JExpr._null()), JExpr._null(), mappedValue);
+                            JVar variable = caseMapNodeMethod.body().decl(caseResultTypeParameter, nameSource.get(param.name()), mappedValue);
+                            invocation.arg(variable);
+                            IJExpression isSame = JExpr.cast(types._Object, variable).eq(JExpr.refthis(field));
+                            isUnchanged = isUnchanged == null ? isSame : isUnchanged.cand(isSame);
+                        } else if (kind == MapMethod.FieldKind.CHILD) {
+                            IJExpression mappedValue = JExpr.cast(caseResultValueClassType, caseResults.invoke("get").arg(caseOffset.plus(JExpr.lit(childIndex))));
+                            JVar variable = caseMapNodeMethod.body().decl(caseResultValueClassType, nameSource.get(param.name()), mappedValue);
+                            invocation.arg(variable);
+                            IJExpression isSame = JExpr.cast(types._Object, variable).eq(JExpr.refthis(field));
+                            isUnchanged = isUnchanged == null ? isSame : isUnchanged.cand(isSame);
+                            childIndex++;
+                        } else
+                            invocation.arg(JExpr.refthis(field));
+                    }
+                    if (isUnchanged == null)
+                        caseMapNodeMethod.body()._return(JExpr._null());
+                    else {
+                        if (childIndex != 0) {
+                            annotation = caseMapNodeMethod.annotate(SuppressWarnings.class);
+                            annotation.param("value", "unchecked");
+                        }
+                        caseMapNodeMethod.body()._if(isUnchanged)._then()._return(JExpr._null());
+                        caseMapNodeMethod.body()._return(invocation);
+                    }
                 }
             }
         }
 
+        private MapMethod.FieldKind mapFieldKind(JTypeVar typeParameter, JVar param) {
+            return MapMethod.fieldKind(environment.visitorDefinition(), typeParameter, param.type(), environment.unwrappedValueClassTypeInsideValueClass(), environment.wrappedValueClassTypeInsideValueClass());
+        }
+
+        /**
+         * Builds factories that create value from array or iterable of elements.
+         * <p>
+         * List-shaped value is built by a single loop from the last element to the first one.
+         * Tree-shaped value is built as balanced tree,
+         * so that elements are enumerated in the same order as they are given.
+         * Values are built with usual factory methods,
+         * so cached hash codes are computed incrementally from already built children.
+         */
+        void buildBulkFactoryMethods(Map<String, JMethod> constructorMethods) {
+            JTypeVar visitorTypeParameter = environment.getValueTypeParameters().iterator().next();
+            BulkFactoryMethods.Shape shape = BulkFactoryMethods.shape(environment.visitorDefinition(),
+                                                                      visitorTypeParameter,
+                                                                      environment.unwrappedValueClassTypeInsideValueClass(),
+                                                                      environment.wrappedValueClassTypeInsideValueClass());
+            boolean isTree = shape != null && shape.isTree();
+            int mods = Source.toJMod(environment.factoryMethodAccessLevel()) | JMod.STATIC;
+
+            JMethod fromArrayMethod = environment.buildValueClassMethod(mods, isTree ? BulkFactoryMethods.BALANCED_FROM_ARRAY_METHOD_NAME : BulkFactoryMethods.FROM_ARRAY_METHOD_NAME);
+            JTypeVar fromArrayTypeParameter = fromArrayMethod.generify(visitorTypeParameter.name());
+            fromArrayTypeParameter.boundLike(visitorTypeParameter);
+            fromArrayMethod.type(environment.wrappedValueClassType(new AbstractJClass[] {fromArrayTypeParameter}));
+            Source.annotateNonnull(fromArrayMethod);
+            JVar array = fromArrayMethod.param(fromArrayTypeParameter.array(), "elements");
+            Source.annotateNonnull(array);
+
+            JMethod fromIterableMethod = environment.buildValueClassMethod(mods, isTree ? BulkFactoryMethods.BALANCED_FROM_ITERABLE_METHOD_NAME : BulkFactoryMethods.FROM_ITERABLE_METHOD_NAME);
+            JTypeVar fromIterableTypeParameter = fromIterableMethod.generify(visitorTypeParameter.name());
+            fromIterableTypeParameter.boundLike(visitorTypeParameter);
+            fromIterableMethod.type(environment.wrappedValueClassType(new AbstractJClass[] {fromIterableTypeParameter}));
+            Source.annotateNonnull(fromIterableMethod);
+            JVar iterable = fromIterableMethod.param(types._Iterable.narrow(fromIterableTypeParameter.wildcard()), "elements");
+            Source.annotateNonnull(iterable);
+
+            if (isError || shape == null) {
+                fromArrayMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                fromIterableMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                JMethod emptyMethod = constructorMethods.get(shape.emptyCaseName());
+                JMethod nodeMethod = constructorMethods.get(shape.nodeCaseName());
+                JMethod nodeDefinition = null;
+                for (JMethod interfaceMethod: environment.visitorDefinition().methodDefinitions()) {
+                    if (interfaceMethod.name().equals(shape.nodeCaseName()))
+                        nodeDefinition = interfaceMethod;
+                }
+
+                JMethod fromListMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, isTree ? "balancedFromList" : "fromList");
+                JTypeVar typeParameter = fromListMethod.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+                AbstractJClass usedValueClassType = environment.wrappedValueClassType(new AbstractJClass[] {typeParameter});
+                AbstractJClass[] typeArguments = new AbstractJClass[] {typeParameter};
+                fromListMethod.type(usedValueClassType);
+                VariableNameSource nameSource = new VariableNameSource();
+                JVar elements = fromListMethod.param(types._List.narrow(typeParameter.wildcard()), nameSource.get("elements"));
+                JBlock body = fromListMethod.body();
+                if (!isTree) {
+                    JVar result = body.decl(usedValueClassType, nameSource.get("result"), environment.invokeValueClassStaticMethod(emptyMethod, typeArguments));
+                    JForLoop loop = body._for();
+                    JVar i = loop.init(types._int, nameSource.get("i"), elements.invoke("size").minus(JExpr.lit(1)));
+                    loop.test(i.gte(JExpr.lit(0)));
+                    loop.update(i.decr());
+                    JInvocation node = environment.invokeValueClassStaticMethod(nodeMethod, typeArguments);
+                    for (JVar param: nodeDefinition.params()) {
+                        node.arg(isChild(param.type()) ? result : elements.invoke("get").arg(i));
+                    }
+                    loop.body().assign(result, node);
+                    body._return(result);
+                } else {
+                    JVar from = fromListMethod.param(types._int, nameSource.get("from"));
+                    JVar to = fromListMethod.param(types._int, nameSource.get("to"));
+                    body._if(from.eq(to))._then()._return(environment.invokeValueClassStaticMethod(emptyMethod, typeArguments));
+                    IJExpression rootIndex;
+                    IJExpression[] bounds;
+                    if (shape.childrenBeforeElement() == 0) {
+                        JVar root = body.decl(types._int, nameSource.get("root"), from);
+                        JVar middle = body.decl(types._int, nameSource.get("middle"), root.plus(JExpr.lit(1)).plus(to.minus(root).minus(JExpr.lit(1)).div(JExpr.lit(2))));
+                        rootIndex = root;
+                        bounds = new IJExpression[] {root.plus(JExpr.lit(1)), middle, middle, to};
+                    } else if (shape.childrenBeforeElement() == 1) {
+                        JVar root = body.decl(types._int, nameSource.get("root"), from.plus(to.minus(from).div(JExpr.lit(2))));
+                        rootIndex = root;
+                        bounds = new IJExpression[] {from, root, root.plus(JExpr.lit(1)), to};
+                    } else {
+                        JVar root = body.decl(types._int, nameSource.get("root"), to.minus(JExpr.lit(1)));
+                        JVar middle = body.decl(types._int, nameSource.get("middle"), from.plus(root.minus(from).div(JExpr.lit(2))));
+                        rootIndex = root;
+                        bounds = new IJExpression[] {from, middle, middle, root};
+                    }
+                    JVar left = body.decl(usedValueClassType, nameSource.get("left"), environment.invokeValueClassStaticMethod(fromListMethod, typeArguments).arg(elements).arg(bounds[0]).arg(bounds[1]));
+                    JVar right = body.decl(usedValueClassType, nameSource.get("right"), environment.invokeValueClassStaticMethod(fromListMethod, typeArguments).arg(elements).arg(bounds[2]).arg(bounds[3]));
+                    JInvocation node = environment.invokeValueClassStaticMethod(nodeMethod, typeArguments);
+                    int childIndex = 0;
+                    for (JVar param: nodeDefinition.params()) {
+                        if (!isChild(param.type()))
+                            node.arg(elements.invoke("get").arg(rootIndex));
+                        else {
+                            node.arg(childIndex == 0 ? left : right);
+                            childIndex++;
+                        }
+                    }
+                    body._return(node);
+                }
+
+                JInvocation fromArrayList = environment.invokeValueClassStaticMethod(fromListMethod, new AbstractJClass[] {fromArrayTypeParameter});
+                fromArrayList.arg(types._Arrays.staticInvoke("asList").arg(array));
+                if (isTree)
+                    fromArrayList.arg(JExpr.lit(0)).arg(array.ref("length"));
+                fromArrayMethod.body()._return(fromArrayList);
+
+                nameSource = new VariableNameSource();
+                AbstractJClass listType = types._List.narrow(fromIterableTypeParameter);
+                JVar list = fromIterableMethod.body().decl(listType, nameSource.get("list"), JExpr._new(types._ArrayList.narrow(fromIterableTypeParameter)));
+                JForEach forEach = fromIterableMethod.body().forEach(fromIterableTypeParameter, nameSource.get("element"), iterable);
+                forEach.body().add(list.invoke("add").arg(forEach.var()));
+                JInvocation fromIterableList = environment.invokeValueClassStaticMethod(fromListMethod, new AbstractJClass[] {fromIterableTypeParameter});
+                fromIterableList.arg(list);
+                if (isTree)
+                    fromIterableList.arg(JExpr.lit(0)).arg(list.invoke("size"));
+                fromIterableMethod.body()._return(fromIterableList);
+            }
+        }
+
+        /**
+         * Builds iterator method and, when Java 8 API is available, spliterator and stream methods.
+         * <p>
+         * Elements are values of fields whose type is the type parameter of value class.
+         * Elements of every field of value class type are enumerated in place of this field,
+         * so that elements are enumerated in the order of declaration of fields.
+         * Number of elements is computed once and cached in every node,
+         * so that spliterator reports exact size.
+         */
+        void buildStreamMethods(Serialization serialization) {
+            JTypeVar visitorTypeParameter = environment.getValueTypeParameters().iterator().next();
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+            AbstractJClass typeParameter = usedValueClassType.getTypeParameters().get(0);
+            JMethod iteratorMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "iterator");
+            iteratorMethod.type(types._Iterator.narrow(typeParameter));
+            Source.annotateNonnull(iteratorMethod);
+            JMethod spliteratorMethod = null;
+            JMethod streamMethod = null;
+            if (environment.isStreamApiAvailable()) {
+                spliteratorMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "spliterator");
+                spliteratorMethod.type(types._Spliterator.narrow(typeParameter));
+                Source.annotateNonnull(spliteratorMethod);
+                streamMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "stream");
+                streamMethod.type(types._Stream.narrow(typeParameter));
+                Source.annotateNonnull(streamMethod);
+            }
+            if (isError) {
+                iteratorMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                if (spliteratorMethod != null)
+                    spliteratorMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                if (streamMethod != null)
+                    streamMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                String acceptorMethodNamePrefix = Source.decapitalize(environment.valueClassName());
+                JMethod elementCountAcceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "ElementCount");
+                elementCountAcceptorMethod.type(types._int);
+                JMethod pushElementsAcceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "PushElements");
+                pushElementsAcceptorMethod.param(types._List.narrow(types._Object), "pending");
+                pushElementsAcceptorMethod.param(types._BitSet, "elements");
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    Collections.reverse(params);
+
+                    JMethod casePushElementsMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._void, pushElementsAcceptorMethod.name());
+                    casePushElementsMethod.annotate(Override.class);
+                    JVar casePending = casePushElementsMethod.param(types._List.narrow(types._Object), "pending");
+                    JVar caseElements = casePushElementsMethod.param(types._BitSet, "elements");
+                    int elementCount = 0;
+                    for (JVar param: params) {
+                        JFieldVar field = caseClass.fields().get(param.name());
+                        MapMethod.FieldKind kind = mapFieldKind(visitorTypeParameter, param);
+                        if (kind == MapMethod.FieldKind.ELEMENT) {
+                            casePushElementsMethod.body().add(caseElements.invoke("set").arg(casePending.invoke("size")));
+                            casePushElementsMethod.body().add(casePending.invoke("add").arg(JExpr.refthis(field)));
+                            elementCount++;
+                        } else if (kind == MapMethod.FieldKind.CHILD) {
+                            JBlock isPresent = casePushElementsMethod.body()._if(JExpr.refthis(field).ne(JExpr._null()))._then();
+                            isPresent.add(casePending.invoke("add").arg(JExpr.refthis(field)));
+                        }
+                    }
+
+                    JMethod caseElementCountMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._int, elementCountAcceptorMethod.name());
+                    caseElementCountMethod.annotate(Override.class);
+                    caseElementCountMethod.body()._return(JExpr.lit(elementCount));
+                }
+
+                JDefinedClass iteratorClass;
+                try {
+                    iteratorClass = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, environment.valueClassName() + "ElementIterator", EClassType.CLASS);
+                } catch (JClassAlreadyExistsException ex) {
+                    throw new RuntimeException("Unexpected exception :)", ex);
+                }
+                JTypeVar iteratorTypeParameter = iteratorClass.generify(visitorTypeParameter.name());
+                iteratorTypeParameter.boundLike(visitorTypeParameter);
+                iteratorClass._implements(types._Iterator.narrow(iteratorTypeParameter));
+                AbstractJClass iteratorValueClassType = environment.wrappedValueClassType(new AbstractJClass[] {iteratorTypeParameter});
+                AbstractJClass iteratorUnwrappedValueClassType = environment.unwrappedValueClassType(new AbstractJClass[] {iteratorTypeParameter});
+                JFieldVar pending = iteratorClass.field(JMod.PRIVATE | JMod.FINAL, types._List.narrow(types._Object), "pending", JExpr._new(types._ArrayList.narrow(types._Object)));
+                JFieldVar elements = iteratorClass.field(JMod.PRIVATE | JMod.FINAL, types._BitSet, "elements", JExpr._new(types._BitSet));
+                JMethod iteratorConstructor = iteratorClass.constructor(JMod.NONE);
+                JVar value = iteratorConstructor.param(iteratorValueClassType, "value");
+                iteratorConstructor.body().add(JExpr.refthis(pending).invoke("add").arg(value));
+
+                JMethod hasNextMethod = iteratorClass.method(JMod.PUBLIC, types._boolean, "hasNext");
+                hasNextMethod.annotate(Override.class);
+                JAnnotationUse annotation = hasNextMethod.annotate(SuppressWarnings.class);
+                annotation.param("value", "unchecked");
+                VariableNameSource nameSource = new VariableNameSource();
+                JBlock loop = hasNextMethod.body()._while(JExpr.refthis(pending).invoke("isEmpty").not()).body();
+                JVar top = loop.decl(types._int, nameSource.get("top"), JExpr.refthis(pending).invoke("size").minus(JExpr.lit(1)));
+                loop._if(JExpr.refthis(elements).invoke("get").arg(top))._then()._return(JExpr.TRUE);
+                JVar node = loop.decl(iteratorUnwrappedValueClassType, nameSource.get("node"), JExpr.cast(iteratorUnwrappedValueClassType, JExpr.refthis(pending).invoke("remove").arg(top)));
+                loop.add(node.ref(acceptorField).invoke(pushElementsAcceptorMethod).arg(JExpr.refthis(pending)).arg(JExpr.refthis(elements)));
+                hasNextMethod.body()._return(JExpr.FALSE);
+
+                JMethod nextMethod = iteratorClass.method(JMod.PUBLIC, iteratorTypeParameter, "next");
+                nextMethod.annotate(Override.class);
+                annotation = nextMethod.annotate(SuppressWarnings.class);
+                annotation.param("value", "unchecked");
+                nameSource = new VariableNameSource();
+                nextMethod.body()._if(JExpr.invoke(hasNextMethod).not())._then()._throw(JExpr._new(types._NoSuchElementException));
+                top = nextMethod.body().decl(types._int, nameSource.get("top"), JExpr.refthis(pending).invoke("size").minus(JExpr.lit(1)));
+                nextMethod.body().add(JExpr.refthis(elements).invoke("clear").arg(top));
+                nextMethod.body()._return(JExpr.cast(iteratorTypeParameter, JExpr.refthis(pending).invoke("remove").arg(top)));
+
+                JMethod removeMethod = iteratorClass.method(JMod.PUBLIC, types._void, "remove");
+                removeMethod.annotate(Override.class);
+                removeMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+
+                AbstractJClass usedIteratorType = iteratorClass.narrow(typeParameter);
+                iteratorMethod.body()._return(JExpr._new(usedIteratorType).arg(thisWrappedValue(usedValueClassType)));
+
+                if (spliteratorMethod != null && streamMethod != null) {
+                    JMethod elementCountMethod = buildCachedSizeMethod(serialization, "elementCount", elementCountAcceptorMethod);
+                    JDefinedClass spliteratorClass = buildSpliteratorClass(visitorTypeParameter, pushElementsAcceptorMethod, elementCountMethod);
+                    nameSource = new VariableNameSource();
+                    JVar count = spliteratorMethod.body().decl(types._int, nameSource.get("count"), JExpr.invoke(elementCountMethod));
+                    IJExpression characteristics = types._Spliterator.staticRef("ORDERED").bor(types._Spliterator.staticRef("IMMUTABLE"));
+                    AbstractJClass usedSpliteratorType = spliteratorClass.narrow(typeParameter);
+                    JConditional isSaturated = spliteratorMethod.body()._if(count.eq(types._Integer.staticRef("MAX_VALUE").minus(JExpr.lit(1))));
+                    JInvocation unknownSize = JExpr._new(usedSpliteratorType).arg(thisWrappedValue(usedValueClassType));
+                    unknownSize.arg(types._Long.staticRef("MAX_VALUE")).arg(characteristics);
+                    isSaturated._then()._return(unknownSize);
+                    JInvocation knownSize = JExpr._new(usedSpliteratorType).arg(thisWrappedValue(usedValueClassType));
+                    knownSize.arg(count).arg(characteristics.bor(types._Spliterator.staticRef("SIZED")).bor(types._Spliterator.staticRef("SUBSIZED")));
+                    isSaturated._else()._return(knownSize);
+
+                    streamMethod.body()._return(types._StreamSupport.staticInvoke("stream").arg(JExpr.invoke(spliteratorMethod)).arg(JExpr.FALSE));
+                }
+            }
+        }
+
+        /**
+         * Builds spliterator, that splits values structurally.
+         * <p>
+         * Pending stack is the same as in element iterator: its top entries cover prefix of remaining elements.
+         * Top entries are handed off to new spliterator together with their cached element counts,
+         * so that subtrees are split without traversal.
+         * When only single element can be handed off, like for lists,
+         * batch of elements is copied to an array, as {@code Spliterators.spliterator} does for iterators.
+         */
+        private JDefinedClass buildSpliteratorClass(JTypeVar visitorTypeParameter, JMethod pushElementsAcceptorMethod, JMethod elementCountMethod) {
+            JDefinedClass spliteratorClass;
+            try {
+                spliteratorClass = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, environment.valueClassName() + "ElementSpliterator", EClassType.CLASS);
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception :)", ex);
+            }
+            JTypeVar spliteratorTypeParameter = spliteratorClass.generify(visitorTypeParameter.name());
+            spliteratorTypeParameter.boundLike(visitorTypeParameter);
+            spliteratorClass._implements(types._Spliterator.narrow(spliteratorTypeParameter));
+            AbstractJClass spliteratorValueClassType = environment.wrappedValueClassType(new AbstractJClass[] {spliteratorTypeParameter});
+            AbstractJClass spliteratorUnwrappedValueClassType = environment.unwrappedValueClassType(new AbstractJClass[] {spliteratorTypeParameter});
+            AbstractJClass pendingType = types._List.narrow(types._Object);
+            JFieldVar pending = spliteratorClass.field(JMod.PRIVATE | JMod.FINAL, pendingType, "pending");
+            JFieldVar elements = spliteratorClass.field(JMod.PRIVATE | JMod.FINAL, types._BitSet, "elements");
+            JFieldVar characteristics = spliteratorClass.field(JMod.PRIVATE | JMod.FINAL, types._int, "characteristics");
+            JFieldVar size = spliteratorClass.field(JMod.PRIVATE, types._long, "size");
+            JFieldVar batchSize = spliteratorClass.field(JMod.PRIVATE, types._int, "batchSize");
+
+            JMethod constructor = spliteratorClass.constructor(JMod.NONE);
+            JVar constructorPending = constructor.param(pendingType, "pending");
+            JVar constructorElements = constructor.param(types._BitSet, "elements");
+            JVar constructorSize = constructor.param(types._long, "size");
+            JVar constructorCharacteristics = constructor.param(types._int, "characteristics");
+            constructor.body().assign(JExpr.refthis(pending), constructorPending);
+            constructor.body().assign(JExpr.refthis(elements), constructorElements);
+            constructor.body().assign(JExpr.refthis(size), constructorSize);
+            constructor.body().assign(JExpr.refthis(characteristics), constructorCharacteristics);
+
+            JMethod rootConstructor = spliteratorClass.constructor(JMod.NONE);
+            JVar value = rootConstructor.param(spliteratorValueClassType, "value");
+            JVar rootSize = rootConstructor.param(types._long, "size");
+            JVar rootCharacteristics = rootConstructor.param(types._int, "characteristics");
+            rootConstructor.body().assign(JExpr.refthis(pending), JExpr._new(types._ArrayList.narrow(types._Object)));
+            rootConstructor.body().assign(JExpr.refthis(elements), JExpr._new(types._BitSet));
+            rootConstructor.body().assign(JExpr.refthis(size), rootSize);
+            rootConstructor.body().assign(JExpr.refthis(characteristics), rootCharacteristics);
+            rootConstructor.body().add(JExpr.refthis(pending).invoke("add").arg(value));
+
+            // Expands nodes on top of pending stack until element is on top
+            JMethod advanceMethod = spliteratorClass.method(JMod.PRIVATE, types._boolean, "advance");
+            VariableNameSource nameSource = new VariableNameSource();
+            JBlock loop = advanceMethod.body()._while(JExpr.refthis(pending).invoke("isEmpty").not()).body();
+            JVar top = loop.decl(types._int, nameSource.get("top"), JExpr.refthis(pending).invoke("size").minus(JExpr.lit(1)));
+            loop._if(JExpr.refthis(elements).invoke("get").arg(top))._then()._return(JExpr.TRUE);
+            JVar node = loop.decl(spliteratorUnwrappedValueClassType, nameSource.get("node"), JExpr.cast(spliteratorUnwrappedValueClassType, JExpr.refthis(pending).invoke("remove").arg(top)));
+            loop.add(node.ref(acceptorField).invoke(pushElementsAcceptorMethod).arg(JExpr.refthis(pending)).arg(JExpr.refthis(elements)));
+            advanceMethod.body()._return(JExpr.FALSE);
+
+            JMethod removeElementMethod = spliteratorClass.method(JMod.PRIVATE, types._Object, "removeElement");
+            nameSource = new VariableNameSource();
+            top = removeElementMethod.body().decl(types._int, nameSource.get("top"), JExpr.refthis(pending).invoke("size").minus(JExpr.lit(1)));
+            removeElementMethod.body().add(JExpr.refthis(elements).invoke("clear").arg(top));
+            removeElementMethod.body().assignMinus(JExpr.refthis(size), JExpr.lit(1));
+            removeElementMethod.body()._return(JExpr.refthis(pending).invoke("remove").arg(top));
+
+            JMethod tryAdvanceMethod = spliteratorClass.method(JMod.PUBLIC, types._boolean, "tryAdvance");
+            tryAdvanceMethod.annotate(Override.class);
+            JAnnotationUse annotation = tryAdvanceMethod.annotate(SuppressWarnings.class);
+            annotation.param("value", "unchecked");
+            nameSource = new VariableNameSource();
+            JVar action = tryAdvanceMethod.param(types._Consumer.narrow(spliteratorTypeParameter.wildcardSuper()), nameSource.get("action"));
+            JBlock isAdvanced = tryAdvanceMethod.body()._if(JExpr.invoke(advanceMethod).not())._then();
+            isAdvanced._return(JExpr.FALSE);
+            tryAdvanceMethod.body().add(action.invoke("accept").arg(JExpr.cast(spliteratorTypeParameter, JExpr.invoke(removeElementMethod))));
+            tryAdvanceMethod.body()._return(JExpr.TRUE);
+
+            JMethod trySplitMethod = spliteratorClass.method(JMod.PUBLIC, types._Spliterator.narrow(spliteratorTypeParameter), "trySplit");
+            trySplitMethod.annotate(Override.class);
+            nameSource = new VariableNameSource();
+            JBlock body = trySplitMethod.body();
+            IJExpression isSingleNode = JExpr.refthis(pending).invoke("size").eq(JExpr.lit(1)).cand(JExpr.refthis(elements).invoke("get").arg(JExpr.lit(0)).not());
+            loop = body._while(isSingleNode).body();
+            node = loop.decl(spliteratorUnwrappedValueClassType, nameSource.get("node"), JExpr.cast(spliteratorUnwrappedValueClassType, JExpr.refthis(pending).invoke("remove").arg(JExpr.lit(0))));
+            loop.add(node.ref(acceptorField).invoke(pushElementsAcceptorMethod).arg(JExpr.refthis(pending)).arg(JExpr.refthis(elements)));
+            body._if(JExpr.refthis(pending).invoke("size").lt(JExpr.lit(2)).cor(JExpr.refthis(size).lte(JExpr.lit(1L))))._then()._return(JExpr._null());
+            JVar end = body.decl(types._int, nameSource.get("end"), JExpr.refthis(pending).invoke("size"));
+            JVar start = body.decl(types._int, nameSource.get("start"), end);
+            JVar prefixSize = body.decl(types._long, nameSource.get("prefixSize"), JExpr.lit(0L));
+            JBlock prefixLoop = body._while(start.gt(JExpr.lit(1)).cand(prefixSize.lt(JExpr.refthis(size).div(JExpr.lit(2))))).body();
+            prefixLoop.assignMinus(start, JExpr.lit(1));
+            JConditional isElement = prefixLoop._if(JExpr.refthis(elements).invoke("get").arg(start));
+            isElement._then().assignPlus(prefixSize, JExpr.lit(1L));
+            IJExpression child = JExpr.cast(spliteratorUnwrappedValueClassType, JExpr.refthis(pending).invoke("get").arg(start));
+            isElement._else().assignPlus(prefixSize, child.invoke(elementCountMethod));
+
+            JConditional isSubtree = body._if(prefixSize.gt(JExpr.lit(1L)));
+            JBlock handOff = isSubtree._then();
+            AbstractJClass pendingImplementationType = types._ArrayList.narrow(types._Object);
+            JVar prefix = handOff.decl(pendingType, nameSource.get("prefix"), JExpr._new(pendingImplementationType).arg(JExpr.refthis(pending).invoke("subList").arg(start).arg(end)));
+            JVar prefixElements = handOff.decl(types._BitSet, nameSource.get("prefixElements"), JExpr.refthis(elements).invoke("get").arg(start).arg(end));
+            handOff.add(JExpr.refthis(pending).invoke("subList").arg(start).arg(end).invoke("clear"));
+            handOff.add(JExpr.refthis(elements).invoke("clear").arg(start).arg(end));
+            handOff.assignMinus(JExpr.refthis(size), prefixSize);
+            JInvocation newSpliterator = JExpr._new(spliteratorClass.narrow(spliteratorTypeParameter));
+            newSpliterator.arg(prefix).arg(prefixElements).arg(prefixSize).arg(JExpr.refthis(characteristics));
+            handOff._return(newSpliterator);
+
+            JBlock batch = isSubtree._else();
+            batch.assign(JExpr.refthis(batchSize), types._Math.staticInvoke("min").arg(JExpr.refthis(batchSize).plus(JExpr.lit(1024))).arg(JExpr.lit(1 << 25)));
+            JVar array = batch.decl(types._Object.array(), nameSource.get("array"), JExpr.newArray(types._Object, JExpr.refthis(batchSize)));
+            JVar count = batch.decl(types._int, nameSource.get("count"), JExpr.lit(0));
+            JBlock batchLoop = batch._while(count.lt(array.ref("length")).cand(JExpr.invoke(advanceMethod))).body();
+            batchLoop.assign(array.component(count), JExpr.invoke(removeElementMethod));
+            batchLoop.assignPlus(count, JExpr.lit(1));
+            JInvocation arraySpliterator = types._Spliterators.staticInvoke("spliterator").arg(array).arg(JExpr.lit(0)).arg(count).arg(JExpr.refthis(characteristics));
+            batch._return(arraySpliterator);
+
+            JMethod estimateSizeMethod = spliteratorClass.method(JMod.PUBLIC, types._long, "estimateSize");
+            estimateSizeMethod.annotate(Override.class);
+            estimateSizeMethod.body()._return(JExpr.refthis(size));
+
+            JMethod characteristicsMethod = spliteratorClass.method(JMod.PUBLIC, types._int, "characteristics");
+            characteristicsMethod.annotate(Override.class);
+            characteristicsMethod.body()._return(JExpr.refthis(characteristics));
+            return spliteratorClass;
+        }
+
+        /**
+         * Builds childCount, child, children and withChildren methods.
+         * <p>
+         * Children are values of fields of value class type in the order of declaration.
+         *
+         * @see ChildrenMethods
+         */
+        void buildChildrenMethods() {
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+            AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassTypeInsideValueClass();
+            AbstractJClass usedAcceptingInterfaceType = environment.acceptingInterfaceTypeInsideValueClass();
+            AbstractJClass childrenType = types._List.narrow(usedValueClassType);
+            AbstractJClass newChildrenType = types._List.narrow(usedValueClassType.wildcard());
+
+            JMethod childCountMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, ChildrenMethods.CHILD_COUNT_METHOD_NAME);
+            childCountMethod.type(types._int);
+
+            VariableNameSource nameSource = new VariableNameSource();
+            JMethod childMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, ChildrenMethods.CHILD_METHOD_NAME);
+            childMethod.type(usedValueClassType);
+            JVar index = childMethod.param(types._int, nameSource.get("index"));
+
+            JMethod childrenMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, ChildrenMethods.CHILDREN_METHOD_NAME);
+            childrenMethod.type(childrenType);
+            Source.annotateNonnull(childrenMethod);
+
+            nameSource = new VariableNameSource();
+            JMethod withChildrenMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, ChildrenMethods.WITH_CHILDREN_METHOD_NAME);
+            withChildrenMethod.type(usedValueClassType);
+            Source.annotateNonnull(withChildrenMethod);
+            JVar newChildren = withChildrenMethod.param(newChildrenType, nameSource.get("children"));
+
+            if (isError) {
+                childCountMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                childMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                childrenMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+                withChildrenMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                String acceptorMethodNamePrefix = Source.decapitalize(environment.valueClassName());
+                AbstractJClass[] acceptingInterfaceTypeParams = usedAcceptingInterfaceType.getTypeParameters().toArray(new AbstractJClass[0]);
+                AbstractJClass acceptingInterfaceValueType = environment.wrappedValueClassType(acceptingInterfaceTypeParams);
+
+                buildChildAcceptorMethods();
+                childCountMethod.body()._return(JExpr.refthis(acceptorField).invoke(childCountAcceptorMethod));
+                childMethod.body()._return(JExpr.refthis(acceptorField).invoke(childAcceptorMethod).arg(index));
+
+                JMethod childrenImplementation = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "Children");
+                childrenImplementation.type(types._List.narrow(acceptingInterfaceValueType));
+                Source.annotateNonnull(childrenImplementation);
+                childrenMethod.body()._return(JExpr.refthis(acceptorField).invoke(childrenImplementation));
+
+                JMethod withChildrenImplementation = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "WithChildren");
+                withChildrenImplementation.type(usedAcceptingInterfaceType);
+                Source.annotateNonnull(withChildrenImplementation);
+                withChildrenImplementation.param(types._List.narrow(acceptingInterfaceValueType.wildcard()), "children");
+
+                JVar childCount = withChildrenMethod.body().decl(types._int, nameSource.get("childCount"), JExpr.refthis(acceptorField).invoke(childCountAcceptorMethod));
+                JConditional wrongSize = withChildrenMethod.body()._if(newChildren.invoke("size").ne(childCount));
+                JInvocation exceptionConstruction = JExpr._new(types._IllegalArgumentException);
+                exceptionConstruction.arg(JExpr.lit("Expecting ").plus(childCount).plus(JExpr.lit(" children, but ")).plus(newChildren.invoke("size")).plus(JExpr.lit(" given")));
+                wrongSize._then()._throw(exceptionConstruction);
+                JVar newAcceptor = withChildrenMethod.body().decl(usedAcceptingInterfaceType, nameSource.get("newAcceptor"), JExpr.refthis(acceptorField).invoke(withChildrenImplementation).arg(newChildren));
+                JConditional _if = withChildrenMethod.body()._if(newAcceptor.ne(JExpr.refthis(acceptorField)));
+                _if._then()._return(environment.wrappedValue(usedValueClassType, JExpr._new(unwrappedUsedValueClassType).arg(newAcceptor)));
+                IJExpression thisResult;
+                if (!environment.wrappingEnabled())
+                    thisResult = JExpr._this();
+                else
+                    thisResult = JExpr.cond(JExpr._this()._instanceof(usedValueClassType.erasure()), JExpr.cast(usedValueClassType, JExpr._this()), environment.wrappedValue(usedValueClassType, JExpr._this()));
+                _if._else()._return(thisResult);
+
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    AbstractJClass usedCaseClassType = Source.narrowType(caseClass, caseClass.typeParams());
+                    AbstractJClass caseValueClassType = environment.wrappedValueClassType(Arrays.copyOf(caseClass.typeParams(), acceptingInterfaceTypeParams.length, AbstractJClass[].class));
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    List<JFieldVar> children = new ArrayList<>();
+                    for (JVar param: params) {
+                        if (isChild(param.type()))
+                            children.add(caseClass.fields().get(param.name()));
+                    }
+
+                    JMethod caseChildrenMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._List.narrow(caseValueClassType), childrenImplementation.name());
+                    caseChildrenMethod.annotate(Override.class);
+                    Source.annotateNonnull(caseChildrenMethod);
+                    if (children.isEmpty())
+                        caseChildrenMethod.body()._return(types._Collections.staticInvoke("emptyList").narrow(caseValueClassType));
+                    else if (children.size() == 1)
+                        caseChildrenMethod.body()._return(types._Collections.staticInvoke("singletonList").narrow(caseValueClassType).arg(JExpr.refthis(children.get(0))));
+                    else {
+                        JAnnotationUse annotation = caseChildrenMethod.annotate(SuppressWarnings.class);
+                        annotation.param("value", "unchecked");
+                        JInvocation invocation = types._Arrays.staticInvoke("asList").narrow(caseValueClassType);
+                        for (JFieldVar child: children) {
+                            invocation.arg(JExpr.refthis(child));
+                        }
+                        caseChildrenMethod.body()._return(invocation);
+                    }
+
+                    nameSource = new VariableNameSource();
+                    JMethod caseWithChildrenMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, environment.acceptingInterfaceType(caseClass.typeParams()), withChildrenImplementation.name());
+                    caseWithChildrenMethod.annotate(Override.class);
+                    Source.annotateNonnull(caseWithChildrenMethod);
+                    JVar caseChildren = caseWithChildrenMethod.param(types._List.narrow(caseValueClassType.wildcard()), nameSource.get("children"));
+                    if (children.isEmpty())
+                        caseWithChildrenMethod.body()._return(JExpr._this());
+                    else {
+                        JInvocation invocation = JExpr._new(usedCaseClassType);
+                        IJExpression isUnchanged = null;
+                        int childIndex = 0;
+                        for (JVar param: params) {
+                            JFieldVar field = caseClass.fields().get(param.name());
+                            if (!isChild(param.type()))
+                                invocation.arg(JExpr.refthis(field));
+                            else {
+                                JVar variable = caseWithChildrenMethod.body().decl(field.type(), nameSource.get(param.name()), caseChildren.invoke("get").arg(JExpr.lit(childIndex)));
+                                invocation.arg(variable);
+                                IJExpression isSame = variable.eq(JExpr.refthis(field));
+                                isUnchanged = isUnchanged == null ? isSame : isUnchanged.cand(isSame);
+                                childIndex++;
+                            }
+                        }
+                        caseWithChildrenMethod.body()._if(isUnchanged)._then()._return(JExpr._this());
+                        caseWithChildrenMethod.body()._return(invocation);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Builds rewrite method, that applies rewrite rule bottom-up until fixpoint is reached.
+         * <p>
+         * Rewriting is performed iteratively with explicit stack with childCount, child and withChildren methods.
+         * Results are memoized in hash map, so equal subtrees are rewritten only once.
+         * Rewrite method is only generated when hash code is cached, since every lookup
+         * would otherwise rehash the whole subtree.
+         */
+        void buildRewriteMethod() {
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+            JDefinedClass ruleInterface;
+            try {
+                ruleInterface = environment.buildValueClassInnerClass(JMod.PUBLIC, environment.valueClassName() + "RewriteRule", EClassType.INTERFACE);
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception :)", ex);
+            }
+            for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+                JTypeVar typeParameter = ruleInterface.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+            }
+            AbstractJClass ruleValueClassType = environment.wrappedValueClassType(ruleInterface.typeParams());
+            JMethod applyMethod = ruleInterface.method(JMod.PUBLIC, ruleValueClassType, "apply");
+            Source.annotateNullable(applyMethod);
+            applyMethod.param(ruleValueClassType, "value");
+
+            VariableNameSource nameSource = new VariableNameSource();
+            JMethod rewriteMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, ChildrenMethods.REWRITE_METHOD_NAME);
+            rewriteMethod.type(usedValueClassType);
+            Source.annotateNonnull(rewriteMethod);
+            AbstractJClass usedRuleType = Source.narrowType(ruleInterface, environment.unwrappedValueClassTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]));
+            JVar rule = rewriteMethod.param(usedRuleType, nameSource.get("rule"));
+            if (isError) {
+                rewriteMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                AbstractJClass valuesType = types._List.narrow(usedValueClassType);
+                AbstractJClass valuesImplementationType = types._ArrayList.narrow(usedValueClassType);
+                JBlock body = rewriteMethod.body();
+                JVar memo = body.decl(types._Map.narrow(usedValueClassType, usedValueClassType), nameSource.get("memo"), JExpr._new(types._HashMap.narrow(usedValueClassType, usedValueClassType)));
+                JVar nodes = body.decl(valuesType, nameSource.get("nodes"), JExpr._new(valuesImplementationType));
+                JVar origins = body.decl(valuesType, nameSource.get("origins"), JExpr._new(valuesImplementationType));
+                JVar expanded = body.decl(types._BitSet, nameSource.get("expanded"), JExpr._new(types._BitSet));
+                JVar results = body.decl(valuesType, nameSource.get("results"), JExpr._new(valuesImplementationType));
+                IJExpression root;
+                if (!environment.wrappingEnabled())
+                    root = JExpr._this();
+                else
+                    root = JExpr.cond(JExpr._this()._instanceof(usedValueClassType.erasure()), JExpr.cast(usedValueClassType, JExpr._this()), environment.wrappedValue(usedValueClassType, JExpr._this()));
+                JVar rootVariable = body.decl(usedValueClassType, nameSource.get("root"), root);
+                body.add(nodes.invoke("add").arg(rootVariable));
+                body.add(origins.invoke("add").arg(rootVariable));
+
+                JBlock loop = body._while(nodes.invoke("isEmpty").not()).body();
+                JVar top = loop.decl(types._int, nameSource.get("top"), nodes.invoke("size").minus(JExpr.lit(1)));
+                JVar node = loop.decl(usedValueClassType, nameSource.get("node"), nodes.invoke("get").arg(top));
+                JVar known = loop.decl(usedValueClassType, nameSource.get("known"), JOp.cond(node.eq(JExpr._null()), JExpr._null(), memo.invoke("get").arg(node)));
+                JConditional isKnown = loop._if(node.eq(JExpr._null()).cor(known.ne(JExpr._null())));
+                isKnown._then().add(nodes.invoke("remove").arg(top));
+                JVar origin = isKnown._then().decl(usedValueClassType, nameSource.get("origin"), origins.invoke("remove").arg(top));
+                isKnown._then()._if(node.ne(JExpr._null()))._then().add(memo.invoke("put").arg(origin).arg(known));
+                isKnown._then().add(results.invoke("add").arg(known));
+                JBlock unknown = isKnown._else();
+                JVar childCount = unknown.decl(types._int, nameSource.get("childCount"), node.invoke(ChildrenMethods.CHILD_COUNT_METHOD_NAME));
+                JConditional needsExpansion = unknown._if(childCount.ne(JExpr.lit(0)).cand(expanded.invoke("get").arg(top).not()));
+                needsExpansion._then().add(expanded.invoke("set").arg(top));
+                JForLoop forLoop = needsExpansion._then()._for();
+                JVar i = forLoop.init(types._int, nameSource.get("i"), childCount.minus(JExpr.lit(1)));
+                forLoop.test(i.gte(JExpr.lit(0)));
+                forLoop.update(i.decr());
+                JVar child = forLoop.body().decl(usedValueClassType, nameSource.get("child"), node.invoke(ChildrenMethods.CHILD_METHOD_NAME).arg(i));
+                forLoop.body().add(nodes.invoke("add").arg(child));
+                forLoop.body().add(origins.invoke("add").arg(child));
+                JBlock rewrite = needsExpansion._else();
+                rewrite.add(expanded.invoke("clear").arg(top));
+                JVar offset = rewrite.decl(types._int, nameSource.get("offset"), results.invoke("size").minus(childCount));
+                JVar rewrittenChildren = rewrite.decl(valuesType, nameSource.get("rewrittenChildren"), results.invoke("subList").arg(offset).arg(results.invoke("size")));
+                JVar rebuilt = rewrite.decl(usedValueClassType, nameSource.get("rebuilt"), node.invoke(ChildrenMethods.WITH_CHILDREN_METHOD_NAME).arg(rewrittenChildren));
+                rewrite.add(rewrittenChildren.invoke("clear"));
+                JVar rewritten = rewrite.decl(usedValueClassType, nameSource.get("rewritten"), rule.invoke(applyMethod).arg(rebuilt));
+                JConditional isNormal = rewrite._if(rewritten.eq(JExpr._null()).cor(rewritten.invoke("equals").arg(rebuilt)));
+                isNormal._then().add(nodes.invoke("remove").arg(top));
+                isNormal._then().add(memo.invoke("put").arg(origins.invoke("remove").arg(top)).arg(rebuilt));
+                isNormal._then().add(memo.invoke("put").arg(node).arg(rebuilt));
+                isNormal._then().add(memo.invoke("put").arg(rebuilt).arg(rebuilt));
+                isNormal._then().add(results.invoke("add").arg(rebuilt));
+                isNormal._else().add(nodes.invoke("set").arg(top).arg(rewritten));
+                body._return(results.invoke("get").arg(JExpr.lit(0)));
+            }
+        }
+
+        /**
+         * Builds fold method.
+         * <p>
+         * Fold never recurses on Java stack, so arbitrary deep values can be folded.
+         */
+        void buildFoldMethod(Serialization serialization) {
+            JDefinedClass foldVisitorInterface = buildFoldVisitorInterface();
+            String resultTypeParameterName = foldVisitorInterface.typeParams()[foldVisitorInterface.typeParams().length - 1].name();
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+
+            VariableNameSource nameSource = new VariableNameSource();
+            JMethod foldMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "fold");
+            JTypeVar resultType = foldMethod.generify(resultTypeParameterName);
+            foldMethod.type(resultType);
+            JVar visitor = foldMethod.param(foldVisitorType(foldVisitorInterface, usedValueClassType, resultType), nameSource.get("visitor"));
+            if (isError) {
+                foldMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                buildFoldIterativelyMethod(serialization);
+                foldMethod.body()._return(JExpr.invoke(foldIterativelyMethod).arg(visitor).arg(JExpr.lit(-1)));
+            }
+        }
+
+        /**
+         * Builds foldParallel method.
+         * <p>
+         * Subtrees larger than given threshold are folded as separate fork-join tasks,
+         * when there are at least two such subtrees among siblings.
+         * The largest of them is folded by current task,
+         * so that every forked subtree is at most half of its parent
+         * and nesting of joins is logarithmic.
+         * Sizes are computed once and cached in every node.
+         */
+        void buildFoldParallelMethod(Serialization serialization) {
+            JDefinedClass foldVisitorInterface = buildFoldVisitorInterface();
+            String resultTypeParameterName = foldVisitorInterface.typeParams()[foldVisitorInterface.typeParams().length - 1].name();
+            AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+
+            VariableNameSource nameSource = new VariableNameSource();
+            JMethod foldParallelMethod = environment.buildValueClassMethod(JMod.PUBLIC | JMod.FINAL, "foldParallel");
+            JTypeVar resultType = foldParallelMethod.generify(resultTypeParameterName);
+            foldParallelMethod.type(resultType);
+            JVar pool = foldParallelMethod.param(types._ForkJoinPool, nameSource.get("pool"));
+            JVar visitor = foldParallelMethod.param(foldVisitorType(foldVisitorInterface, usedValueClassType, resultType), nameSource.get("visitor"));
+            JVar threshold = foldParallelMethod.param(types._int, nameSource.get("threshold"));
+            if (isError) {
+                foldParallelMethod.body()._throw(JExpr._new(types._UnsupportedOperationException));
+            } else {
+                buildFoldIterativelyMethod(serialization);
+                AbstractJClass usedFoldTaskType = foldTaskClass.narrow(foldVisitorTypeArguments(usedValueClassType, resultType));
+                JInvocation task = JExpr._new(usedFoldTaskType).arg(thisWrappedValue(usedValueClassType)).arg(visitor).arg(threshold);
+                foldParallelMethod.body()._return(pool.invoke("invoke").arg(task));
+            }
+        }
+
+        private JDefinedClass buildFoldVisitorInterface() {
+            String foldVisitorInterfaceName = environment.valueClassName() + "FoldVisitor";
+            JDefinedClass foldVisitorInterface = environment.getValueClassInnerClass(foldVisitorInterfaceName);
+            if (foldVisitorInterface == null) {
+                try {
+                    foldVisitorInterface = environment.buildValueClassInnerClass(JMod.PUBLIC, foldVisitorInterfaceName, EClassType.INTERFACE);
+                } catch (JClassAlreadyExistsException ex) {
+                    throw new RuntimeException("Unexpected exception :)", ex);
+                }
+                String resultTypeParameterName = "R";
+                for (JTypeVar visitorTypeParameter: environment.getValueTypeParameters()) {
+                    JTypeVar typeParameter = foldVisitorInterface.generify(visitorTypeParameter.name());
+                    typeParameter.boundLike(visitorTypeParameter);
+                }
+                for (int i = 1; hasTypeParameter(foldVisitorInterface, resultTypeParameterName); i++) {
+                    resultTypeParameterName = "R" + i;
+                }
+                AbstractJClass usedValueClassType = environment.wrappedValueClassType(foldVisitorInterface.typeParams());
+                JTypeVar resultType = foldVisitorInterface.generify(resultTypeParameterName);
+                VisitorDefinition.VisitorUsage usedVisitor = environment.visitor(usedValueClassType, resultType, types._RuntimeException);
+                for (JMethod interfaceMethod: environment.visitorDefinition().methodDefinitions()) {
+                    MethodUsage usedInterfaceMethod = usedVisitor.findMethod(interfaceMethod.name());
+                    JMethod method = foldVisitorInterface.method(JMod.PUBLIC, resultType, interfaceMethod.name());
+                    Iterator<? extends VariableDeclaration> usedParams = usedInterfaceMethod.params().iterator();
+                    for (JVar param: interfaceMethod.params()) {
+                        VariableDeclaration usedParam = usedParams.next();
+                        method.param(isChild(param.type()) ? resultType : usedParam.type(), param.name());
+                    }
+                    VariableDeclaration usedParam = usedInterfaceMethod.varParam();
+                    if (usedParam != null) {
+                        method.varParam(usedParam.type().elementType(), usedParam.name());
+                    }
+                }
+            }
+            return foldVisitorInterface;
+        }
+
+        private AbstractJClass foldVisitorType(JDefinedClass foldVisitorInterface, AbstractJClass usedValueClassType, AbstractJClass resultType) {
+            return foldVisitorInterface.narrow(foldVisitorTypeArguments(usedValueClassType, resultType));
+        }
+
+        private List<AbstractJClass> foldVisitorTypeArguments(AbstractJClass usedValueClassType, AbstractJClass resultType) {
+            List<AbstractJClass> typeArguments = new ArrayList<AbstractJClass>(usedValueClassType.getTypeParameters());
+            typeArguments.add(resultType);
+            return typeArguments;
+        }
+
+        /**
+         * Builds private foldIteratively method with explicit stack, that forks subtrees above threshold.
+         * <p>
+         * Nothing is ever forked when threshold is negative.
+         */
+        private void buildFoldIterativelyMethod(Serialization serialization) {
+            if (foldIterativelyMethod == null) {
+                buildChildAcceptorMethods();
+                JDefinedClass foldVisitorInterface = buildFoldVisitorInterface();
+                String resultTypeParameterName = foldVisitorInterface.typeParams()[foldVisitorInterface.typeParams().length - 1].name();
+                AbstractJClass usedValueClassType = environment.wrappedValueClassTypeInsideValueClass();
+                AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassTypeInsideValueClass();
+                AbstractJClass[] acceptingInterfaceTypeParams = environment.acceptingInterfaceTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]);
+
+                // Acceptor method applies fold visitor to already folded children
+                String foldAcceptorMethodName = Source.decapitalize(environment.valueClassName()) + "Fold";
+                JMethod foldAcceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, foldAcceptorMethodName);
+                JTypeVar acceptorResultType = foldAcceptorMethod.generify(resultTypeParameterName);
+                foldAcceptorMethod.type(acceptorResultType);
+                foldAcceptorMethod.param(foldVisitorType(foldVisitorInterface, environment.wrappedValueClassType(acceptingInterfaceTypeParams), acceptorResultType), "visitor");
+                foldAcceptorMethod.param(types._List.narrow(types._Object), "results");
+                foldAcceptorMethod.param(types._int, "offset");
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    VariableNameSource nameSource = new VariableNameSource();
+                    JMethod caseFoldMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._void, foldAcceptorMethodName);
+                    caseFoldMethod.annotate(Override.class);
+                    JTypeVar caseResultType = caseFoldMethod.generify(resultTypeParameterName);
+                    caseFoldMethod.type(caseResultType);
+                    JVar caseVisitor = caseFoldMethod.param(foldVisitorType(foldVisitorInterface, environment.wrappedValueClassType(caseClass.typeParams()), caseResultType), nameSource.get("visitor"));
+                    JVar caseResults = caseFoldMethod.param(types._List.narrow(types._Object), nameSource.get("results"));
+                    JVar caseOffset = caseFoldMethod.param(types._int, nameSource.get("offset"));
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    JInvocation invocation = caseVisitor.invoke(interfaceMethod1.name());
+                    int childIndex = 0;
+                    for (JVar param: params) {
+                        if (!isChild(param.type()))
+                            invocation.arg(JExpr.refthis(caseClass.fields().get(param.name())));
+                        else {
+                            invocation.arg(JExpr.cast(caseResultType, caseResults.invoke("get").arg(caseOffset.plus(JExpr.lit(childIndex)))));
+                            childIndex++;
+                        }
+                    }
+                    if (childIndex != 0) {
+                        JAnnotationUse annotation = caseFoldMethod.annotate(SuppressWarnings.class);
+                        annotation.param("value", "unchecked");
+                    }
+                    caseFoldMethod.body()._return(invocation);
+                }
+
+                JMethod foldSizeMethod = buildFoldSizeMethod(serialization);
+
+                VariableNameSource nameSource = new VariableNameSource();
+                foldIterativelyMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.FINAL, "foldIteratively");
+                JTypeVar resultType = foldIterativelyMethod.generify(resultTypeParameterName);
+                foldIterativelyMethod.type(resultType);
+                JVar visitor = foldIterativelyMethod.param(foldVisitorType(foldVisitorInterface, usedValueClassType, resultType), nameSource.get("visitor"));
+                JVar threshold = foldIterativelyMethod.param(types._int, nameSource.get("threshold"));
+                JAnnotationUse annotation = foldIterativelyMethod.annotate(SuppressWarnings.class);
+                annotation.param("value", "unchecked");
+
+                try {
+                    foldTaskClass = environment.buildValueClassInnerClass(JMod.PRIVATE | JMod.STATIC | JMod.FINAL, environment.valueClassName() + "FoldTask", EClassType.CLASS);
+                } catch (JClassAlreadyExistsException ex) {
+                    throw new RuntimeException("Unexpected exception :)", ex);
+                }
+                for (JTypeVar typeParameter: foldVisitorInterface.typeParams()) {
+                    JTypeVar taskTypeParameter = foldTaskClass.generify(typeParameter.name());
+                    taskTypeParameter.boundLike(typeParameter);
+                }
+                JTypeVar[] taskTypeParams = foldTaskClass.typeParams();
+                JTypeVar taskResultType = taskTypeParams[taskTypeParams.length - 1];
+                AbstractJClass taskValueClassType = environment.wrappedValueClassType(Arrays.copyOf(taskTypeParams, taskTypeParams.length - 1, AbstractJClass[].class));
+                foldTaskClass._extends(types._RecursiveTask.narrow(taskResultType));
+                foldTaskClass.field(JMod.PRIVATE | JMod.FINAL | JMod.STATIC, types._long, "serialVersionUID", JExpr.lit(1L));
+                JFieldVar taskNode = foldTaskClass.field(JMod.PRIVATE | JMod.FINAL, taskValueClassType, "node");
+                JFieldVar taskVisitor = foldTaskClass.field(JMod.PRIVATE | JMod.FINAL, foldVisitorType(foldVisitorInterface, taskValueClassType, taskResultType), "visitor");
+                JFieldVar taskThreshold = foldTaskClass.field(JMod.PRIVATE | JMod.FINAL, types._int, "threshold");
+                JMethod taskConstructor = foldTaskClass.constructor(JMod.NONE);
+                for (JFieldVar field: Arrays.asList(taskNode, taskVisitor, taskThreshold)) {
+                    JVar param = taskConstructor.param(field.type(), field.name());
+                    taskConstructor.body().assign(JExpr._this().ref(field), param);
+                }
+                JMethod computeMethod = foldTaskClass.method(JMod.PROTECTED, taskResultType, "compute");
+                computeMethod.annotate(Override.class);
+                JInvocation taskFold = unwrapped(environment.unwrappedValueClassType(Arrays.copyOf(taskTypeParams, taskTypeParams.length - 1, AbstractJClass[].class)), JExpr.refthis(taskNode)).invoke(foldIterativelyMethod);
+                taskFold.narrow(taskResultType);
+                computeMethod.body()._return(taskFold.arg(JExpr.refthis(taskVisitor)).arg(JExpr.refthis(taskThreshold)));
+                AbstractJClass usedFoldTaskType = foldTaskClass.narrow(foldVisitorTypeArguments(usedValueClassType, resultType));
+
+                JBlock body = foldIterativelyMethod.body();
+                AbstractJClass entriesType = types._List.narrow(types._Object);
+                AbstractJClass entriesImplementationType = types._ArrayList.narrow(types._Object);
+                JVar nodes = body.decl(entriesType, nameSource.get("nodes"), JExpr._new(entriesImplementationType));
+                JVar expanded = body.decl(types._BitSet, nameSource.get("expanded"), JExpr._new(types._BitSet));
+                JVar results = body.decl(entriesType, nameSource.get("results"), JExpr._new(entriesImplementationType));
+                body.add(nodes.invoke("add").arg(thisWrappedValue(usedValueClassType)));
+                JBlock loop = body._while(nodes.invoke("isEmpty").not()).body();
+                JVar top = loop.decl(types._int, nameSource.get("top"), nodes.invoke("size").minus(JExpr.lit(1)));
+                JVar entry = loop.decl(types._Object, nameSource.get("entry"), nodes.invoke("get").arg(top));
+                JConditional isFolded = loop._if(entry.eq(JExpr._null()).cor(entry._instanceof(foldTaskClass)));
+                isFolded._then().add(nodes.invoke("remove").arg(top));
+                isFolded._then().add(results.invoke("add").arg(entry));
+                JBlock isNode = isFolded._else();
+                JVar node = isNode.decl(usedValueClassType, nameSource.get("node"), JExpr.cast(usedValueClassType, entry));
+                JVar acceptor = isNode.decl(acceptorField.type(), nameSource.get("acceptor"), unwrapped(unwrappedUsedValueClassType, node).ref(acceptorField));
+                JVar childCount = isNode.decl(types._int, nameSource.get("childCount"), acceptor.invoke(childCountAcceptorMethod));
+                JConditional needsExpansion = isNode._if(childCount.ne(JExpr.lit(0)).cand(expanded.invoke("get").arg(top).not()));
+                JBlock expansion = needsExpansion._then();
+                expansion.add(expanded.invoke("set").arg(top));
+                JVar largeChildCount = expansion.decl(types._int, nameSource.get("largeChildCount"), JExpr.lit(0));
+                JVar largestChild = expansion.decl(types._int, nameSource.get("largestChild"), JExpr.lit(-1));
+                JVar largestChildSize = expansion.decl(types._int, nameSource.get("largestChildSize"), threshold);
+                JBlock sizing = expansion._if(threshold.gte(JExpr.lit(0)).cand(childCount.gt(JExpr.lit(1))))._then();
+                JForLoop sizingLoop = sizing._for();
+                JVar i = sizingLoop.init(types._int, nameSource.get("i"), JExpr.lit(0));
+                sizingLoop.test(i.lt(childCount));
+                sizingLoop.update(i.incr());
+                JVar child = sizingLoop.body().decl(usedValueClassType, nameSource.get("child"), acceptor.invoke(childAcceptorMethod).arg(i));
+                JVar childSize = sizingLoop.body().decl(types._int, nameSource.get("childSize"), JOp.cond(child.eq(JExpr._null()), JExpr.lit(0), unwrapped(unwrappedUsedValueClassType, child).invoke(foldSizeMethod)));
+                JBlock isLarge = sizingLoop.body()._if(childSize.gt(threshold))._then();
+                isLarge.assignPlus(largeChildCount, JExpr.lit(1));
+                JBlock isLargest = isLarge._if(childSize.gt(largestChildSize))._then();
+                isLargest.assign(largestChild, i);
+                isLargest.assign(largestChildSize, childSize);
+                JForLoop pushLoop = expansion._for();
+                JVar j = pushLoop.init(types._int, nameSource.get("j"), childCount.minus(JExpr.lit(1)));
+                pushLoop.test(j.gte(JExpr.lit(0)));
+                pushLoop.update(j.decr());
+                JVar pushedChild = pushLoop.body().decl(usedValueClassType, nameSource.get("pushedChild"), acceptor.invoke(childAcceptorMethod).arg(j));
+                IJExpression isForked = largeChildCount.gt(JExpr.lit(1))
+                        .cand(j.ne(largestChild))
+                        .cand(pushedChild.ne(JExpr._null()))
+                        .cand(unwrapped(unwrappedUsedValueClassType, pushedChild).invoke(foldSizeMethod).gt(threshold));
+                JConditional fork = pushLoop.body()._if(isForked);
+                fork._then().add(nodes.invoke("add").arg(JExpr._new(usedFoldTaskType).arg(pushedChild).arg(visitor).arg(threshold).invoke("fork")));
+                fork._else().add(nodes.invoke("add").arg(pushedChild));
+                JBlock folding = needsExpansion._else();
+                folding.add(nodes.invoke("remove").arg(top));
+                folding.add(expanded.invoke("clear").arg(top));
+                JVar offset = folding.decl(types._int, nameSource.get("offset"), results.invoke("size").minus(childCount));
+                JForLoop joinLoop = folding._for();
+                JVar k = joinLoop.init(types._int, nameSource.get("k"), offset);
+                joinLoop.test(k.lt(results.invoke("size")));
+                joinLoop.update(k.incr());
+                JVar childResult = joinLoop.body().decl(types._Object, nameSource.get("childResult"), results.invoke("get").arg(k));
+                JBlock isTask = joinLoop.body()._if(childResult._instanceof(foldTaskClass))._then();
+                isTask.add(results.invoke("set").arg(k).arg(JExpr.cast(usedFoldTaskType, childResult).invoke("join")));
+                JVar result = folding.decl(resultType, nameSource.get("result"), acceptor.invoke(foldAcceptorMethod).narrow(resultType).arg(visitor).arg(results).arg(offset));
+                folding.add(results.invoke("subList").arg(offset).arg(results.invoke("size")).invoke("clear"));
+                folding.add(results.invoke("add").arg(result));
+                body._return(JExpr.cast(resultType, results.invoke("get").arg(JExpr.lit(0))));
+            }
+        }
+
+        /**
+         * Builds private method that returns number of nodes in value.
+         * <p>
+         * Size is computed iteratively and cached in every node.
+         * Size is saturated at Integer.MAX_VALUE - 1.
+         */
+        private JMethod buildFoldSizeMethod(Serialization serialization) {
+            return buildCachedSizeMethod(serialization, "foldSize", null);
+        }
+
+        /**
+         * Builds private method that sums some size over every node of value.
+         * <p>
+         * Size of single node is returned by given acceptor method or is one, when no method is given.
+         * Size is computed iteratively and cached in every node.
+         * Cached value is one more than actual size, so that zero means that size is not computed yet.
+         * Size is saturated at Integer.MAX_VALUE - 1.
+         */
+        private JMethod buildCachedSizeMethod(Serialization serialization, String methodName, @Nullable JMethod nodeSizeAcceptorMethod) {
+            buildChildAcceptorMethods();
+            AbstractJClass unwrappedUsedValueClassType = environment.unwrappedValueClassTypeInsideValueClass();
+            int mods = JMod.PRIVATE;
+            mods = !serialization.isSerializable() ? mods : mods | JMod.TRANSIENT;
+            JFieldVar sizeField = environment.buildValueClassField(mods, types._int, methodName + "CachedValue");
+
+            VariableNameSource nameSource = new VariableNameSource();
+            JMethod sizeMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.FINAL, methodName);
+            sizeMethod.type(types._int);
+            JBlock body = sizeMethod.body();
+            JBlock computation = body._if(JExpr.refthis(sizeField).eq(JExpr.lit(0)))._then();
+            JVar nodes = computation.decl(types._List.narrow(unwrappedUsedValueClassType), nameSource.get("nodes"), JExpr._new(types._ArrayList.narrow(unwrappedUsedValueClassType)));
+            JVar expanded = computation.decl(types._BitSet, nameSource.get("expanded"), JExpr._new(types._BitSet));
+            computation.add(nodes.invoke("add").arg(JExpr._this()));
+            JBlock loop = computation._while(nodes.invoke("isEmpty").not()).body();
+            JVar top = loop.decl(types._int, nameSource.get("top"), nodes.invoke("size").minus(JExpr.lit(1)));
+            JVar node = loop.decl(unwrappedUsedValueClassType, nameSource.get("node"), nodes.invoke("get").arg(top));
+            JVar childCount = loop.decl(types._int, nameSource.get("childCount"), node.ref(acceptorField).invoke(childCountAcceptorMethod));
+            JConditional isKnown = loop._if(node.ref(sizeField).ne(JExpr.lit(0)));
+            isKnown._then().add(nodes.invoke("remove").arg(top));
+            isKnown._then().add(expanded.invoke("clear").arg(top));
+            JConditional needsExpansion = isKnown._elseif(childCount.ne(JExpr.lit(0)).cand(expanded.invoke("get").arg(top).not()));
+            needsExpansion._then().add(expanded.invoke("set").arg(top));
+            JForLoop pushLoop = needsExpansion._then()._for();
+            JVar i = pushLoop.init(types._int, nameSource.get("i"), JExpr.lit(0));
+            pushLoop.test(i.lt(childCount));
+            pushLoop.update(i.incr());
+            JVar child = pushLoop.body().decl(unwrappedUsedValueClassType, nameSource.get("child"), node.ref(acceptorField).invoke(childAcceptorMethod).arg(i));
+            pushLoop.body()._if(child.ne(JExpr._null()).cand(child.ref(sizeField).eq(JExpr.lit(0))))._then().add(nodes.invoke("add").arg(child));
+            JBlock summing = needsExpansion._else();
+            summing.add(nodes.invoke("remove").arg(top));
+            summing.add(expanded.invoke("clear").arg(top));
+            IJExpression nodeSize = nodeSizeAcceptorMethod == null ? JExpr.lit(1L) : node.ref(acceptorField).invoke(nodeSizeAcceptorMethod);
+            JVar size = summing.decl(types._long, nameSource.get("size"), nodeSize);
+            JForLoop sumLoop = summing._for();
+            JVar j = sumLoop.init(types._int, nameSource.get("j"), JExpr.lit(0));
+            sumLoop.test(j.lt(childCount));
+            sumLoop.update(j.incr());
+            JVar summedChild = sumLoop.body().decl(unwrappedUsedValueClassType, nameSource.get("summedChild"), node.ref(acceptorField).invoke(childAcceptorMethod).arg(j));
+            sumLoop.body()._if(summedChild.ne(JExpr._null()))._then().assignPlus(size, summedChild.ref(sizeField).minus(JExpr.lit(1)));
+            IJExpression saturatedSize = JExpr.cast(types._int, types._Math.staticInvoke("min").arg(size).arg(types._Integer.staticRef("MAX_VALUE").minus(JExpr.lit(1))));
+            summing.assign(node.ref(sizeField), saturatedSize.plus(JExpr.lit(1)));
+            body._return(JExpr.refthis(sizeField).minus(JExpr.lit(1)));
+            return sizeMethod;
+        }
+
+        private IJExpression unwrapped(AbstractJClass unwrappedValueClassType, IJExpression value) {
+            return environment.wrappingEnabled() ? JExpr.cast(unwrappedValueClassType, value) : value;
+        }
+
+        private IJExpression thisWrappedValue(AbstractJClass usedValueClassType) {
+            if (!environment.wrappingEnabled())
+                return JExpr._this();
+            else
+                return JExpr.cond(JExpr._this()._instanceof(usedValueClassType.erasure()), JExpr.cast(usedValueClassType, JExpr._this()), environment.wrappedValue(usedValueClassType, JExpr._this()));
+        }
+
+        private boolean hasTypeParameter(JDefinedClass klass, String name) {
+            for (JTypeVar typeParameter: klass.typeParams()) {
+                if (typeParameter.name().equals(name))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Builds acceptor methods to enumerate children, that are shared by all methods traversing value.
+         */
+        private void buildChildAcceptorMethods() {
+            if (childCountAcceptorMethod == null) {
+                String acceptorMethodNamePrefix = Source.decapitalize(environment.valueClassName());
+                AbstractJClass[] acceptingInterfaceTypeParams = environment.acceptingInterfaceTypeInsideValueClass().getTypeParameters().toArray(new AbstractJClass[0]);
+                childCountAcceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "ChildCount");
+                childCountAcceptorMethod.type(types._int);
+                childAcceptorMethod = environment.buildAcceptingInterfaceMethod(JMod.PUBLIC, acceptorMethodNamePrefix + "Child");
+                childAcceptorMethod.type(environment.wrappedValueClassType(acceptingInterfaceTypeParams));
+                childAcceptorMethod.param(types._int, "index");
+
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    JDefinedClass caseClass = caseClasses.get(interfaceMethod1.name());
+                    AbstractJClass caseValueClassType = environment.wrappedValueClassType(Arrays.copyOf(caseClass.typeParams(), acceptingInterfaceTypeParams.length, AbstractJClass[].class));
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    List<JFieldVar> children = new ArrayList<>();
+                    for (JVar param: params) {
+                        if (isChild(param.type()))
+                            children.add(caseClass.fields().get(param.name()));
+                    }
+
+                    JMethod caseChildCountMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, types._int, childCountAcceptorMethod.name());
+                    caseChildCountMethod.annotate(Override.class);
+                    caseChildCountMethod.body()._return(JExpr.lit(children.size()));
+
+                    JMethod caseChildMethod = caseClass.method(JMod.PUBLIC | JMod.FINAL, caseValueClassType, childAcceptorMethod.name());
+                    caseChildMethod.annotate(Override.class);
+                    JVar caseIndex = caseChildMethod.param(types._int, "index");
+                    for (int i = 0; i < children.size(); i++) {
+                        caseChildMethod.body()._if(caseIndex.eq(JExpr.lit(i)))._then()._return(JExpr.refthis(children.get(i)));
+                    }
+                    caseChildMethod.body()._throw(JExpr._new(types._IndexOutOfBoundsException).arg(JExpr.lit("Index: ").plus(caseIndex).plus(JExpr.lit(", Size: " + children.size()))));
+                }
+            }
+        }
+
+        private boolean isChild(AbstractJType type) {
+            return ChildrenMethods.isChild(environment.visitorDefinition(),
+                                           environment.getValueTypeParameters(),
+                                           type,
+                                           environment.unwrappedValueClassTypeInsideValueClass(),
+                                           environment.wrappedValueClassTypeInsideValueClass());
+        }
+
+        /**
+         * Hash code of updated value can be computed from the old one when it is precomputed with polynomial hash function.
+         *
+         * @see HashCodeMethod#updatedHashCode
+         */
+        private boolean updatesHashCodeIncrementally() {
+            return environment.hashCodeCaching() == Caching.PRECOMPUTE && environment.hashFunction() == HashFunction.POLYNOMIAL;
+        }
+
+        private void buildPrecomputedHashCodeConstructor() {
+            if (precomputedHashCodeConstructor == null) {
+                precomputedHashCodeConstructor = environment.buildValueClassConstructor(JMod.PRIVATE);
+                JVar acceptorParam = precomputedHashCodeConstructor.param(acceptorField.type(), acceptorField.name());
+                JVar hashCodeParam = precomputedHashCodeConstructor.param(types._int, hashCodeCachedValueField.name());
+                precomputedHashCodeConstructor.body().assign(JExpr.refthis(hashCodeCachedValueField), hashCodeParam);
+                buildAttributesComputation(precomputedHashCodeConstructor.body(), acceptorParam);
+                precomputedHashCodeConstructor.body().assign(JExpr.refthis(acceptorField.name()), acceptorParam);
+            }
+        }
+
+        /**
+         * Expression that is true when updater argument is the very same value as the stored one.
+         * <p>
+         * Floating-point values are compared bitwise, so that NaN is never replaced
+         * and negative zero is never treated as positive zero.
+         */
+        private IJExpression sameValue(AbstractJType type, IJExpression value1, IJExpression value2) {
+            if (type.name().equals("float"))
+                return types._Float.staticInvoke("floatToIntBits").arg(value1).eq(types._Float.staticInvoke("floatToIntBits").arg(value2));
+            else if (type.name().equals("double"))
+                return types._Double.staticInvoke("doubleToLongBits").arg(value1).eq(types._Double.staticInvoke("doubleToLongBits").arg(value2));
+            else
+                return value1.eq(value2);
+        }
+
+        /**
+         * Estimated relative cost of comparing two values of given type for equality.
+         * <p>
+         * Primitives are the cheapest, then boxed values and enums, then strings, then other objects.
+         * Arrays and values of the class being generated are the most expensive,
+         * since their comparison may traverse arbitrary large structures.
+         */
+        private int equalsComparisonCost(AbstractJType type) {
+            if (type.isPrimitive())
+                return 0;
+            else if (type.isArray())
+                return 4;
+            else if (type.isError())
+                return 3;
+            else if (type.unboxify().isPrimitive())
+                return 1;
+            else {
+                AbstractJClass erasure = ((AbstractJClass)type).erasure();
+                if (erasure instanceof JDefinedClass && ((JDefinedClass)erasure).getClassType() == EClassType.ENUM)
+                    return 1;
+                else if (isSameClass(erasure, types._String))
+                    return 2;
+                else if (isSameClass(erasure, environment.unwrappedValueClassTypeInsideValueClass().erasure())
+                         || isSameClass(erasure, environment.wrappedValueClassTypeInsideValueClass().erasure()))
+                    return 4;
+                else
+                    return 3;
+            }
+        }
+
+        private boolean isSameClass(AbstractJClass class1, AbstractJClass class2) {
+            return !class1.isError() && !class2.isError() && class1.fullName().equals(class2.fullName());
+        }
+
         void generatePredicate(String name, PredicateConfigutation predicate) {
             JMethod predicateMethod = environment.buildValueClassMethod(Source.toJMod(predicate.accessLevel()) | JMod.FINAL, name);
             predicateMethod.type(types._boolean);
@@ -814,6 +2802,26 @@ public class FinalValueClassModel {
             }
         }
 
+        private boolean hasEpsilonFloatingPointFields() {
+            if (environment.floatCustomization().floatEquality() == FloatEquality.BITWISE)
+                return false;
+            else {
+                for (JMethod interfaceMethod1: environment.visitorDefinition().methodDefinitions()) {
+                    List<JVar> params = new ArrayList<>(interfaceMethod1.params());
+                    if (interfaceMethod1.varParam() != null)
+                        params.add(interfaceMethod1.varParam());
+                    for (JVar param: params) {
+                        AbstractJType type = param.type();
+                        while (type.isArray())
+                            type = type.elementType();
+                        if (type.isPrimitive() && (type.name().equals("float") || type.name().equals("double")))
+                            return true;
+                    }
+                }
+                return false;
+            }
+        }
+
         void buildEqualsMethod() {
             if (!isError) {
                 AbstractJClass[] typeParams = new AbstractJClass[environment.getValueTypeParameters().size()];
@@ -844,8 +2852,18 @@ public class FinalValueClassModel {
                 JInvocation invocation1 = JExpr.refthis(acceptorField).invoke(equalsImplementationMethod);
                 invocation1.arg(that.ref(acceptorField));
                 IJExpression hashCodeResult = invocation1;
-                if (environment.hashCodeCaching() == Caching.PRECOMPUTE) {
+                // Values equal up to epsilon may have different hash codes,
+                // so hash codes can't be used to reject values
+                boolean rejectsByHashCode = !hasEpsilonFloatingPointFields();
+                if (rejectsByHashCode && environment.hashCodeCaching() == Caching.PRECOMPUTE) {
                     hashCodeResult = JExpr.refthis(hashCodeCachedValueField).eq(that.ref(hashCodeCachedValueField)).cand(invocation1);
+                } else if (rejectsByHashCode && environment.hashCodeCaching().enabled()) {
+                    // Zero means that hash code is not computed yet,
+                    // any other value is always the actual hash code, even when read without synchronization
+                    JVar thisHashCode = _else.decl(types._int, nameSource.get("thisHashCode"), JExpr.refthis(hashCodeCachedValueField));
+                    JVar thatHashCode = _else.decl(types._int, nameSource.get("thatHashCode"), that.ref(hashCodeCachedValueField));
+                    IJExpression isUnknownOrSame = thisHashCode.eq0().cor(thatHashCode.eq0()).cor(thisHashCode.eq(thatHashCode));
+                    hashCodeResult = isUnknownOrSame.cand(invocation1);
                 }
                 _else._return(hashCodeResult);
 
@@ -896,40 +2914,49 @@ public class FinalValueClassModel {
 
                         EqualsMethod body = new EqualsMethod(types, equalsCaseImplementationMethod.body(), nameSource, environment.floatCustomization());
 
-                        int i = 0;
-                        boolean generatedReturn = false;
-                        VariableDeclaration varParam = interfaceMethod1.varParam();
+                        List<VariableDeclaration> comparedParams = new ArrayList<VariableDeclaration>();
+                        Map<String, JVar> arguments = new TreeMap<String, JVar>();
                         for (VariableDeclaration param: interfaceMethod1.params()) {
                             AbstractJType argumentType = param.type().declarable();
                             JVar argument1 = equalsCaseImplementationMethod.param(param.mods().getValue(), argumentType, nameSource.get(param.name()));
-                            if (isSameCase) {
+                            arguments.put(param.name(), argument1);
+                            comparedParams.add(param);
+                        }
+                        VariableDeclaration varParam = interfaceMethod1.varParam();
+                        if (varParam != null) {
+                            AbstractJType argumentType = varParam.type().elementType().declarable();
+                            JVar varArgument1 = equalsCaseImplementationMethod.varParam(varParam.mods().getValue(), argumentType, nameSource.get(varParam.name()));
+                            arguments.put(varParam.name(), varArgument1);
+                            comparedParams.add(varParam);
+                        }
+                        boolean generatedReturn = false;
+                        if (isSameCase) {
+                            // Cheap comparisons go first to reject unequal values as soon as possible,
+                            // sort is stable, so fields of the same cost keep declaration order
+                            Collections.sort(comparedParams, new Comparator<VariableDeclaration>() {
+                                @Override
+                                public int compare(VariableDeclaration param1, VariableDeclaration param2) {
+                                    return Integer.compare(equalsComparisonCost(param1.type()), equalsComparisonCost(param2.type()));
+                                }
+                            });
+                            int i = 0;
+                            for (VariableDeclaration param: comparedParams) {
+                                JVar argument1 = arguments.get(param.name());
                                 JFieldVar argument2 = caseClass.fields().get(param.name());
-                                boolean isLast = varParam == null && i == interfaceMethod1.params().size() - 1;
+                                boolean isLast = i == comparedParams.size() - 1;
                                 if (!isLast) {
                                     if (Source.isNullable(param))
-                                        body.appendNullableValue(argumentType, argument1, JExpr.refthis(argument2));
+                                        body.appendNullableValue(argument1.type(), argument1, JExpr.refthis(argument2));
                                     else
-                                        body.appendNotNullValue(argumentType, argument1, JExpr.refthis(argument2));
+                                        body.appendNotNullValue(argument1.type(), argument1, JExpr.refthis(argument2));
                                 } else {
                                     if (Source.isNullable(param))
-                                        body.appendNullableValueAndReturn(argumentType, argument1, JExpr.refthis(argument2));
+                                        body.appendNullableValueAndReturn(argument1.type(), argument1, JExpr.refthis(argument2));
                                     else
-                                        body.appendNotNullValueAndReturn(argumentType, argument1, JExpr.refthis(argument2));
+                                        body.appendNotNullValueAndReturn(argument1.type(), argument1, JExpr.refthis(argument2));
                                     generatedReturn = true;
                                 }
-                            }
-                            i++;
-                        }
-                        if (varParam != null) {
-                            AbstractJType argumentType = varParam.type().elementType().declarable();
-                            JVar varArgument1 = equalsCaseImplementationMethod.varParam(varParam.mods().getValue(), argumentType, nameSource.get(varParam.name()));
-                            if (isSameCase) {
-                                JFieldVar varArgument2 = caseClass.fields().get(varParam.name());
-                                if (Source.isNullable(varParam))
-                                    body.appendNullableValueAndReturn(varArgument1.type(), varArgument1, JExpr.refthis(varArgument2));
-                                else
-                                    body.appendNotNullValueAndReturn(varArgument1.type(), varArgument1, JExpr.refthis(varArgument2));
-                                generatedReturn = true;
+                                i++;
                             }
                         }
                         if (!generatedReturn)
@@ -1039,7 +3066,7 @@ public class FinalValueClassModel {
         }
 
         void buildReadObjectMethod() {
-            if (!isError && environment.hashCodeCaching() == Caching.PRECOMPUTE) {
+            if (!isError && (environment.hashCodeCaching() == Caching.PRECOMPUTE || !attributeFields.isEmpty())) {
                 JMethod method = environment.buildValueClassMethod(JMod.PRIVATE, "readObject");
                 method._throws(types._IOException);
                 method._throws(types._ClassNotFoundException);
@@ -1047,8 +3074,11 @@ public class FinalValueClassModel {
                 JVar inputStream = method.param(types._ObjectInputStream, variableNameSource.get("input"));
                 JBlock body = method.body();
                 body.invoke(inputStream, "defaultReadObject");
-                JInvocation invocation = JExpr.refthis(acceptorField).invoke(hashCodeAcceptorMethodName());
-                body.assign(JExpr.refthis(hashCodeCachedValueField), invocation);
+                if (environment.hashCodeCaching() == Caching.PRECOMPUTE) {
+                    JInvocation invocation = JExpr.refthis(acceptorField).invoke(hashCodeAcceptorMethodName());
+                    body.assign(JExpr.refthis(hashCodeCachedValueField), invocation);
+                }
+                buildAttributesComputation(body, JExpr.refthis(acceptorField));
             }
         }
 
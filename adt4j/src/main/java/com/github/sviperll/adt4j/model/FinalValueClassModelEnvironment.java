@@ -31,6 +31,7 @@
 package com.github.sviperll.adt4j.model;
 
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.HashFunction;
 import com.github.sviperll.adt4j.MemberAccess;
 import com.github.sviperll.adt4j.model.config.FloatCustomization;
 import com.github.sviperll.adt4j.model.config.ValueClassConfiguration;
@@ -50,6 +51,7 @@ import com.helger.jcodemodel.JTypeVar;
 import java.util.Collection;
 import javax.annotation.ParametersAreNonnullByDefault;
 import javax.annotation.Nullable;
+import javax.lang.model.SourceVersion;
 
 /**
  *
@@ -60,10 +62,12 @@ public class FinalValueClassModelEnvironment {
     private final JDefinedClass valueClass;
     private final JDefinedClass acceptingInterface;
     private final ValueClassConfiguration configuration;
-    public FinalValueClassModelEnvironment(JDefinedClass valueClass, @Nullable JDefinedClass acceptingInterface, ValueClassConfiguration configuration) {
+    private final SourceVersion sourceVersion;
+    public FinalValueClassModelEnvironment(JDefinedClass valueClass, @Nullable JDefinedClass acceptingInterface, ValueClassConfiguration configuration, SourceVersion sourceVersion) {
         this.valueClass = valueClass;
         this.acceptingInterface = acceptingInterface;
         this.configuration = configuration;
+        this.sourceVersion = sourceVersion;
     }
 
     String valueClassName() {
@@ -74,6 +78,14 @@ public class FinalValueClassModelEnvironment {
         return configuration.hashCodeCaching();
     }
 
+    int hashCodeBase() {
+        return configuration.hashCodeBase();
+    }
+
+    HashFunction hashFunction() {
+        return configuration.hashFunction();
+    }
+
     boolean isValueClassSerializable() {
         return configuration.isValueClassSerializable();
     }
@@ -102,6 +114,20 @@ public class FinalValueClassModelEnvironment {
         return valueClass.method(mods, valueClass.owner().VOID, name);
     }
 
+    @Nullable
+    JMethod getValueClassMethod(String name, AbstractJType... paramTypes) {
+        return valueClass.getMethod(name, paramTypes);
+    }
+
+    @Nullable
+    JDefinedClass getValueClassInnerClass(String name) {
+        for (JDefinedClass innerClass: valueClass.classes()) {
+            if (innerClass.name().equals(name))
+                return innerClass;
+        }
+        return null;
+    }
+
     Collection<? extends JTypeVar> getValueTypeParameters() {
         return configuration.getValueTypeParameters();
     }
@@ -189,4 +215,12 @@ public class FinalValueClassModelEnvironment {
     VisitorDefinition visitorDefinition() {
         return configuration.visitorDefinition();
     }
+
+    /**
+     * Whether generated code can use {@code Spliterator} and {@code Stream} introduced in Java 8.
+     */
+    boolean isStreamApiAvailable() {
+        // RELEASE_8 is referenced by ordinal to keep processor compilable with older JDKs
+        return sourceVersion.ordinal() >= 8;
+    }
 }
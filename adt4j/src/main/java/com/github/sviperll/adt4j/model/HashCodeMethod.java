@@ -29,6 +29,7 @@
  */
 package com.github.sviperll.adt4j.model;
 
+import com.github.sviperll.adt4j.HashFunction;
 import com.github.sviperll.adt4j.model.util.Types;
 import com.github.sviperll.adt4j.model.util.VariableNameSource;
 import com.helger.jcodemodel.AbstractJType;
@@ -36,7 +37,6 @@ import com.helger.jcodemodel.IJExpression;
 import com.helger.jcodemodel.JBlock;
 import com.helger.jcodemodel.JConditional;
 import com.helger.jcodemodel.JExpr;
-import com.helger.jcodemodel.JForLoop;
 import com.helger.jcodemodel.JInvocation;
 import com.helger.jcodemodel.JOp;
 import com.helger.jcodemodel.JVar;
@@ -48,12 +48,14 @@ import com.helger.jcodemodel.JVar;
 class HashCodeMethod {
     private final Types types;
     private final int hashCodeBase;
+    private final HashFunction hashFunction;
     private final JBlock methodBody;
     private final VariableNameSource methodNameSource;
 
-    HashCodeMethod(Types types, int hashCodeBase, JBlock methodBody, VariableNameSource methodNameSource) {
+    HashCodeMethod(Types types, int hashCodeBase, HashFunction hashFunction, JBlock methodBody, VariableNameSource methodNameSource) {
         this.types = types;
         this.hashCodeBase = hashCodeBase;
+        this.hashFunction = hashFunction;
         this.methodBody = methodBody;
         this.methodNameSource = methodNameSource;
     }
@@ -63,6 +65,64 @@ class HashCodeMethod {
         return new Body(result, methodBody, methodNameSource);
     }
 
+    /**
+     * Expression that computes new hash code after single field change from the old one.
+     * <p>
+     * Polynomial hash code of case with n fields is
+     * tag * base<sup>n</sup> + code<sub>0</sub> * base<sup>n - 1</sup> + ... + code<sub>n - 1</sub>,
+     * so the change of i-th field only adds
+     * (newCode<sub>i</sub> - oldCode<sub>i</sub>) * base<sup>n - 1 - i</sup>.
+     * Integer overflow doesn't break this equality.
+     *
+     * @param hashCode old hash code
+     * @param fieldIndex index of changed field
+     * @param fieldCount number of fields in the case
+     */
+    IJExpression updatedHashCode(IJExpression hashCode, int fieldIndex, int fieldCount, AbstractJType type, boolean isNullable, IJExpression oldValue, IJExpression newValue) {
+        if (hashFunction != HashFunction.POLYNOMIAL)
+            throw new IllegalStateException("Hash code can't be updated incrementally with " + hashFunction + " hash function");
+        int factor = 1;
+        for (int i = fieldIndex + 1; i < fieldCount; i++) {
+            factor *= hashCodeBase;
+        }
+        IJExpression difference = fieldHashCode(type, isNullable, newValue).minus(fieldHashCode(type, isNullable, oldValue));
+        return hashCode.plus(factor == 1 ? difference : difference.mul(JExpr.lit(factor)));
+    }
+
+    private IJExpression fieldHashCode(AbstractJType type, boolean isNullable, IJExpression value) {
+        if (!isNullable)
+            return valueHashCode(type, value);
+        else
+            return JOp.cond(value.eq(JExpr._null()), JExpr.lit(0), valueHashCode(type, value));
+    }
+
+    /**
+     * Hash code of single non-null value, that is combined into the hash code of the whole case.
+     */
+    private IJExpression valueHashCode(AbstractJType type, IJExpression value) {
+        if (type.isArray()) {
+            JInvocation invocation = types._Arrays.staticInvoke(type.elementType().isArray() ? "deepHashCode" : "hashCode");
+            invocation.arg(value);
+            return invocation;
+        } else if (!type.isPrimitive()) {
+            return value.invoke("hashCode");
+        } else if (type.name().equals("double")) {
+            JInvocation invocation = types._Double.staticInvoke("doubleToLongBits");
+            invocation.arg(value);
+            return valueHashCode(types._long, invocation);
+        } else if (type.name().equals("float")) {
+            JInvocation invocation = types._Float.staticInvoke("floatToIntBits");
+            invocation.arg(value);
+            return invocation;
+        } else if (type.name().equals("boolean")) {
+            return JOp.cond(value, JExpr.lit(0), JExpr.lit(1));
+        } else if (type.name().equals("long")) {
+            return JExpr.cast(types._int, value.xor(value.shrz(JExpr.lit(32))));
+        } else {
+            return value;
+        }
+    }
+
     class Body {
 
         private final JBlock body;
@@ -88,33 +148,29 @@ class HashCodeMethod {
         }
 
         void appendNotNullValue(AbstractJType type, IJExpression value) {
-            if (type.isArray()) {
-                VariableNameSource localNames = nameSource.forBlock();
-                JForLoop _for = body._for();
-                JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
-                _for.test(i.lt(value.ref("length")));
-                _for.update(i.incr());
-                Body forBody = new Body(result, _for.body(), localNames);
-                if (type.elementType().isReference())
-                    forBody.appendNullableValue(type.elementType(), value.component(i));
-                else
-                    forBody.appendNotNullValue(type.elementType(), value.component(i));
-            } else if (!type.isPrimitive()) {
-                appendNotNullValue(types._int, value.invoke("hashCode"));
-            } else if (type.name().equals("double")) {
-                JInvocation invocation = types._Double.staticInvoke("doubleToLongBits");
-                invocation.arg(value);
-                appendNotNullValue(types._long, invocation);
-            } else if (type.name().equals("float")) {
-                JInvocation invocation = types._Float.staticInvoke("floatToIntBits");
-                invocation.arg(value);
-                appendNotNullValue(types._int, invocation);
-            } else if (type.name().equals("boolean")) {
-                appendNotNullValue(types._int, JOp.cond(value, JExpr.lit(0), JExpr.lit(1)));
-            } else if (type.name().equals("long")) {
-                appendNotNullValue(types._int, JExpr.cast(types._int, value.xor(value.shrz(JExpr.lit(32)))));
+            IJExpression code = valueHashCode(type, value);
+            if (hashFunction == HashFunction.MURMUR3) {
+                // MurmurHash3 32-bit block mixing
+                JInvocation mixedValue = types._Integer.staticInvoke("rotateLeft").arg(code.mul(JExpr.lit(0xcc9e2d51))).arg(JExpr.lit(15));
+                JInvocation mixedResult = types._Integer.staticInvoke("rotateLeft").arg(result.xor(mixedValue.mul(JExpr.lit(0x1b873593)))).arg(JExpr.lit(13));
+                body.assign(result, mixedResult.mul(JExpr.lit(5)).plus(JExpr.lit(0xe6546b64)));
             } else {
-                body.assign(result, result.mul(JExpr.lit(hashCodeBase)).plus(value));
+                body.assign(result, result.mul(JExpr.lit(hashCodeBase)).plus(code));
+            }
+        }
+
+        /**
+         * Appends statements that should be executed after all fields are combined.
+         * <p>
+         * MurmurHash3 finalizer makes every bit of result depend on every bit of combined fields.
+         */
+        void appendFinalization() {
+            if (hashFunction == HashFunction.MURMUR3) {
+                body.assign(result, result.xor(result.shrz(JExpr.lit(16))));
+                body.assign(result, result.mul(JExpr.lit(0x85ebca6b)));
+                body.assign(result, result.xor(result.shrz(JExpr.lit(13))));
+                body.assign(result, result.mul(JExpr.lit(0xc2b2ae35)));
+                body.assign(result, result.xor(result.shrz(JExpr.lit(16))));
             }
         }
 
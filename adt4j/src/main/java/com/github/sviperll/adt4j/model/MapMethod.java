@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model;
+
+import com.github.sviperll.adt4j.model.config.VisitorDefinition;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.JTypeVar;
+import java.util.Collections;
+import javax.annotation.Nullable;
+
+/**
+ * Classifies fields for generated map method.
+ * <p>
+ * Map method applies function to every field whose type is the type parameter of value class,
+ * recursively maps every field whose type is value class itself
+ * and keeps every other field as is.
+ * Fields whose type mentions type parameter in any other way can't be mapped.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class MapMethod {
+    static final String METHOD_NAME = "map";
+
+    static FieldKind fieldKind(VisitorDefinition visitorDefinition, JTypeVar typeParameter, AbstractJType type, AbstractJClass valueClass, AbstractJClass wrappedValueClass) {
+        if (type == typeParameter)
+            return FieldKind.ELEMENT;
+        else if (ChildrenMethods.isChild(visitorDefinition, Collections.singletonList(typeParameter), type, valueClass, wrappedValueClass))
+            return FieldKind.CHILD;
+        else if (mentions(type, typeParameter) || mentions(type, visitorDefinition.getSelfTypeParameter()))
+            return FieldKind.UNSUPPORTED;
+        else
+            return FieldKind.CONSTANT;
+    }
+
+    static String resultTypeParameterName(JTypeVar typeParameter) {
+        return typeParameter.name().equals("U") ? "V" : "U";
+    }
+
+    private static boolean mentions(AbstractJType type, @Nullable JTypeVar typeParameter) {
+        return typeParameter != null && type.containsTypeVar(typeParameter);
+    }
+
+    private MapMethod() {
+    }
+
+    enum FieldKind {
+        ELEMENT, CHILD, CONSTANT, UNSUPPORTED
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model;
+
+import com.github.sviperll.adt4j.model.util.Types;
+import com.github.sviperll.adt4j.model.util.VariableNameSource;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.IJExpression;
+import com.helger.jcodemodel.JBlock;
+import com.helger.jcodemodel.JConditional;
+import com.helger.jcodemodel.JExpr;
+import com.helger.jcodemodel.JForLoop;
+import com.helger.jcodemodel.JInvocation;
+import com.helger.jcodemodel.JMethod;
+import com.helger.jcodemodel.JMod;
+import com.helger.jcodemodel.JOp;
+import com.helger.jcodemodel.JTypeVar;
+import com.helger.jcodemodel.JVar;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates stableHash64 method.
+ * <p>
+ * Stable hash only depends on case names and field values,
+ * so it is the same in every JVM process and doesn't change between releases.
+ * Field values are mixed into result with MurmurHash3 x64 block mixing,
+ * strings and enum constant names are hashed with 64-bit FNV-1a over chars.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class StableHash64Method {
+    static final String METHOD_NAME = "stableHash64";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static StableHash64Method createInstance(Types types, FinalValueClassModelEnvironment environment) {
+        VariableNameSource nameSource = new VariableNameSource();
+        JMethod mixMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Mix");
+        mixMethod.type(types._long);
+        JVar hash = mixMethod.param(types._long, nameSource.get("hash"));
+        JVar value = mixMethod.param(types._long, nameSource.get("value"));
+        IJExpression mixedValue = types._Long.staticInvoke("rotateLeft").arg(value.mul(JExpr.lit(0x87c37b91114253d5L))).arg(JExpr.lit(31)).mul(JExpr.lit(0x4cf5ad432745937fL));
+        IJExpression mixedHash = types._Long.staticInvoke("rotateLeft").arg(hash.xor(mixedValue)).arg(JExpr.lit(27));
+        mixMethod.body()._return(mixedHash.mul(JExpr.lit(5L)).plus(JExpr.lit(0x52dce729L)));
+
+        nameSource = new VariableNameSource();
+        JMethod finishMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Finish");
+        finishMethod.type(types._long);
+        hash = finishMethod.param(types._long, nameSource.get("hash"));
+        finishMethod.body().assign(hash, hash.xor(hash.shrz(JExpr.lit(33))));
+        finishMethod.body().assign(hash, hash.mul(JExpr.lit(0xff51afd7ed558ccdL)));
+        finishMethod.body().assign(hash, hash.xor(hash.shrz(JExpr.lit(33))));
+        finishMethod.body().assign(hash, hash.mul(JExpr.lit(0xc4ceb9fe1a85ec53L)));
+        finishMethod.body().assign(hash, hash.xor(hash.shrz(JExpr.lit(33))));
+        finishMethod.body()._return(hash);
+
+        nameSource = new VariableNameSource();
+        JMethod stringMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "String");
+        stringMethod.type(types._long);
+        JVar string = stringMethod.param(types._String, nameSource.get("value"));
+        JVar result = stringMethod.body().decl(types._long, nameSource.get("result"), JExpr.lit(FNV_OFFSET_BASIS));
+        VariableNameSource localNames = nameSource.forBlock();
+        JForLoop _for = stringMethod.body()._for();
+        JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+        _for.test(i.lt(string.invoke("length")));
+        _for.update(i.incr());
+        _for.body().assign(result, result.xor(string.invoke("charAt").arg(i)).mul(JExpr.lit(FNV_PRIME)));
+        stringMethod.body()._return(result);
+
+        nameSource = new VariableNameSource();
+        JMethod objectMethod = environment.buildValueClassMethod(JMod.PRIVATE | JMod.STATIC, METHOD_NAME + "Object");
+        objectMethod.type(types._long);
+        JVar object = objectMethod.param(types._Object, nameSource.get("value"));
+        JConditional _if = objectMethod.body()._if(object.eq(JExpr._null()));
+        _if._then()._return(JExpr.lit(0L));
+        _if = _if._elseif(object._instanceof(types._String));
+        _if._then()._return(JExpr.invoke(stringMethod).arg(JExpr.cast(types._String, object)));
+        AbstractJClass enumType = types._Enum.narrow(types.createWildcard());
+        _if = _if._elseif(object._instanceof(types._Enum));
+        _if._then()._return(JExpr.invoke(stringMethod).arg(JExpr.cast(enumType, object).invoke("name")));
+        _if = _if._elseif(object._instanceof(types._Boolean));
+        _if._then()._return(JOp.cond(JExpr.cast(types._Boolean, object).invoke("booleanValue"), JExpr.lit(1L), JExpr.lit(0L)));
+        _if = _if._elseif(object._instanceof(types._Character));
+        _if._then()._return(JExpr.cast(types._Character, object).invoke("charValue"));
+        _if = _if._elseif(object._instanceof(types._Float));
+        _if._then()._return(types._Float.staticInvoke("floatToIntBits").arg(JExpr.cast(types._Float, object).invoke("floatValue")));
+        _if = _if._elseif(object._instanceof(types._Double));
+        _if._then()._return(types._Double.staticInvoke("doubleToLongBits").arg(JExpr.cast(types._Double, object).invoke("doubleValue")));
+        IJExpression isIntegral = object._instanceof(types._Long).cor(object._instanceof(types._Integer)).cor(object._instanceof(types._Short)).cor(object._instanceof(types._Byte));
+        _if = _if._elseif(isIntegral);
+        _if._then()._return(JExpr.cast(types._Number, object).invoke("longValue"));
+        AbstractJClass valueClass = environment.unwrappedValueClassTypeInsideValueClass().erasure();
+        AbstractJClass[] typeArguments = new AbstractJClass[environment.getValueTypeParameters().size()];
+        for (int k = 0; k < typeArguments.length; k++)
+            typeArguments[k] = types.createWildcard();
+        AbstractJClass usedValueClass = typeArguments.length == 0 ? valueClass : valueClass.narrow(typeArguments);
+        _if = _if._elseif(object._instanceof(valueClass));
+        _if._then()._return(JExpr.cast(usedValueClass, object).invoke(METHOD_NAME));
+        JInvocation exception = JExpr._new(types._IllegalArgumentException);
+        exception.arg(JExpr.lit("Value has no stable hash: ").plus(object.invoke("getClass").invoke("getName")));
+        _if._else()._throw(exception);
+
+        AbstractJClass wrappedValueClass = environment.wrappedValueClassTypeInsideValueClass().erasure();
+        return new StableHash64Method(types, valueClass, wrappedValueClass, mixMethod, finishMethod, stringMethod, objectMethod);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of UTF-8 encoding of given string.
+     * <p>
+     * Used to turn case names into generated literals.
+     */
+    private static long fnv1a64(String string) {
+        long result = FNV_OFFSET_BASIS;
+        for (byte b: string.getBytes(StandardCharsets.UTF_8)) {
+            result = (result ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return result;
+    }
+
+    private final Types types;
+    private final AbstractJClass valueClass;
+    private final AbstractJClass wrappedValueClass;
+    private final JMethod mixMethod;
+    private final JMethod finishMethod;
+    private final JMethod stringMethod;
+    private final JMethod objectMethod;
+
+    private StableHash64Method(Types types, AbstractJClass valueClass, AbstractJClass wrappedValueClass, JMethod mixMethod, JMethod finishMethod, JMethod stringMethod, JMethod objectMethod) {
+        this.types = types;
+        this.valueClass = valueClass;
+        this.wrappedValueClass = wrappedValueClass;
+        this.mixMethod = mixMethod;
+        this.finishMethod = finishMethod;
+        this.stringMethod = stringMethod;
+        this.objectMethod = objectMethod;
+    }
+
+    Body createBody(JBlock methodBody, VariableNameSource nameSource, String caseName) {
+        JVar result = methodBody.decl(types._long, nameSource.get("result"), JExpr.lit(fnv1a64(caseName)));
+        return new Body(result, methodBody, nameSource);
+    }
+
+    /**
+     * Whether stable hash of field of given type can be generated.
+     * <p>
+     * Values of type variables are dispatched at runtime,
+     * they can be strings, enums, boxed primitives or values of the value class itself.
+     */
+    static boolean isSupported(Types types, AbstractJType type) {
+        if (type.isError() || type instanceof JTypeVar || type.isPrimitive())
+            return true;
+        else if (type.isArray())
+            return isSupported(types, type.elementType());
+        else
+            return type.unboxify().isPrimitive() || types.isString(type) || types.isEnum(type) || types.declaresInstanceMethod(type, METHOD_NAME, 0);
+    }
+
+    private boolean hasStableHash64(AbstractJType type) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = ((AbstractJClass)type).erasure();
+        if (klass.fullName().equals(valueClass.fullName()) || !wrappedValueClass.isError() && klass.fullName().equals(wrappedValueClass.fullName()))
+            return true;
+        return types.declaresInstanceMethod(klass, METHOD_NAME, 0);
+    }
+
+    class Body {
+        private final JVar result;
+        private final JBlock body;
+        private final VariableNameSource nameSource;
+
+        private Body(JVar result, JBlock body, VariableNameSource nameSource) {
+            this.result = result;
+            this.body = body;
+            this.nameSource = nameSource;
+        }
+
+        void appendNullableValue(AbstractJType type, IJExpression value) {
+            if (!type.isReference())
+                throw new AssertionError("appendNullableValue called for non-reference type");
+            else {
+                JConditional _if = body._if(value.eq(JExpr._null()));
+                Body thenBody = new Body(result, _if._then(), nameSource);
+                thenBody.mix(JExpr.lit(0L));
+                Body elseBody = new Body(result, _if._else(), nameSource);
+                elseBody.appendNotNullValue(type, value);
+            }
+        }
+
+        void appendNotNullValue(AbstractJType type, IJExpression value) {
+            if (type.isArray()) {
+                mix(value.ref("length"));
+                VariableNameSource localNames = nameSource.forBlock();
+                JForLoop _for = body._for();
+                JVar i = _for.init(types._int, localNames.get("i"), JExpr.lit(0));
+                _for.test(i.lt(value.ref("length")));
+                _for.update(i.incr());
+                Body forBody = new Body(result, _for.body(), localNames);
+                if (type.elementType().isReference())
+                    forBody.appendNullableValue(type.elementType(), value.component(i));
+                else
+                    forBody.appendNotNullValue(type.elementType(), value.component(i));
+            } else if (type.isPrimitive()) {
+                if (type.name().equals("boolean"))
+                    mix(JOp.cond(value, JExpr.lit(1L), JExpr.lit(0L)));
+                else if (type.name().equals("float"))
+                    mix(types._Float.staticInvoke("floatToIntBits").arg(value));
+                else if (type.name().equals("double"))
+                    mix(types._Double.staticInvoke("doubleToLongBits").arg(value));
+                else
+                    mix(value);
+            } else if (type.unboxify().isPrimitive()) {
+                appendNotNullValue(type.unboxify(), value);
+            } else if (types.isString(type)) {
+                mix(JExpr.invoke(stringMethod).arg(value));
+            } else if (types.isEnum(type)) {
+                mix(JExpr.invoke(stringMethod).arg(value.invoke("name")));
+            } else if (hasStableHash64(type)) {
+                mix(value.invoke(METHOD_NAME));
+            } else {
+                mix(JExpr.invoke(objectMethod).arg(value));
+            }
+        }
+
+        private void mix(IJExpression value) {
+            body.assign(result, JExpr.invoke(mixMethod).arg(result).arg(value));
+        }
+
+        IJExpression result() {
+            return JExpr.invoke(finishMethod).arg(result);
+        }
+    }
+}
@@ -29,6 +29,7 @@
  */
 package com.github.sviperll.adt4j.model;
 
+import com.github.sviperll.adt4j.model.config.AttributeConfiguration;
 import com.github.sviperll.adt4j.model.config.FieldConfiguration;
 import com.github.sviperll.adt4j.model.config.PredicateConfigutation;
 import com.github.sviperll.adt4j.model.config.ValueClassConfiguration;
@@ -46,8 +47,11 @@ import com.helger.jcodemodel.JMethod;
 import com.helger.jcodemodel.JMod;
 import com.helger.jcodemodel.JTypeVar;
 import com.helger.jcodemodel.JVar;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import javax.lang.model.SourceVersion;
 
 /**
  *
@@ -64,17 +68,35 @@ public class Stage1ValueClassModel {
         this.types = types;
     }
     
-    public GenerationResult<JDefinedClass> createResult() {
+    /**
+     * Builds final value class.
+     *
+     * @param sourceVersion source version of generated code, newer versions allow use of newer JDK API
+     */
+    public GenerationResult<JDefinedClass> createResult(SourceVersion sourceVersion) {
         GenerationProcess generation = new GenerationProcess();
         generation.reportAllErrors(validateInterfaces());
+        if (configuration.generatesMap())
+            generation.reportAllErrors(validateElements("map method", false));
+        if (configuration.generatesFold())
+            generation.reportAllErrors(validateFold());
+        if (configuration.generatesStream())
+            generation.reportAllErrors(validateElements("iterator and stream methods", true));
+        if (configuration.generatesBulkFactories())
+            generation.reportAllErrors(validateBulkFactories());
+        if (configuration.generatesStableHash64())
+            generation.reportAllErrors(validateStableHash64());
+        if (configuration.generatesDigestInto())
+            generation.reportAllErrors(validateDigestInto());
         
         Map<String, FieldConfiguration> gettersConfigutation = generation.processGenerationResult(configuration.getGettersConfigutation(valueClass, types));
         Map<String, FieldConfiguration> updatersConfiguration = generation.processGenerationResult(configuration.getUpdatersConfiguration(valueClass, types));
         Map<String, PredicateConfigutation> predicates = generation.processGenerationResult(configuration.getPredicates());
+        Map<String, AttributeConfiguration> attributes = generation.processGenerationResult(configuration.getAttributes());
 
         FinalValueClassModel result;
         if (generation.hasErrors()) {
-            FinalValueClassModelEnvironment environment = new FinalValueClassModelEnvironment(valueClass, null, configuration);
+            FinalValueClassModelEnvironment environment = new FinalValueClassModelEnvironment(valueClass, null, configuration, sourceVersion);
             result = FinalValueClassModel.createErrorModel(environment, types);
         } else {
             JDefinedClass acceptingInterface;
@@ -86,11 +108,12 @@ public class Stage1ValueClassModel {
             if (configuration.isValueClassSerializable()) {
                 acceptingInterface._extends(types._Serializable);
             }
-            FinalValueClassModelEnvironment environment = new FinalValueClassModelEnvironment(valueClass, acceptingInterface, configuration);
+            FinalValueClassModelEnvironment environment = new FinalValueClassModelEnvironment(valueClass, acceptingInterface, configuration, sourceVersion);
             result = FinalValueClassModel.createModel(environment, types);
         }
         result.buildSerialVersionUID();
         FinalValueClassModel.MethodBuilder methodBuilder = result.createMethodBuilder(configuration.serialization());
+        methodBuilder.buildAttributes(attributes.values(), configuration.serialization());
         Map<String, JMethod> constructorMethods = methodBuilder.buildConstructorMethods(configuration.serialization());
         methodBuilder.buildPrivateConstructor();
         if (configuration.isValueClassSerializable())
@@ -103,6 +126,34 @@ public class Stage1ValueClassModel {
         for (FieldConfiguration updater: updatersConfiguration.values()) {
             methodBuilder.generateUpdater(updater);
         }
+        if (configuration.generatesLenses()) {
+            try {
+                result.buildLens(gettersConfigutation.values(), updatersConfiguration.values());
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception :)", ex);
+            }
+        }
+        if (configuration.generatesBatchUpdate() && !updatersConfiguration.isEmpty()) {
+            methodBuilder.buildBatchUpdate(updatersConfiguration.values());
+        }
+        if (configuration.generatesMap()) {
+            methodBuilder.buildMapMethod(constructorMethods);
+        }
+        if (configuration.generatesChildren()) {
+            methodBuilder.buildChildrenMethods();
+            if (configuration.hashCodeCaching().enabled())
+                methodBuilder.buildRewriteMethod();
+        }
+        if (configuration.generatesFold()) {
+            methodBuilder.buildFoldMethod(configuration.serialization());
+            methodBuilder.buildFoldParallelMethod(configuration.serialization());
+        }
+        if (configuration.generatesStream()) {
+            methodBuilder.buildStreamMethods(configuration.serialization());
+        }
+        if (configuration.generatesBulkFactories()) {
+            methodBuilder.buildBulkFactoryMethods(constructorMethods);
+        }
         for (Map.Entry<String, PredicateConfigutation> predicate: predicates.entrySet()) {
             methodBuilder.generatePredicate(predicate.getKey(), predicate.getValue());
         }
@@ -110,10 +161,18 @@ public class Stage1ValueClassModel {
             methodBuilder.buildCompareTo();
         }
         methodBuilder.buildEqualsMethod();
-        methodBuilder.buildHashCodeMethod(configuration.hashCodeBase());
+        methodBuilder.buildHashCodeMethod(configuration.hashCodeBase(), configuration.hashFunction());
+        if (configuration.generatesStableHash64()) {
+            methodBuilder.buildStableHash64Method();
+        }
+        if (configuration.generatesDigestInto()) {
+            methodBuilder.buildDigestIntoMethod(configuration.serialization());
+        }
         methodBuilder.buildToStringMethod();
         try {
             result.buildFactory(constructorMethods);
+            if (configuration.generatesBuilders())
+                result.buildBuilders(constructorMethods);
         } catch (JClassAlreadyExistsException ex) {
             throw new RuntimeException("Unexpected exception :)", ex);
         }
@@ -157,6 +216,83 @@ public class Stage1ValueClassModel {
         return generation.reportedErrors();
     }
 
+    private Collection<? extends String> validateElements(String generatedMethods, boolean allowsBoundedTypeParameter) {
+        GenerationProcess generation = new GenerationProcess();
+        List<? extends JTypeVar> typeParameters = configuration.getValueTypeParameters();
+        if (typeParameters.size() != 1) {
+            generation.reportError("Unable to generate " + generatedMethods + ": value class should have exactly one type parameter");
+        } else {
+            JTypeVar typeParameter = typeParameters.get(0);
+            for (AbstractJClass bound: typeParameter.bounds()) {
+                if (!allowsBoundedTypeParameter && !bound.fullName().equals(types._Object.fullName()))
+                    generation.reportError("Unable to generate " + generatedMethods + ": " + typeParameter.name() + " type parameter shouldn't be bounded");
+            }
+            AbstractJClass wrappedValueClass = configuration.wrapValueClass(valueClass);
+            for (JMethod interfaceMethod: configuration.visitorDefinition().methodDefinitions()) {
+                if (interfaceMethod.typeParams().length != 0)
+                    generation.reportError("Unable to generate " + generatedMethods + ": " + interfaceMethod.name() + " method shouldn't have type parameters");
+                List<JVar> params = new ArrayList<>(interfaceMethod.params());
+                if (interfaceMethod.varParam() != null)
+                    params.add(interfaceMethod.varParam());
+                for (JVar param: params) {
+                    MapMethod.FieldKind kind = MapMethod.fieldKind(configuration.visitorDefinition(), typeParameter, param.type(), valueClass, wrappedValueClass);
+                    if (kind == MapMethod.FieldKind.UNSUPPORTED)
+                        generation.reportError("Unable to generate " + generatedMethods + ": " + param.name() + " parameter in " + interfaceMethod.name() + " method should either be of " + typeParameter.name() + " type, of value class type or shouldn't mention " + typeParameter.name() + " type at all");
+                }
+            }
+        }
+        return generation.reportedErrors();
+    }
+
+    private Collection<? extends String> validateBulkFactories() {
+        GenerationProcess generation = new GenerationProcess();
+        generation.reportAllErrors(validateElements("bulk factories", true));
+        if (!generation.hasErrors()) {
+            JTypeVar typeParameter = configuration.getValueTypeParameters().get(0);
+            AbstractJClass wrappedValueClass = configuration.wrapValueClass(valueClass);
+            if (BulkFactoryMethods.shape(configuration.visitorDefinition(), typeParameter, valueClass, wrappedValueClass) == null)
+                generation.reportError("Unable to generate bulk factories: value class should have a case without fields and a case with single field of " + typeParameter.name() + " type and one or two fields of value class type");
+        }
+        return generation.reportedErrors();
+    }
+
+    private Collection<? extends String> validateStableHash64() {
+        GenerationProcess generation = new GenerationProcess();
+        for (JMethod interfaceMethod: configuration.visitorDefinition().methodDefinitions()) {
+            List<JVar> params = new ArrayList<>(interfaceMethod.params());
+            if (interfaceMethod.varParam() != null)
+                params.add(interfaceMethod.varParam());
+            for (JVar param: params) {
+                if (!StableHash64Method.isSupported(types, param.type()))
+                    generation.reportError("Unable to generate stableHash64 method: " + param.name() + " parameter in " + interfaceMethod.name() + " method should be of primitive, string, enum or type with stableHash64 method, of array of such types or of type variable");
+            }
+        }
+        return generation.reportedErrors();
+    }
+
+    private Collection<? extends String> validateDigestInto() {
+        GenerationProcess generation = new GenerationProcess();
+        for (JMethod interfaceMethod: configuration.visitorDefinition().methodDefinitions()) {
+            List<JVar> params = new ArrayList<>(interfaceMethod.params());
+            if (interfaceMethod.varParam() != null)
+                params.add(interfaceMethod.varParam());
+            for (JVar param: params) {
+                if (!DigestIntoMethod.isSupported(types, param.type()))
+                    generation.reportError("Unable to generate digestInto method: " + param.name() + " parameter in " + interfaceMethod.name() + " method should be of primitive, string, enum or type with digestInto method, of array of such types or of type variable");
+            }
+        }
+        return generation.reportedErrors();
+    }
+
+    private Collection<? extends String> validateFold() {
+        GenerationProcess generation = new GenerationProcess();
+        for (JMethod interfaceMethod: configuration.visitorDefinition().methodDefinitions()) {
+            if (interfaceMethod.typeParams().length != 0)
+                generation.reportError("Unable to generate fold method: " + interfaceMethod.name() + " method shouldn't have type parameters");
+        }
+        return generation.reportedErrors();
+    }
+
     void fullySpecifyClassHeader() {
         for (JTypeVar visitorTypeParameter: configuration.getValueTypeParameters()) {
             JTypeVar typeParameter = valueClass.generify(visitorTypeParameter.name());
@@ -173,6 +309,41 @@ public class Stage1ValueClassModel {
         if (configuration.isValueClassComparable()) {
             valueClass._implements(types._Comparable.narrow(Source.narrowType(configuration.wrapValueClass(valueClass), valueClass.typeParams())));
         }
+        if (configuration.generatesStableHash64()) {
+            // Declared early to be visible to other value classes generated in the same round
+            valueClass.method(JMod.PUBLIC | JMod.FINAL, types._long, StableHash64Method.METHOD_NAME);
+        }
+        if (configuration.generatesDigestInto()) {
+            // Declared early to be visible to other value classes generated in the same round
+            JMethod digestIntoMethod = valueClass.method(JMod.PUBLIC | JMod.FINAL, types._void, DigestIntoMethod.METHOD_NAME);
+            digestIntoMethod.param(types._MessageDigest, "digest");
+        }
+        if (configuration.generatesLenses()) {
+            // Declared early to be visible to other value classes generated in the same round
+            JDefinedClass lensClass;
+            try {
+                lensClass = valueClass._class(JMod.PUBLIC | JMod.STATIC | JMod.ABSTRACT, valueClass.name() + FinalValueClassModel.LENS_CLASS_SUFFIX);
+            } catch (JClassAlreadyExistsException ex) {
+                throw new RuntimeException("Unexpected exception", ex);
+            }
+            for (JTypeVar visitorTypeParameter: configuration.getValueTypeParameters()) {
+                JTypeVar typeParameter = lensClass.generify(visitorTypeParameter.name());
+                typeParameter.boundLike(visitorTypeParameter);
+            }
+            String rootTypeParameterName = "S";
+            for (int i = 1; hasTypeParameter(lensClass, rootTypeParameterName); i++) {
+                rootTypeParameterName = "S" + i;
+            }
+            lensClass.generify(rootTypeParameterName);
+        }
+    }
+
+    private static boolean hasTypeParameter(JDefinedClass klass, String name) {
+        for (JTypeVar typeParameter: klass.typeParams()) {
+            if (typeParameter.name().equals(name))
+                return true;
+        }
+        return false;
     }
 
     private JDefinedClass createAcceptingInterface() throws JClassAlreadyExistsException {
@@ -40,10 +40,30 @@ class APICustomization {
     private final boolean isValueClassPublic;
     private final AcceptMethodCustomization acceptMethod;
     private final InterfacesCustomization interfaces;
-    APICustomization(boolean isValueClassPublic, AcceptMethodCustomization acceptMethod, InterfacesCustomization interfaces) {
+    private final boolean generatesStableHash64;
+    private final boolean generatesDigestInto;
+    private final boolean generatesBatchUpdate;
+    private final boolean generatesBuilders;
+    private final boolean generatesLenses;
+    private final boolean generatesMap;
+    private final boolean generatesChildren;
+    private final boolean generatesFold;
+    private final boolean generatesStream;
+    private final boolean generatesBulkFactories;
+    APICustomization(boolean isValueClassPublic, AcceptMethodCustomization acceptMethod, InterfacesCustomization interfaces, boolean generatesStableHash64, boolean generatesDigestInto, boolean generatesBatchUpdate, boolean generatesBuilders, boolean generatesLenses, boolean generatesMap, boolean generatesChildren, boolean generatesFold, boolean generatesStream, boolean generatesBulkFactories) {
         this.isValueClassPublic = isValueClassPublic;
         this.acceptMethod = acceptMethod;
         this.interfaces = interfaces;
+        this.generatesStableHash64 = generatesStableHash64;
+        this.generatesDigestInto = generatesDigestInto;
+        this.generatesBatchUpdate = generatesBatchUpdate;
+        this.generatesBuilders = generatesBuilders;
+        this.generatesLenses = generatesLenses;
+        this.generatesMap = generatesMap;
+        this.generatesChildren = generatesChildren;
+        this.generatesFold = generatesFold;
+        this.generatesStream = generatesStream;
+        this.generatesBulkFactories = generatesBulkFactories;
     }
 
     public String acceptMethodName() {
@@ -78,4 +98,44 @@ class APICustomization {
         return interfaces.serialVersionUIDForGeneratedCode();
     }
 
+    boolean generatesStableHash64() {
+        return generatesStableHash64;
+    }
+
+    boolean generatesDigestInto() {
+        return generatesDigestInto;
+    }
+
+    boolean generatesBatchUpdate() {
+        return generatesBatchUpdate;
+    }
+
+    boolean generatesBuilders() {
+        return generatesBuilders;
+    }
+
+    boolean generatesLenses() {
+        return generatesLenses;
+    }
+
+    boolean generatesMap() {
+        return generatesMap;
+    }
+
+    boolean generatesChildren() {
+        return generatesChildren;
+    }
+
+    boolean generatesFold() {
+        return generatesFold;
+    }
+
+    boolean generatesStream() {
+        return generatesStream;
+    }
+
+    boolean generatesBulkFactories() {
+        return generatesBulkFactories;
+    }
+
 }
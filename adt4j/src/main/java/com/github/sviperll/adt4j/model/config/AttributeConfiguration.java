@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model.config;
+
+import com.github.sviperll.adt4j.AttributeKind;
+import com.github.sviperll.adt4j.MemberAccess;
+import com.helger.jcodemodel.AbstractJClass;
+
+/**
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+public class AttributeConfiguration {
+    private final String name;
+    private final AttributeKind kind;
+    private final AbstractJClass type;
+    private final AbstractJClass visitor;
+    private final MemberAccess accessLevel;
+    private final boolean isLazy;
+
+    AttributeConfiguration(String name, AttributeKind kind, AbstractJClass type, AbstractJClass visitor, MemberAccess accessLevel, boolean isLazy) {
+        this.name = name;
+        this.kind = kind;
+        this.type = type;
+        this.visitor = visitor;
+        this.accessLevel = accessLevel;
+        this.isLazy = isLazy;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public AttributeKind kind() {
+        return kind;
+    }
+
+    /**
+     * Type of custom attribute.
+     */
+    public AbstractJClass type() {
+        return type;
+    }
+
+    /**
+     * Visitor that computes custom attribute.
+     */
+    public AbstractJClass visitor() {
+        return visitor;
+    }
+
+    public MemberAccess accessLevel() {
+        return accessLevel;
+    }
+
+    /**
+     * Weather attribute is computed on first access.
+     */
+    public boolean isLazy() {
+        return isLazy;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model.config;
+
+import com.github.sviperll.adt4j.AttributeKind;
+import com.github.sviperll.adt4j.GenerateAttribute;
+import com.github.sviperll.adt4j.GenerateAttributes;
+import com.github.sviperll.adt4j.MemberAccess;
+import com.github.sviperll.adt4j.model.util.GenerationProcess;
+import com.github.sviperll.adt4j.model.util.GenerationResult;
+import com.helger.jcodemodel.AbstractJClass;
+import com.helger.jcodemodel.JAnnotationUse;
+import java.text.MessageFormat;
+import java.util.Map;
+
+/**
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+class AttributesReader {
+    private final Map<String, AttributeConfiguration> attributes;
+
+    AttributesReader(Map<String, AttributeConfiguration> attributes) {
+        this.attributes = attributes;
+    }
+
+    GenerationResult<Void> read(JAnnotationUse annotationUsage) {
+        GenerationProcess generation = new GenerationProcess();
+        String annotationClassName = annotationUsage.getAnnotationClass().fullName();
+        if (annotationClassName != null) {
+            if (annotationClassName.equals(GenerateAttribute.class.getName())) {
+                String name = annotationUsage.getParam("name", String.class);
+                AttributeKind kind = annotationUsage.getParam("kind", AttributeKind.class);
+                AbstractJClass type = annotationUsage.getParam("type", AbstractJClass.class);
+                AbstractJClass visitor = annotationUsage.getParam("visitor", AbstractJClass.class);
+                MemberAccess accessLevel = annotationUsage.getParam("access", MemberAccess.class);
+                Boolean isLazy = annotationUsage.getParam("lazy", Boolean.class);
+                if (attributes.containsKey(name))
+                    generation.reportError(MessageFormat.format("Unable to generate {0} attribute: attribute with the same name is already declared", name));
+                else if (kind == AttributeKind.CUSTOM && (visitor == null || visitor.isError() || Object.class.getName().equals(visitor.fullName())))
+                    generation.reportError(MessageFormat.format("Unable to generate {0} attribute: visitor should be specified for custom attribute", name));
+                else if (kind == AttributeKind.CUSTOM && (type == null || type.isError()))
+                    generation.reportError(MessageFormat.format("Unable to generate {0} attribute: type of custom attribute is erroneous", name));
+                else
+                    attributes.put(name, new AttributeConfiguration(name, kind, type, visitor, accessLevel, isLazy != null && isLazy));
+            } else if (annotationClassName.equals(GenerateAttributes.class.getName())) {
+                JAnnotationUse[] annotations = annotationUsage.getParam("value", JAnnotationUse[].class);
+                if (annotations != null) {
+                    for (JAnnotationUse annotation: annotations) {
+                        generation.processGenerationResult(read(annotation));
+                    }
+                }
+            }
+        }
+        return generation.createGenerationResult(null);
+    }
+}
@@ -30,6 +30,7 @@
 package com.github.sviperll.adt4j.model.config;
 
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.HashFunction;
 import com.github.sviperll.adt4j.MemberAccess;
 import com.helger.jcodemodel.AbstractJClass;
 import javax.annotation.Nonnull;
@@ -84,6 +85,46 @@ class Customization {
         return api.isComparable();
     }
 
+    boolean generatesStableHash64() {
+        return api.generatesStableHash64();
+    }
+
+    boolean generatesDigestInto() {
+        return api.generatesDigestInto();
+    }
+
+    boolean generatesBatchUpdate() {
+        return api.generatesBatchUpdate();
+    }
+
+    boolean generatesBuilders() {
+        return api.generatesBuilders();
+    }
+
+    boolean generatesLenses() {
+        return api.generatesLenses();
+    }
+
+    boolean generatesMap() {
+        return api.generatesMap();
+    }
+
+    boolean generatesChildren() {
+        return api.generatesChildren();
+    }
+
+    boolean generatesFold() {
+        return api.generatesFold();
+    }
+
+    boolean generatesStream() {
+        return api.generatesStream();
+    }
+
+    boolean generatesBulkFactories() {
+        return api.generatesBulkFactories();
+    }
+
     @Nonnull
     AbstractJClass[] implementsInterfaces() {
         return api.interfaces();
@@ -93,6 +134,11 @@ class Customization {
         return implementation.hashCodeBase();
     }
 
+    @Nonnull
+    HashFunction hashFunction() {
+        return implementation.hashFunction();
+    }
+
     @Nonnull
     Serialization serialization() {
         return api.serialization();
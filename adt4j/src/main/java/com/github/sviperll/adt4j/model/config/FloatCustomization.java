@@ -30,6 +30,7 @@
 
 package com.github.sviperll.adt4j.model.config;
 
+import com.github.sviperll.adt4j.FloatEquality;
 import javax.annotation.ParametersAreNonnullByDefault;
 
 /**
@@ -39,13 +40,19 @@ import javax.annotation.ParametersAreNonnullByDefault;
 @ParametersAreNonnullByDefault
 public class FloatCustomization {
 
+    private final FloatEquality floatEquality;
     private final float floatEpsilon;
     private final double doubleEpsilon;
-    FloatCustomization(float floatEpsilon, double doubleEpsilon) {
+    FloatCustomization(FloatEquality floatEquality, float floatEpsilon, double doubleEpsilon) {
+        this.floatEquality = floatEquality;
         this.floatEpsilon = floatEpsilon;
         this.doubleEpsilon = doubleEpsilon;
     }
 
+    public FloatEquality floatEquality() {
+        return floatEquality;
+    }
+
     public float floatEpsilon() {
         return floatEpsilon;
     }
@@ -30,6 +30,7 @@
 package com.github.sviperll.adt4j.model.config;
 
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.HashFunction;
 
 /**
  *
@@ -37,11 +38,13 @@ import com.github.sviperll.adt4j.Caching;
  */
 class ImplementationCustomization {
     private final int hashCodeBase;
+    private final HashFunction hashFunction;
     private final Caching hashCodeCaching;
     private final FloatCustomization floatCustomization;
 
-    ImplementationCustomization(Caching hashCodeCaching, int hashCodeBase, FloatCustomization floatCustomization) {
+    ImplementationCustomization(Caching hashCodeCaching, int hashCodeBase, HashFunction hashFunction, FloatCustomization floatCustomization) {
         this.hashCodeBase = hashCodeBase;
+        this.hashFunction = hashFunction;
         this.hashCodeCaching = hashCodeCaching;
         this.floatCustomization = floatCustomization;
     }
@@ -54,6 +57,10 @@ class ImplementationCustomization {
         return hashCodeBase;
     }
 
+    HashFunction hashFunction() {
+        return hashFunction;
+    }
+
     FloatCustomization floatCustomization() {
         return floatCustomization;
     }
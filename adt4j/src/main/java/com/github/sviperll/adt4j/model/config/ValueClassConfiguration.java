@@ -30,6 +30,8 @@
 package com.github.sviperll.adt4j.model.config;
 
 import com.github.sviperll.adt4j.Caching;
+import com.github.sviperll.adt4j.FloatEquality;
+import com.github.sviperll.adt4j.HashFunction;
 import com.github.sviperll.adt4j.MemberAccess;
 import com.github.sviperll.adt4j.WrapsGeneratedValueClass;
 import com.github.sviperll.adt4j.model.config.VariableDeclaration;
@@ -68,10 +70,22 @@ public class ValueClassConfiguration {
         boolean isPublic = annotation.getParam("isPublic", Boolean.class);
         Caching hashCodeCaching = annotation.getParam("hashCodeCaching", Caching.class);
         int hashCodeBase = annotation.getParam("hashCodeBase", Integer.class);
+        HashFunction hashFunction = annotation.getParam("hashFunction", HashFunction.class);
         boolean isComparable = annotation.getParam("isComparable", Boolean.class);
+        boolean generateStableHash64 = annotation.getParam("generateStableHash64", Boolean.class);
+        boolean generateDigestInto = annotation.getParam("generateDigestInto", Boolean.class);
+        boolean generateBatchUpdate = annotation.getParam("generateBatchUpdate", Boolean.class);
+        boolean generateBuilders = annotation.getParam("generateBuilders", Boolean.class);
+        boolean generateLenses = annotation.getParam("generateLenses", Boolean.class);
+        boolean generateMap = annotation.getParam("generateMap", Boolean.class);
+        boolean generateChildren = annotation.getParam("generateChildren", Boolean.class);
+        boolean generateFold = annotation.getParam("generateFold", Boolean.class);
+        boolean generateStream = annotation.getParam("generateStream", Boolean.class);
+        boolean generateBulkFactories = annotation.getParam("generateBulkFactories", Boolean.class);
         float floatEpsilon = annotation.getParam("floatEpsilon", Float.class);
         double doubleEpsilon = annotation.getParam("doubleEpsilon", Double.class);
-        FloatCustomization floatCustomization = new FloatCustomization(floatEpsilon, doubleEpsilon);
+        FloatEquality floatEquality = annotation.getParam("floatEquality", FloatEquality.class);
+        FloatCustomization floatCustomization = new FloatCustomization(floatEquality, floatEpsilon, doubleEpsilon);
         Serialization serialization = serialization(annotation);
         ClassCustomization classCustomization = generation.processGenerationResult(classCustomization(annotation, visitorDefinition, valueClass));
 
@@ -79,8 +93,8 @@ public class ValueClassConfiguration {
 
         AcceptMethodCustomization acceptMethodCustomization = new AcceptMethodCustomization(acceptMethodName, acceptMethodAccess);
         InterfacesCustomization interfaceCustomization = new InterfacesCustomization(isComparable, serialization, interfaces);
-        APICustomization apiCustomization = new APICustomization(isPublic, acceptMethodCustomization, interfaceCustomization);
-        ImplementationCustomization implementationCustomization = new ImplementationCustomization(hashCodeCaching, hashCodeBase, floatCustomization);
+        APICustomization apiCustomization = new APICustomization(isPublic, acceptMethodCustomization, interfaceCustomization, generateStableHash64, generateDigestInto, generateBatchUpdate, generateBuilders, generateLenses, generateMap, generateChildren, generateFold, generateStream, generateBulkFactories);
+        ImplementationCustomization implementationCustomization = new ImplementationCustomization(hashCodeCaching, hashCodeBase, hashFunction, floatCustomization);
         Customization customiztion = new Customization(classCustomization, apiCustomization, implementationCustomization);
         return generation.createGenerationResult(new ValueClassConfiguration(visitorDefinition, customiztion));
     }
@@ -229,6 +243,46 @@ public class ValueClassConfiguration {
         return customization.isValueClassComparable();
     }
 
+    public boolean generatesStableHash64() {
+        return customization.generatesStableHash64();
+    }
+
+    public boolean generatesDigestInto() {
+        return customization.generatesDigestInto();
+    }
+
+    public boolean generatesBatchUpdate() {
+        return customization.generatesBatchUpdate();
+    }
+
+    public boolean generatesBuilders() {
+        return customization.generatesBuilders();
+    }
+
+    public boolean generatesLenses() {
+        return customization.generatesLenses();
+    }
+
+    public boolean generatesMap() {
+        return customization.generatesMap();
+    }
+
+    public boolean generatesChildren() {
+        return customization.generatesChildren();
+    }
+
+    public boolean generatesFold() {
+        return customization.generatesFold();
+    }
+
+    public boolean generatesStream() {
+        return customization.generatesStream();
+    }
+
+    public boolean generatesBulkFactories() {
+        return customization.generatesBulkFactories();
+    }
+
     public String valueClassName() {
         return customization.className();
     }
@@ -245,6 +299,10 @@ public class ValueClassConfiguration {
         return customization.hashCodeBase();
     }
 
+    public HashFunction hashFunction() {
+        return customization.hashFunction();
+    }
+
     public Serialization serialization() {
         return customization.serialization();
     }
@@ -301,6 +359,16 @@ public class ValueClassConfiguration {
         return generation.createGenerationResult(predicates);
     }
 
+    public GenerationResult<Map<String, AttributeConfiguration>> getAttributes() {
+        GenerationProcess generation = new GenerationProcess();
+        Map<String, AttributeConfiguration> attributes = new TreeMap<>();
+        AttributesReader attributesReader = new AttributesReader(attributes);
+        for (JAnnotationUse annotationUsage: visitorDefinition.annotations()) {
+            generation.processGenerationResult(attributesReader.read(annotationUsage));
+        }
+        return generation.createGenerationResult(attributes);
+    }
+
     public AbstractJClass wrapValueClass(AbstractJClass valueClass) {
         AbstractJClass wrapperClass = customization.wrapperClass();
         return wrapperClass != null ? wrapperClass : valueClass;
@@ -196,6 +196,10 @@ public class VisitorDefinition {
         return specialTypeVariables.isSelf(type);
     }
 
+    Collection<JAnnotationUse> annotations() {
+        return jVisitor.annotations();
+    }
+
     public Collection<JMethod> methodDefinitions() {
         return methods.values();
     }
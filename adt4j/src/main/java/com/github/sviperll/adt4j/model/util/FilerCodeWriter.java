@@ -31,11 +31,13 @@ package com.github.sviperll.adt4j.model.util;
 
 import com.helger.jcodemodel.AbstractCodeWriter;
 import com.helger.jcodemodel.JPackage;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import javax.annotation.Nullable;
 import javax.annotation.processing.Filer;
 import javax.annotation.processing.Messager;
 import javax.tools.Diagnostic;
@@ -61,6 +63,7 @@ public class FilerCodeWriter extends AbstractCodeWriter {
     private final Filer filer;
     private final List<OutputStream> closeables = new ArrayList<OutputStream>();
     private final Messager messager;
+    private final GenerationStatistics statistics;
 
     /**
      * Creates new instance.
@@ -69,9 +72,21 @@ public class FilerCodeWriter extends AbstractCodeWriter {
      * @param messager is only used for error reporting
      */
     public FilerCodeWriter(Filer filer, Messager messager) {
+        this(filer, messager, null);
+    }
+
+    /**
+     * Creates new instance that records rendering time and size of each written file.
+     *
+     * @param filer {@code Filer} used to create java sources
+     * @param messager is only used for error reporting
+     * @param statistics receives rendering time and size of each file, may be null
+     */
+    public FilerCodeWriter(Filer filer, Messager messager, @Nullable GenerationStatistics statistics) {
         super(Charset.defaultCharset(), System.lineSeparator());
         this.filer = filer;
         this.messager = messager;
+        this.statistics = statistics;
     }
 
     @Override
@@ -79,8 +94,12 @@ public class FilerCodeWriter extends AbstractCodeWriter {
         String className = fileName.substring(0, fileName.length() - JAVA_SOURCE_SUFFIX.length());
         if (!fileName.endsWith(JAVA_SOURCE_SUFFIX))
             throw new IllegalStateException("Unexpected file name passed to code writer: " + fileName);
-        JavaFileObject fileObject = filer.createSourceFile(pkg.name() + "." + className);
+        String fullClassName = pkg.name() + "." + className;
+        long startTime = System.nanoTime();
+        JavaFileObject fileObject = filer.createSourceFile(fullClassName);
         OutputStream stream = fileObject.openOutputStream();
+        if (statistics != null)
+            stream = new MeasuredOutputStream(stream, fullClassName, startTime);
         closeables.add(stream);
         return stream;
     }
@@ -111,4 +130,55 @@ public class FilerCodeWriter extends AbstractCodeWriter {
                 throw new IllegalStateException("Unexpected exception", exception);
         }
     }
+
+    /**
+     * Measures rendering time of a single file.
+     * <p>
+     * Streams may be closed all at once, when code writer is closed,
+     * so rendering time is measured till the last write or flush of the file, not till stream is closed.
+     */
+    private class MeasuredOutputStream extends FilterOutputStream {
+        private final String className;
+        private final long startTime;
+        private long finishTime;
+        private long byteCount = 0;
+        private boolean isClosed = false;
+
+        MeasuredOutputStream(OutputStream stream, String className, long startTime) {
+            super(stream);
+            this.className = className;
+            this.startTime = startTime;
+            this.finishTime = startTime;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            byteCount++;
+            finishTime = System.nanoTime();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            byteCount += len;
+            finishTime = System.nanoTime();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            if (!isClosed)
+                finishTime = System.nanoTime();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!isClosed) {
+                isClosed = true;
+                super.close();
+                statistics.recordRendering(className, finishTime - startTime, byteCount);
+            }
+        }
+    }
 }
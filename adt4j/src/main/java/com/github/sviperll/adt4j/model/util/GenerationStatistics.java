@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016, Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *  1. Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *
+ *  2. Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation and/or
+ *     other materials provided with the distribution.
+ *
+ *  3. Neither the name of the copyright holder nor the names of its contributors
+ *     may be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ *  THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ *  IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ *   LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ *  ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ *  EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.github.sviperll.adt4j.model.util;
+
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JMethod;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Collects per-element processing times and sizes of generated code.
+ * <p>
+ * Statistics are keyed by qualified name of annotated source element.
+ * Times are accumulated across processing rounds,
+ * since the same element may be processed several times
+ * when it references classes that are not generated yet.
+ *
+ * @author Victor Nazarov &lt;asviraspossible@gmail.com&gt;
+ */
+@ParametersAreNonnullByDefault
+public class GenerationStatistics {
+    private final Map<String, ElementStatistics> elements = new TreeMap<>();
+    private final Map<String, ElementStatistics> generatedClasses = new HashMap<>();
+
+    public void recordStage0(String elementName, long nanos) {
+        getElement(elementName).stage0Nanos += nanos;
+    }
+
+    public void recordStage1(String elementName, long nanos) {
+        getElement(elementName).stage1Nanos += nanos;
+    }
+
+    public void recordStage2(String elementName, long nanos) {
+        getElement(elementName).stage2Nanos += nanos;
+    }
+
+    /**
+     * Records generated value class and counts it's nested classes and methods.
+     * <p>
+     * Previous record for the same element is replaced,
+     * since only the last generated version of the class is written to disk.
+     *
+     * @param elementName qualified name of annotated source element
+     * @param valueClass generated value class
+     */
+    public void recordGeneratedClass(String elementName, JDefinedClass valueClass) {
+        ElementStatistics statistics = getElement(elementName);
+        statistics.valueClassName = valueClass.fullName();
+        statistics.classCount = 0;
+        statistics.methodCount = 0;
+        countDefinitions(statistics, valueClass);
+        generatedClasses.put(valueClass.fullName(), statistics);
+    }
+
+    /**
+     * Records time spent to render single source file and size of the file.
+     *
+     * @param className qualified name of top-level class stored in file
+     * @param nanos time spent to render the file
+     * @param bytes size of the file in bytes
+     */
+    public void recordRendering(String className, long nanos, long bytes) {
+        ElementStatistics statistics = generatedClasses.get(className);
+        if (statistics != null) {
+            statistics.renderingNanos += nanos;
+            statistics.sourceBytes = bytes;
+        }
+    }
+
+    /**
+     * Writes collected statistics as JSON document.
+     *
+     * @param writer destination
+     * @throws IOException when writer fails
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\n  \"elements\": [");
+        boolean isFirst = true;
+        for (Map.Entry<String, ElementStatistics> entry: elements.entrySet()) {
+            if (!isFirst)
+                writer.write(",");
+            isFirst = false;
+            ElementStatistics statistics = entry.getValue();
+            writer.write("\n    {");
+            writer.write("\"element\": " + jsonString(entry.getKey()));
+            writer.write(", \"valueClass\": " + (statistics.valueClassName == null ? "null" : jsonString(statistics.valueClassName)));
+            writer.write(", \"stage0Nanos\": " + statistics.stage0Nanos);
+            writer.write(", \"stage1Nanos\": " + statistics.stage1Nanos);
+            writer.write(", \"stage2Nanos\": " + statistics.stage2Nanos);
+            writer.write(", \"renderingNanos\": " + statistics.renderingNanos);
+            writer.write(", \"classes\": " + statistics.classCount);
+            writer.write(", \"methods\": " + statistics.methodCount);
+            writer.write(", \"sourceBytes\": " + statistics.sourceBytes);
+            writer.write("}");
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    private ElementStatistics getElement(String elementName) {
+        ElementStatistics statistics = elements.get(elementName);
+        if (statistics == null) {
+            statistics = new ElementStatistics();
+            elements.put(elementName, statistics);
+        }
+        return statistics;
+    }
+
+    private static void countDefinitions(ElementStatistics statistics, JDefinedClass klass) {
+        statistics.classCount++;
+        statistics.methodCount += klass.methods().size();
+        Iterator<JMethod> constructors = klass.constructors();
+        while (constructors.hasNext()) {
+            constructors.next();
+            statistics.methodCount++;
+        }
+        for (JDefinedClass nested: klass.classes()) {
+            countDefinitions(statistics, nested);
+        }
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder builder = new StringBuilder();
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < 0x20)
+                builder.append(String.format("\\u%04x", (int)c));
+            else
+                builder.append(c);
+        }
+        builder.append('"');
+        return builder.toString();
+    }
+
+    private static class ElementStatistics {
+        String valueClassName = null;
+        long stage0Nanos = 0;
+        long stage1Nanos = 0;
+        long stage2Nanos = 0;
+        long renderingNanos = 0;
+        int classCount = 0;
+        int methodCount = 0;
+        long sourceBytes = 0;
+    }
+}
@@ -31,12 +31,28 @@ package com.github.sviperll.adt4j.model.util;
 
 import com.helger.jcodemodel.AbstractJClass;
 import com.helger.jcodemodel.AbstractJType;
+import com.helger.jcodemodel.EClassType;
 import com.helger.jcodemodel.JCodeModel;
+import com.helger.jcodemodel.JDefinedClass;
+import com.helger.jcodemodel.JMethod;
 import com.helger.jcodemodel.JPrimitiveType;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class Types {
     public static Types createInstance(JCodeModel codeModel) {
@@ -50,6 +66,7 @@ public class Types {
     public final JPrimitiveType _int;
     public final JPrimitiveType _float;
     public final JPrimitiveType _double;
+    public final JPrimitiveType _byte;
     public final AbstractJClass _Object;
     public final AbstractJClass _Boolean;
     public final AbstractJClass _Integer;
@@ -69,6 +86,33 @@ public class Types {
     public final AbstractJClass _ClassNotFoundException;
     public final AbstractJClass _UnsupportedOperationException;
     public final AbstractJClass _Arrays;
+    public final AbstractJClass _Short;
+    public final AbstractJClass _Byte;
+    public final AbstractJClass _Character;
+    public final AbstractJClass _Number;
+    public final AbstractJClass _Enum;
+    public final AbstractJClass _IllegalArgumentException;
+    public final AbstractJClass _MessageDigest;
+    public final AbstractJClass _NoSuchAlgorithmException;
+    public final AbstractJClass _DigestException;
+    public final AbstractJClass _System;
+    public final AbstractJClass _List;
+    public final AbstractJClass _ArrayList;
+    public final AbstractJClass _BitSet;
+    public final AbstractJClass _Map;
+    public final AbstractJClass _HashMap;
+    public final AbstractJClass _Collections;
+    public final AbstractJClass _IndexOutOfBoundsException;
+    public final AbstractJClass _ForkJoinPool;
+    public final AbstractJClass _RecursiveTask;
+    public final AbstractJClass _Iterator;
+    public final AbstractJClass _Iterable;
+    public final AbstractJClass _NoSuchElementException;
+    public final AbstractJClass _Spliterator;
+    public final AbstractJClass _Spliterators;
+    public final AbstractJClass _Stream;
+    public final AbstractJClass _StreamSupport;
+    public final AbstractJClass _Consumer;
 
     private Types(JCodeModel codeModel) {
         this.codeModel = codeModel;
@@ -78,6 +122,7 @@ public class Types {
         _int = codeModel.INT;
         _float = codeModel.FLOAT;
         _double = codeModel.DOUBLE;
+        _byte = codeModel.BYTE;
 
         _Object = codeModel.ref(Object.class);
         _Boolean = codeModel.ref(Boolean.class);
@@ -98,6 +143,34 @@ public class Types {
         _ClassNotFoundException = codeModel.ref(ClassNotFoundException.class);
         _UnsupportedOperationException = codeModel.ref(UnsupportedOperationException.class);
         _Arrays = codeModel.ref(Arrays.class);
+        _Short = codeModel.ref(Short.class);
+        _Byte = codeModel.ref(Byte.class);
+        _Character = codeModel.ref(Character.class);
+        _Number = codeModel.ref(Number.class);
+        _Enum = codeModel.ref(Enum.class);
+        _IllegalArgumentException = codeModel.ref(IllegalArgumentException.class);
+        _MessageDigest = codeModel.ref(MessageDigest.class);
+        _NoSuchAlgorithmException = codeModel.ref(NoSuchAlgorithmException.class);
+        _DigestException = codeModel.ref(DigestException.class);
+        _System = codeModel.ref(System.class);
+        _List = codeModel.ref(List.class);
+        _ArrayList = codeModel.ref(ArrayList.class);
+        _BitSet = codeModel.ref(BitSet.class);
+        _Map = codeModel.ref(Map.class);
+        _HashMap = codeModel.ref(HashMap.class);
+        _Collections = codeModel.ref(Collections.class);
+        _IndexOutOfBoundsException = codeModel.ref(IndexOutOfBoundsException.class);
+        _ForkJoinPool = codeModel.ref(ForkJoinPool.class);
+        _RecursiveTask = codeModel.ref(RecursiveTask.class);
+        _Iterator = codeModel.ref(Iterator.class);
+        _Iterable = codeModel.ref(Iterable.class);
+        _NoSuchElementException = codeModel.ref(NoSuchElementException.class);
+        // Java 8 classes are referenced by name to keep processor compilable with older JDKs
+        _Spliterator = codeModel.ref("java.util.Spliterator");
+        _Spliterators = codeModel.ref("java.util.Spliterators");
+        _Stream = codeModel.ref("java.util.stream.Stream");
+        _StreamSupport = codeModel.ref("java.util.stream.StreamSupport");
+        _Consumer = codeModel.ref("java.util.function.Consumer");
     }
 
     public boolean isSerializable(AbstractJType type) {
@@ -119,6 +192,41 @@ public class Types {
             throw new IllegalStateException("Unexpected jcodemodel type: " + type);
     }
 
+    public boolean isString(AbstractJType type) {
+        return !type.isError() && type.erasure().fullName().equals(_String.fullName());
+    }
+
+    public boolean isEnum(AbstractJType type) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = ((AbstractJClass)type).erasure();
+        if (klass instanceof JDefinedClass)
+            return ((JDefinedClass)klass).getClassType() == EClassType.ENUM;
+        else {
+            AbstractJClass superClass = klass._extends();
+            return superClass != null && !superClass.isError() && superClass.erasure().fullName().equals(_Enum.fullName());
+        }
+    }
+
+    /**
+     * Tests if class generated in current round declares or inherits instance method with given name.
+     * <p>
+     * Only classes defined with code model are inspected, false is returned for every other class.
+     */
+    public boolean declaresInstanceMethod(AbstractJType type, String name, int paramCount) {
+        if (type.isError() || !(type instanceof AbstractJClass))
+            return false;
+        AbstractJClass klass = ((AbstractJClass)type).erasure();
+        while (klass instanceof JDefinedClass && !klass.isError()) {
+            for (JMethod method: ((JDefinedClass)klass).methods()) {
+                if (method.name().equals(name) && method.params().size() == paramCount && !method.mods().isStatic())
+                    return true;
+            }
+            klass = klass._extends();
+        }
+        return false;
+    }
+
     public AbstractJClass createWildcard() {
         return codeModel.wildcard();
     }